@@ -0,0 +1,78 @@
+package primorska.mandelbrotsequential.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import primorska.mandelbrotsequential.engine.*;
+import primorska.mandelbrotsequential.formula.Fractal;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded throughput of each formula's kernels at its home view. The "inline"
+ * variants call the built-in Mandelbrot kernels directly, so comparing them with
+ * {@code mandelbrot} shows what going through the formula SPI costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class FormulaBenchmark {
+
+    @Param({"inline", "mandelbrot", "julia", "multibrot", "multibrot:4", "burning-ship", "tricorn"})
+    public String formula;
+
+    @Param({"scalar", "vector"})
+    public String kernel;
+
+    @Param({"640x480"})
+    public String resolution;
+
+    @Param({"1000"})
+    public int maxIter;
+
+    private Renderer renderer;
+    private Viewport viewport;
+    private IterationBuffer buffer;
+    private long iterationsPerFrame;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long pixels;
+        public long iterations;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] size = resolution.split("x");
+        boolean vector = kernel.equals("vector");
+        Fractal fractal = formula.equals("inline") ? Fractal.MANDELBROT : Fractal.parse(formula);
+        Kernel selected;
+        if (formula.equals("inline")) {
+            selected = vector ? Kernels.vector() : Kernels.SCALAR;
+        } else {
+            selected = vector ? fractal.vectorKernel() : fractal.kernel();
+        }
+        double[] home = fractal.getFormula().getHome();
+        viewport = Viewport.centered(home[0], home[1], home[2],
+                Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+        buffer = IterationBuffer.forViewport(viewport, maxIter);
+        renderer = new SequentialRenderer(selected);
+        renderer.render(viewport, buffer);
+        iterationsPerFrame = buffer.totalIterations();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        renderer.close();
+    }
+
+    @Benchmark
+    public IterationBuffer render(Counters counters) {
+        renderer.render(viewport, buffer);
+        counters.pixels += viewport.getPixelCount();
+        counters.iterations += iterationsPerFrame;
+        return buffer;
+    }
+}
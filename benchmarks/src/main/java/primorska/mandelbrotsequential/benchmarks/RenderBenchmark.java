@@ -0,0 +1,109 @@
+package primorska.mandelbrotsequential.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import primorska.mandelbrotsequential.distributed.DistributedRenderer;
+import primorska.mandelbrotsequential.distributed.WorkerServer;
+import primorska.mandelbrotsequential.engine.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole-frame throughput of each render mode. Besides frames/sec, the {@link Counters}
+ * report pixels/sec and iterations/sec so modes with different work per frame compare fairly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class RenderBenchmark {
+
+    /** Seahorse valley, which keeps a mix of interior and boundary at every depth. */
+    private static final double CENTER_X = -0.743643887037151;
+    private static final double CENTER_Y = 0.131825904205330;
+
+    @Param({"SEQUENTIAL", "PARALLEL", "DISTRIBUTED", "VECTOR", "ACCELERATED", "DEEP_ZOOM", "AUTO_PRECISION"})
+    public RenderMode mode;
+
+    @Param({"640x480", "1920x1080"})
+    public String resolution;
+
+    @Param({"1", "1e3", "1e6"})
+    public String zoom;
+
+    @Param({"1", "4", "16"})
+    public int threads;
+
+    @Param({"32"})
+    public int tileSize;
+
+    @Param({"1000"})
+    public int maxIter;
+
+    private final List<WorkerServer> workers = new ArrayList<>();
+    private Renderer renderer;
+    private Viewport viewport;
+    private IterationBuffer buffer;
+    private long iterationsPerFrame;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long pixels;
+        public long iterations;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String[] size = resolution.split("x");
+        int width = Integer.parseInt(size[0]);
+        int height = Integer.parseInt(size[1]);
+        viewport = Viewport.centered(CENTER_X, CENTER_Y, 3.0 / Double.parseDouble(zoom), width, height);
+        buffer = IterationBuffer.forViewport(viewport, maxIter);
+        renderer = switch (mode) {
+            case SEQUENTIAL -> new SequentialRenderer();
+            case PARALLEL -> new ParallelRenderer(threads, tileSize);
+            case DISTRIBUTED -> new DistributedRenderer(startWorkers(threads));
+            case VECTOR -> new ParallelRenderer(threads, tileSize, Kernels.vector());
+            case ACCELERATED -> new ParallelRenderer(threads, tileSize, Kernels.ACCELERATED);
+            case DEEP_ZOOM -> new ParallelRenderer(threads, tileSize, Kernels.PERTURBATION);
+            case AUTO_PRECISION -> new ParallelRenderer(threads, tileSize, Kernels.TIERED);
+        };
+        renderer.render(viewport, buffer);
+        iterationsPerFrame = buffer.totalIterations();
+    }
+
+    private List<String> startWorkers(int count) throws IOException {
+        List<String> addresses = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            WorkerServer worker = new WorkerServer(0);
+            Thread thread = new Thread(worker::serve, "benchmark-worker-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            workers.add(worker);
+            addresses.add("localhost:" + worker.getPort());
+        }
+        return addresses;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        renderer.close();
+        for (WorkerServer worker : workers) {
+            worker.close();
+        }
+        workers.clear();
+    }
+
+    @Benchmark
+    public IterationBuffer render(Counters counters) {
+        renderer.render(viewport, buffer);
+        counters.pixels += viewport.getPixelCount();
+        counters.iterations += iterationsPerFrame;
+        return buffer;
+    }
+}
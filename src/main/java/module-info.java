@@ -5,6 +5,9 @@ module primorska.mandelbrotsequential {
     requires javafx.graphics;
     requires javafx.swing;
     requires java.desktop;
+    requires jdk.jfr;
+    requires jdk.httpserver;
+    requires static jdk.incubator.vector;
     requires org.controlsfx.controls;
     requires com.dlsc.formsfx;
     requires net.synedra.validatorfx;
@@ -15,4 +18,17 @@ module primorska.mandelbrotsequential {
 
     opens primorska.mandelbrotsequential to javafx.fxml;
     exports primorska.mandelbrotsequential;
+    exports primorska.mandelbrotsequential.engine;
+    exports primorska.mandelbrotsequential.distributed;
+    exports primorska.mandelbrotsequential.metrics;
+    exports primorska.mandelbrotsequential.formula;
+    exports primorska.mandelbrotsequential.server;
+
+    uses primorska.mandelbrotsequential.formula.Formula;
+    provides primorska.mandelbrotsequential.formula.Formula with
+            primorska.mandelbrotsequential.formula.MandelbrotFormula,
+            primorska.mandelbrotsequential.formula.JuliaFormula,
+            primorska.mandelbrotsequential.formula.MultibrotFormula,
+            primorska.mandelbrotsequential.formula.BurningShipFormula,
+            primorska.mandelbrotsequential.formula.TricornFormula;
 }
\ No newline at end of file
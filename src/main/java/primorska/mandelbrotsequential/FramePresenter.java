@@ -0,0 +1,74 @@
+package primorska.mandelbrotsequential;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.nio.IntBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Two reusable ARGB frames backed by {@link PixelBuffer}s. The render thread fills the back
+ * frame's {@code int[]} directly and the FX thread shows it without any per-pixel call or
+ * format conversion. A frame goes back to the render side once a newer one is on screen.
+ * Only a resize needs a new presenter.
+ */
+class FramePresenter {
+    private final int width;
+    private final int height;
+    private final BlockingQueue<Frame> free = new ArrayBlockingQueue<>(2);
+    private Frame shown;
+
+    static final class Frame {
+        private final int[] pixels;
+        private final PixelBuffer<IntBuffer> buffer;
+        private final WritableImage image;
+
+        private Frame(int width, int height) {
+            pixels = new int[width * height];
+            buffer = new PixelBuffer<>(width, height, IntBuffer.wrap(pixels), PixelFormat.getIntArgbPreInstance());
+            image = new WritableImage(buffer);
+        }
+
+        int[] pixels() {
+            return pixels;
+        }
+    }
+
+    FramePresenter(int width, int height) {
+        this.width = width;
+        this.height = height;
+        free.add(new Frame(width, height));
+        free.add(new Frame(width, height));
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    /** Blocks the render thread until a frame is no longer needed by the screen. */
+    Frame acquire() throws InterruptedException {
+        return free.take();
+    }
+
+    /** Returns a frame that will not be shown, e.g. because its render was cancelled. */
+    void release(Frame frame) {
+        free.add(frame);
+    }
+
+    /** Shows a filled frame; must be called on the FX application thread. */
+    void show(Frame frame, GraphicsContext gc) {
+        frame.buffer.updateBuffer(b -> null);
+        gc.drawImage(frame.image, 0, 0);
+        if (shown != null) {
+            free.add(shown);
+        }
+        shown = frame;
+    }
+}
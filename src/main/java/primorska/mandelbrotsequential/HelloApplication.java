@@ -4,78 +4,199 @@ import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.embed.swing.SwingFXUtils;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.*;
-import javafx.scene.image.PixelWriter;
 import javafx.scene.image.WritableImage;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
 
-import primorska.mandelbrotsequential.distributed.Task;
-import primorska.mandelbrotsequential.distributed.Result;
+import primorska.mandelbrotsequential.distributed.DistributedRenderer;
+import primorska.mandelbrotsequential.engine.Colorizer;
+import primorska.mandelbrotsequential.engine.EdgeSupersampler;
+import primorska.mandelbrotsequential.engine.IncrementalRenderer;
+import primorska.mandelbrotsequential.engine.IterationBuffer;
+import primorska.mandelbrotsequential.engine.IterationBudget;
+import primorska.mandelbrotsequential.engine.Kernel;
+import primorska.mandelbrotsequential.engine.Kernels;
+import primorska.mandelbrotsequential.engine.Palette;
+import primorska.mandelbrotsequential.engine.Palettes;
+import primorska.mandelbrotsequential.engine.ParallelRenderer;
+import primorska.mandelbrotsequential.engine.Precision;
+import primorska.mandelbrotsequential.engine.ProgressiveRenderer;
+import primorska.mandelbrotsequential.engine.RenderMode;
+import primorska.mandelbrotsequential.engine.RenderSession;
+import primorska.mandelbrotsequential.engine.Renderer;
+import primorska.mandelbrotsequential.engine.SequentialRenderer;
+import primorska.mandelbrotsequential.engine.Supersamples;
+import primorska.mandelbrotsequential.engine.TileScheduler;
+import primorska.mandelbrotsequential.engine.Viewport;
+import primorska.mandelbrotsequential.formula.Formula;
+import primorska.mandelbrotsequential.formula.Formulas;
+import primorska.mandelbrotsequential.formula.Fractal;
+import primorska.mandelbrotsequential.headless.ImageSink;
+import primorska.mandelbrotsequential.headless.IterationFile;
+import primorska.mandelbrotsequential.headless.StripRenderer;
+import primorska.mandelbrotsequential.headless.ZoomAnimation;
+import primorska.mandelbrotsequential.metrics.Distribution;
+import primorska.mandelbrotsequential.metrics.Metrics;
+import primorska.mandelbrotsequential.metrics.Phase;
+import primorska.mandelbrotsequential.server.TileCache;
+import primorska.mandelbrotsequential.server.TileServer;
 
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
-import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
 
 
 public class HelloApplication extends Application {
 
-    private double minX = -2.5, maxX = 1.5;
-    private double minY = -1.5, maxY = 1.5;
+    /** Deepest zoom at which pixel spacing is still a normal {@code double}. */
+    private static final double MAX_ZOOM = 1e290;
+    /** Iteration limit when the adaptive budget is off. */
+    private static final int DEFAULT_MAX_ITER = 1000;
+    /** Largest side of a saved frame the GUI opens; bigger ones are for {@code --recolor}. */
+    private static final int MAX_OPEN_SIZE = 8192;
+
+    private BigDecimal minX = new BigDecimal("-2.5");
+    private BigDecimal minY = new BigDecimal("-1.5");
+    private final double spanX = 4.0, spanY = 3.0;
     private double zoomFactor = 1.0;
     private Canvas canvas;
     private GraphicsContext gc;
     private TextField widthField;
     private TextField heightField;
     private ComboBox<String> modeBox;
+    private ComboBox<String> paletteBox;
+    private ComboBox<String> formulaBox;
+    private TextField parametersField;
+    private Slider offsetSlider;
+    private CheckBox autoIterBox;
+    private CheckBox antialiasBox;
+    private Label budgetLabel;
+    /** The frame on screen; written only on the render thread, read on both. */
+    private volatile ShownFrame lastFrame;
+    /** Pixels and iterations of the last computed frame, for the overlay. */
+    private volatile long lastFramePixels, lastFrameIterations;
+    private boolean showOverlay;
+    private FramePresenter presenter;
+    private RenderSession currentSession = new RenderSession();
+    /** What the GUI renders; replaced, never mutated, when the formula or its parameters change. */
+    private volatile Fractal fractal = Fractal.MANDELBROT;
     private int imageWidth = 800;
     private int imageHeight = 600;
     private boolean needsRedraw = true;
     private long lastDrawTime = 0;
     private final long frameInterval = 16_666_667;
 
-    private int javafxColorToRGB(Color color) {
-        int r = (int) (color.getRed() * 255);
-        int g = (int) (color.getGreen() * 255);
-        int b = (int) (color.getBlue() * 255);
-        int a = (int) (color.getOpacity() * 255);
-        return (a << 24) | (r << 16) | (g << 8) | b;
-    }
+    /** Port of the tile server when {@code --serve} gives none. */
+    private static final int DEFAULT_SERVE_PORT = 8080;
+
+    /** Worker addresses for Distributed mode; override with {@code --workers=host:port,...}. */
+    private static final String DEFAULT_WORKERS = "localhost:5000,localhost:5001";
+
+    private final Map<RenderMode, Renderer> renderers = new EnumMap<>(RenderMode.class);
+    private final ExecutorService renderExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "mandelbrot-render");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     @Override
     public void start(Stage primaryStage) {
         canvas = new Canvas(imageWidth, imageHeight);
         gc = canvas.getGraphicsContext2D();
+        presenter = new FramePresenter(imageWidth, imageHeight);
 
         widthField = new TextField(String.valueOf(imageWidth));
         heightField = new TextField(String.valueOf(imageHeight));
         Button resizeButton = new Button("Resize");
         Button saveButton = new Button("Save");
+        Button openButton = new Button("Open");
 
         modeBox = new ComboBox<>();
-        modeBox.getItems().addAll("Sequential", "Parallel","Distributed");
+        for (RenderMode mode : RenderMode.values()) {
+            modeBox.getItems().add(mode.getLabel());
+        }
         modeBox.setValue("Sequential");
 
+        paletteBox = new ComboBox<>();
+        for (Palette palette : Palettes.all()) {
+            paletteBox.getItems().add(palette.getName());
+        }
+        paletteBox.setValue(Palettes.HSB.getName());
+        offsetSlider = new Slider(0, 1000, 0);
+
         resizeButton.setOnAction(e -> handleResize());
         saveButton.setOnAction(e -> handleSave(primaryStage));
+        openButton.setOnAction(e -> handleOpen(primaryStage));
         modeBox.setOnAction(e -> {
             needsRedraw = true;
             canvas.requestFocus();
         });
+        paletteBox.setOnAction(e -> {
+            recolor();
+            canvas.requestFocus();
+        });
+        offsetSlider.valueProperty().addListener((obs, oldValue, newValue) -> recolor());
+        autoIterBox = new CheckBox("Auto iterations");
+        autoIterBox.setSelected(true);
+        autoIterBox.setOnAction(e -> {
+            needsRedraw = true;
+            canvas.requestFocus();
+        });
+        antialiasBox = new CheckBox("Anti-alias");
+        antialiasBox.setOnAction(e -> {
+            needsRedraw = true;
+            canvas.requestFocus();
+        });
+        formulaBox = new ComboBox<>();
+        for (Formula formula : Formulas.all()) {
+            formulaBox.getItems().add(formula.getName());
+        }
+        formulaBox.setValue(Formulas.MANDELBROT);
+        parametersField = new TextField();
+        parametersField.setPrefColumnCount(10);
+        parametersField.setDisable(true);
+        formulaBox.setOnAction(e -> {
+            Formula formula = Formulas.byName(formulaBox.getValue());
+            double[] parameters = formula.getDefaultParameters();
+            StringBuilder text = new StringBuilder();
+            for (double parameter : parameters) {
+                text.append(text.isEmpty() ? "" : ",").append(parameter);
+            }
+            parametersField.setText(text.toString());
+            parametersField.setPromptText(String.join(",", formula.getParameterNames()));
+            parametersField.setDisable(parameters.length == 0);
+            showFractal(new Fractal(formula, parameters), true);
+        });
+        parametersField.setOnAction(e -> {
+            try {
+                showFractal(Fractal.parse(formulaBox.getValue() + ":" + parametersField.getText()), false);
+            } catch (IllegalArgumentException ex) {
+                System.err.println("Invalid parameters: " + ex.getMessage());
+            }
+        });
+        budgetLabel = new Label();
 
-        HBox controls = new HBox(10, widthField, heightField, resizeButton, saveButton, modeBox);
+        HBox controls = new HBox(10, widthField, heightField, resizeButton, saveButton, openButton, modeBox, paletteBox, offsetSlider,
+                formulaBox, parametersField, autoIterBox, antialiasBox, budgetLabel);
 
         AnchorPane root = new AnchorPane();
         root.getChildren().addAll(canvas, controls);
@@ -86,29 +207,32 @@ public class HelloApplication extends Application {
         scene.setOnKeyPressed(event -> {
             if (canvas.isFocused()) {
                 switch (event.getCode()) {
+                    case F2:
+                        Metrics.dump(System.out);
+                        return;
+                    case F3:
+                        showOverlay = !showOverlay;
+                        recolor();
+                        return;
                     case ADD:
                     case PLUS:
-                        zoomFactor *= 1.5;
+                        zoomFactor = Math.min(zoomFactor * 1.5, MAX_ZOOM);
                         break;
                     case SUBTRACT:
                     case MINUS:
                         zoomFactor /= 1.5;
                         break;
                     case UP:
-                        minY -= 0.1 * (maxY - minY) / zoomFactor;
-                        maxY -= 0.1 * (maxY - minY) / zoomFactor;
+                        minY = minY.subtract(panStep(spanY, presenter.getHeight()));
                         break;
                     case DOWN:
-                        minY += 0.1 * (maxY - minY) / zoomFactor;
-                        maxY += 0.1 * (maxY - minY) / zoomFactor;
+                        minY = minY.add(panStep(spanY, presenter.getHeight()));
                         break;
                     case LEFT:
-                        minX -= 0.1 * (maxX - minX) / zoomFactor;
-                        maxX -= 0.1 * (maxX - minX) / zoomFactor;
+                        minX = minX.subtract(panStep(spanX, presenter.getWidth()));
                         break;
                     case RIGHT:
-                        minX += 0.1 * (maxX - minX) / zoomFactor;
-                        maxX += 0.1 * (maxX - minX) / zoomFactor;
+                        minX = minX.add(panStep(spanX, presenter.getWidth()));
                         break;
                 }
                 needsRedraw = true;
@@ -124,7 +248,7 @@ public class HelloApplication extends Application {
             @Override
             public void handle(long now) {
                 if (needsRedraw && now - lastDrawTime > frameInterval) {
-                    drawMandelbrot(modeBox.getValue().equals("Parallel"));
+                    drawMandelbrot(RenderMode.fromLabel(modeBox.getValue()));
                     lastDrawTime = now;
                     needsRedraw = false;
                 }
@@ -134,132 +258,323 @@ public class HelloApplication extends Application {
     }
 
 
-   private void drawMandelbrot(boolean isParallel) {
-       long startTime = System.nanoTime();
-       int width = (int) canvas.getWidth();
-       int height = (int) canvas.getHeight();
-       double rangeX = (maxX - minX) / zoomFactor;
-       double rangeY = (maxY - minY) / zoomFactor;
-       int maxIter = 1000;
-
-       boolean isDistributed = modeBox.getValue().equals("Distributed");
-       BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-
-       Runnable compute = () -> {
-           if (isDistributed) {
-               drawDistributed(image, width, height, maxIter);
-           } else if (isParallel) {
-               int cores = Runtime.getRuntime().availableProcessors();
-               Thread[] threads = new Thread[cores];
-               for (int t = 0; t < cores; t++) {
-                   final int threadId = t;
-                   threads[t] = new Thread(() -> {
-                       for (int y = threadId; y < height; y += cores) {
-                           for (int x = 0; x < width; x++) {
-                               double x0 = minX + x * rangeX / width;
-                               double y0 = minY + y * rangeY / height;
-                               double zx = 0.0, zy = 0.0;
-                               int iter = 0;
-                               while (zx * zx + zy * zy <= 4 && iter < maxIter) {
-                                   double tmp = zx * zx - zy * zy + x0;
-                                   zy = 2 * zx * zy + y0;
-                                   zx = tmp;
-                                   iter++;
-                               }
-                               int rgb = (iter < maxIter)
-                                       ? javafxColorToRGB(Color.hsb(280 - ((double) iter / maxIter) * 280, 0.8, 1.0 - ((double) iter / maxIter) * 0.8))
-                                       : 0xFF000000;
-                               image.setRGB(x, y, rgb);
-                           }
-                       }
-                   });
-                   threads[t].start();
-               }
-               for (Thread thread : threads) {
-                   try {
-                       thread.join();
-                   } catch (InterruptedException e) {
-                       e.printStackTrace();
-                   }
-               }
-           } else {
-               for (int y = 0; y < height; y++) {
-                   for (int x = 0; x < width; x++) {
-                       double x0 = minX + x * rangeX / width;
-                       double y0 = minY + y * rangeY / height;
-                       double zx = 0.0, zy = 0.0;
-                       int iter = 0;
-                       while (zx * zx + zy * zy <= 4 && iter < maxIter) {
-                           double tmp = zx * zx - zy * zy + x0;
-                           zy = 2 * zx * zy + y0;
-                           zx = tmp;
-                           iter++;
-                       }
-                       int rgb = (iter < maxIter)
-                               ? javafxColorToRGB(Color.hsb(280 - ((double) iter / maxIter) * 280, 0.8, 1.0 - ((double) iter / maxIter) * 0.8))
-                               : 0xFF000000;
-                       image.setRGB(x, y, rgb);
-                   }
-               }
-           }
-
-           Platform.runLater(() -> {
-               WritableImage fxImage = SwingFXUtils.toFXImage(image, null);
-               gc.clearRect(0, 0, width, height);
-               gc.drawImage(fxImage, 0, 0);
-               System.out.printf("Rendered in %.2f ms [%s]%n", (System.nanoTime() - startTime) / 1e6,
-                       isDistributed ? "Distributed" : (isParallel ? "Parallel" : "Sequential"));
-           });
-       };
-
-       new Thread(compute).start();
-   }
-    private void drawDistributed(BufferedImage image, int width, int height, int maxIter) {
-        try {
-            List<String> workers = List.of(
-                    "localhost:5000",
-                    "localhost:5001"
-            );
+    /**
+     * Switches to {@code next}, moving to its whole view if {@code home}. Cached renderers are
+     * dropped on the render thread, since Distributed mode's carries the formula to its workers.
+     */
+    private void showFractal(Fractal next, boolean home) {
+        fractal = next;
+        if (home) {
+            double[] view = next.getFormula().getHome();
+            zoomFactor = spanX / view[2];
+            minX = new BigDecimal(view[0] - view[2] / 2);
+            minY = new BigDecimal(view[1] - view[2] * spanY / spanX / 2);
+        }
+        renderExecutor.execute(() -> {
+            renderers.values().forEach(Renderer::close);
+            renderers.clear();
+        });
+        needsRedraw = true;
+        canvas.requestFocus();
+    }
+
+    private void drawMandelbrot(RenderMode mode) {
+        long startTime = System.nanoTime();
+        Fractal frameFractal = fractal;
+        int width = presenter.getWidth();
+        int height = presenter.getHeight();
+        boolean adaptive = autoIterBox.isSelected();
+        boolean antialias = antialiasBox.isSelected();
+
+        Viewport viewport = new Viewport(minX, minY, spanX, spanY, zoomFactor, width, height);
+        Palette palette = Palettes.byName(paletteBox.getValue());
+        int offset = (int) offsetSlider.getValue();
+        FramePresenter target = presenter;
+
+        currentSession.cancel();
+        RenderSession session = new RenderSession();
+        currentSession = session;
+
+        Runnable compute = () -> {
+            if (session.isCancelled()) {
+                return;
+            }
+            long computeStart = System.nanoTime();
+            TileScheduler scheduler = mode == RenderMode.SEQUENTIAL ? null : TileScheduler.shared();
+            IterationBudget budget = adaptive ? new IterationBudget(localKernel(mode, viewport, frameFractal),
+                    scheduler, IterationBudget.DEFAULT_CEILING) : null;
+            // Same mode and fractal: the previous frame may be reused for the parts still in view.
+            ShownFrame last = lastFrame;
+            IterationBuffer previous = last != null && mode == last.mode && frameFractal.equals(last.fractal)
+                    ? last.iterations : null;
+            int maxIter = DEFAULT_MAX_ITER;
+            if (budget != null && previous != null
+                    && last.viewport.getRangeX() == viewport.getRangeX()) {
+                // A pan keeps the limit, so the previous frame can be reused; refine() still raises it.
+                maxIter = previous.getMaxIter();
+            } else if (budget != null) {
+                IterationBudget.Statistics preview = budget.choose(viewport, session);
+                if (preview == null) {
+                    return;
+                }
+                maxIter = preview.getMaxIter();
+            }
+            // Fractions cost workers four bytes a pixel on the wire; fetch them only for smooth colors.
+            IterationBuffer iterations = IterationBuffer.forViewport(viewport, maxIter,
+                    mode != RenderMode.DISTRIBUTED || palette.isSmooth());
+            BiConsumer<IterationBuffer, String> publish = (buffer, detail) -> {
+                IterationBuffer frame = refine(budget, viewport, buffer, session);
+                if (frame == null) {
+                    return;
+                }
+                recordCompute(mode, frame, computeStart);
+                ShownFrame shownFrame = new ShownFrame(viewport, mode, frameFractal, frame, null);
+                lastFrame = shownFrame;
+                if (!antialias) {
+                    present(target, session, mode, frame, null, 1, palette, offset,
+                            shown(viewport, frame, startTime, mode, detail));
+                    return;
+                }
+                present(target, session, mode, frame, null, 1, palette, offset, () -> { });
+                Supersamples samples = new EdgeSupersampler(localKernel(mode, viewport, frameFractal), scheduler,
+                        EdgeSupersampler.DEFAULT_MAX_SAMPLES, EdgeSupersampler.DEFAULT_THRESHOLD)
+                        .sample(viewport, frame, session);
+                if (samples != null) {
+                    lastFrame = shownFrame.withSamples(samples);
+                    present(target, session, mode, frame, samples, 1, palette, offset,
+                            shown(viewport, frame, startTime, mode, String.format("%s, %.1f%% anti-aliased",
+                                    detail, 100.0 * samples.getPixelCount() / viewport.getPixelCount())));
+                }
+            };
+            if (mode == RenderMode.DISTRIBUTED) {
+                DistributedRenderer distributed = (DistributedRenderer) renderers.computeIfAbsent(mode,
+                        m -> createRenderer(m, frameFractal));
+                // The frame is still empty, so colors such as histogram equalization come from a local preview.
+                int[] lut = StripRenderer.lookupTable(new ParallelRenderer(localKernel(mode, viewport, frameFractal)),
+                        viewport, maxIter, palette, offset);
+                long firstPaint;
+                try (TileStream stream = new TileStream(target, gc, session, iterations, lut, palette.isSmooth())) {
+                    distributed.render(viewport, iterations, session, stream);
+                    firstPaint = stream.getFirstPaintNanos();
+                } catch (IllegalStateException e) {
+                    // Some tiles were never computed; keep the last complete frame rather than publish this one.
+                    System.err.println(e.getMessage());
+                    Platform.runLater(() -> budgetLabel.setText(e.getMessage()));
+                    return;
+                }
+                publish.accept(iterations, firstPaint < 0 ? ""
+                        : String.format(", first tiles after %.1f ms", firstPaint / 1e6));
+                return;
+            }
+            if (previous != null) {
+                int reused = new IncrementalRenderer(kernelFor(mode, frameFractal), scheduler)
+                        .render(last.viewport, previous, viewport, iterations, session);
+                if (reused >= 0) {
+                    publish.accept(iterations, String.format(", %.0f%% reused",
+                            100.0 * reused / viewport.getPixelCount()));
+                    return;
+                }
+            }
+            new ProgressiveRenderer(kernelFor(mode, frameFractal), scheduler).render(viewport, iterations, session, (buffer, step) -> {
+                if (step > 1) {
+                    present(target, session, mode, buffer, null, step, palette, offset, () -> { });
+                } else {
+                    publish.accept(buffer, "");
+                }
+            });
+        };
 
-            int rowsPerWorker = height / workers.size();
-            List<Result> results = new ArrayList<>();
+        renderExecutor.execute(compute);
+    }
 
-            for (int i = 0; i < workers.size(); i++) {
-                String[] parts = workers.get(i).split(":");
-                String host = parts[0];
-                int port = Integer.parseInt(parts[1]);
+    /**
+     * Lets {@code budget}, if any, raise the limit of a finished frame for its unescaped pixels.
+     * Returns null if the render was cancelled.
+     */
+    private static IterationBuffer refine(IterationBudget budget, Viewport viewport, IterationBuffer iterations,
+                                          RenderSession session) {
+        if (session.isCancelled()) {
+            return null;
+        }
+        return budget == null ? iterations : budget.refine(viewport, iterations, session);
+    }
 
-                int startY = i * rowsPerWorker;
-                int endY = (i == workers.size() - 1) ? height : startY + rowsPerWorker;
+    /**
+     * Reports a shown frame on the console and its escape statistics under the controls, along
+     * with the number format Auto precision picked for it.
+     */
+    private Runnable shown(Viewport viewport, IterationBuffer frame, long startTime, RenderMode mode, String detail) {
+        IterationBudget.Statistics statistics = IterationBudget.statistics(frame);
+        String precision = mode == RenderMode.AUTO_PRECISION
+                ? Precision.forViewport(viewport).getLabel() : "";
+        return () -> {
+            System.out.printf("Rendered in %.2f ms [%s%s%s, %s]%n", (System.nanoTime() - startTime) / 1e6,
+                    mode.getLabel(), precision.isEmpty() ? "" : " (" + precision + ")", detail, statistics);
+            budgetLabel.setText(precision.isEmpty() ? statistics.toString() : precision + ", " + statistics);
+        };
+    }
 
-                Task task = new Task(startY, endY, width, height, minX, maxX, minY, maxY, zoomFactor, maxIter);
+    /**
+     * Re-maps the last computed iterations with the current palette; no fractal work, unless a
+     * Distributed frame fetched without fractions now needs them for a smooth palette.
+     */
+    private void recolor() {
+        ShownFrame last = lastFrame;
+        FramePresenter target = presenter;
+        if (last == null || last.iterations.getWidth() != target.getWidth()
+                || last.iterations.getHeight() != target.getHeight()) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        Palette palette = Palettes.byName(paletteBox.getValue());
+        if (palette.isSmooth() && last.mode == RenderMode.DISTRIBUTED && !last.iterations.hasFractions()) {
+            needsRedraw = true;
+            return;
+        }
+        int offset = (int) offsetSlider.getValue();
+        RenderSession session = currentSession;
+        renderExecutor.execute(() -> present(target, session, last.mode, last.iterations, last.samples, 1,
+                palette, offset, () -> System.out.printf("Recolored in %.2f ms [%s]%n", (System.nanoTime() - startTime) / 1e6,
+                        palette.getName())));
+    }
 
-                try (Socket socket = new Socket(host, port)) {
-                    ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-                    ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+    /**
+     * A tenth of the view along one axis, rounded to whole pixels so the next frame can reuse
+     * the previous one instead of recomputing it.
+     */
+    private BigDecimal panStep(double span, int pixels) {
+        return new BigDecimal(Math.max(1, Math.round(0.1 * pixels)) * (span / zoomFactor / pixels));
+    }
 
-                    out.writeObject(task);
-                    out.flush();
+    /**
+     * Colors {@code iterations}, sampled every {@code step} pixels and with the edge pixels in
+     * {@code samples} anti-aliased if not null, into a free frame and shows it, unless a newer
+     * render has cancelled {@code session} by the time the FX thread gets to it.
+     */
+    private void present(FramePresenter target, RenderSession session, RenderMode mode, IterationBuffer iterations,
+                         Supersamples samples, int step, Palette palette, int offset, Runnable onShown) {
+        FramePresenter.Frame frame;
+        try {
+            frame = target.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        String label = mode == null ? "" : mode.getLabel();
+        long pixels = (long) iterations.getWidth() * iterations.getHeight();
+        long colorStart = System.nanoTime();
+        if (samples == null) {
+            Colorizer.colorize(iterations, palette, offset, frame.pixels(), step);
+        } else {
+            int[] lut = palette.lookupTable(iterations, offset);
+            Colorizer.colorize(iterations, lut, palette.isSmooth(), frame.pixels());
+            samples.resolve(lut, palette.isSmooth(), frame.pixels());
+        }
+        Phase.COLOR.record(colorStart, label, pixels);
 
-                    Result result = (Result) in.readObject();
-                    results.add(result);
-                }
+        Platform.runLater(() -> {
+            if (session.isCancelled()) {
+                target.release(frame);
+                return;
             }
+            long presentStart = System.nanoTime();
+            target.show(frame, gc);
+            Phase.PRESENT.record(presentStart, label, pixels);
+            if (showOverlay) {
+                drawOverlay(label, iterations.getWidth(), iterations.getHeight());
+            }
+            onShown.run();
+        });
+    }
 
-            for (Result result : results) {
+    /** Records the compute phase of a finished frame, timed from {@code startNanos}. */
+    private void recordCompute(RenderMode mode, IterationBuffer iterations, long startNanos) {
+        long pixels = (long) iterations.getWidth() * iterations.getHeight();
+        long total = iterations.totalIterations();
+        Phase.COMPUTE.record(startNanos, mode.getLabel(), pixels);
+        Metrics.PIXELS.add(pixels);
+        Metrics.ITERATIONS.add(total);
+        lastFramePixels = pixels;
+        lastFrameIterations = total;
+    }
 
-                for (int i = 0; i < result.rgbValues.length; i++) {
-                    int y = result.startY + (i / width);
-                    int x = i % width;
-                    image.setRGB(x, y, result.rgbValues[i]);
-                }
+    /** Draws the last frame's phase timings and the scheduler's running totals over the image. */
+    private void drawOverlay(String mode, int width, int height) {
+        double compute = Phase.COMPUTE.getTimer().getLast() / 1e6;
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%s %dx%d%n", mode, width, height));
+        text.append(String.format("compute %8.2f ms  %6.1f Mpx/s  %6.1f Miter%n", compute,
+                compute > 0 ? lastFramePixels / compute / 1e3 : 0, lastFrameIterations / 1e6));
+        text.append(String.format("color   %8.2f ms%n", Phase.COLOR.getTimer().getLast() / 1e6));
+        text.append(String.format("present %8.2f ms%n", Phase.PRESENT.getTimer().getLast() / 1e6));
+        appendTimer(text, "tile", Metrics.TILE);
+        appendTimer(text, "row", Metrics.ROW);
+        if (RenderMode.DISTRIBUTED.getLabel().equals(mode)) {
+            text.append(String.format("queue   %d queued, %d remaining%n", Metrics.gaugeValue("distributed.queued"),
+                    Metrics.gaugeValue("distributed.remaining")));
+        }
 
+        String[] lines = text.toString().split("\n");
+        int columns = 0;
+        for (String line : lines) {
+            columns = Math.max(columns, line.length());
+        }
+        gc.setFill(Color.color(0, 0, 0, 0.6));
+        gc.fillRect(4, 4, 12 + 7.5 * columns, 8 + 14 * lines.length);
+        gc.setFill(Color.WHITE);
+        gc.setFont(Font.font("Monospaced", 12));
+        gc.fillText(text.toString(), 10, 18);
+    }
 
-            }
+    private static void appendTimer(StringBuilder text, String name, Distribution timer) {
+        if (timer.getCount() > 0) {
+            text.append(String.format("%-7s %8.3f ms mean  %8.3f ms max  (%,d)%n", name, timer.getMean() / 1e6,
+                    timer.getMax() / 1e6, timer.getCount()));
+        }
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * The kernel for work done on this machine: budget previews and refinement and edge
+     * samples, which Distributed mode keeps local as well.
+     */
+    private static Kernel localKernel(RenderMode mode, Viewport viewport, Fractal fractal) {
+        if (mode != RenderMode.DISTRIBUTED) {
+            return kernelFor(mode, fractal);
+        } else if (!fractal.isMandelbrot()) {
+            return fractal.vectorKernel();
+        }
+        return Kernels.fitsInDouble(viewport) ? Kernels.best() : Kernels.PERTURBATION;
+    }
+
+    /**
+     * The kernel a mode renders {@code fractal} with. The accelerated, deep-zoom and precision
+     * kernels are specific to the Mandelbrot set; other formulas run their own vector kernel there.
+     */
+    private static Kernel kernelFor(RenderMode mode, Fractal fractal) {
+        if (!fractal.isMandelbrot()) {
+            return switch (mode) {
+                case SEQUENTIAL, PARALLEL -> fractal.kernel();
+                case DISTRIBUTED -> throw new IllegalArgumentException("Distributed mode renders on the workers");
+                default -> fractal.vectorKernel();
+            };
         }
+        return switch (mode) {
+            case SEQUENTIAL, PARALLEL -> Kernels.SCALAR;
+            case VECTOR -> Kernels.vector();
+            case ACCELERATED -> Kernels.ACCELERATED;
+            case DEEP_ZOOM -> Kernels.PERTURBATION;
+            case AUTO_PRECISION -> Kernels.TIERED;
+            case DISTRIBUTED -> throw new IllegalArgumentException("Distributed mode renders on the workers");
+        };
+    }
+
+    private static Renderer createRenderer(RenderMode mode, Fractal fractal) {
+        return switch (mode) {
+            case SEQUENTIAL -> new SequentialRenderer(kernelFor(mode, fractal));
+            case DISTRIBUTED -> new DistributedRenderer(DistributedRenderer.parseWorkers(
+                    System.getProperty("mandelbrot.workers", DEFAULT_WORKERS)), fractal);
+            default -> new ParallelRenderer(kernelFor(mode, fractal));
+        };
     }
 
     private void handleResize() {
@@ -268,6 +583,7 @@ public class HelloApplication extends Application {
             imageHeight = Integer.parseInt(heightField.getText());
             canvas.setWidth(imageWidth);
             canvas.setHeight(imageHeight);
+            presenter = new FramePresenter(imageWidth, imageHeight);
             needsRedraw = true;
             canvas.requestFocus();
         } catch (NumberFormatException e) {
@@ -277,9 +593,24 @@ public class HelloApplication extends Application {
 
     private void handleSave(Stage stage) {
         FileChooser chooser = new FileChooser();
-        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("PNG Image", "*.png"));
+        chooser.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("PNG Image", "*.png"),
+                new FileChooser.ExtensionFilter("Iterations", "*" + IterationFile.EXTENSION));
         File file = chooser.showSaveDialog(stage);
-        if (file != null) {
+        if (file != null && file.getName().toLowerCase().endsWith(IterationFile.EXTENSION)) {
+            Path path = file.toPath();
+            renderExecutor.execute(() -> {
+                ShownFrame last = lastFrame;
+                if (last == null) {
+                    return;
+                }
+                try {
+                    IterationFile.write(path, last.viewport, last.fractal, last.iterations, true);
+                    System.out.println("Saved iterations to " + path);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        } else if (file != null) {
             WritableImage image = new WritableImage((int) canvas.getWidth(), (int) canvas.getHeight());
             canvas.snapshot(null, image);
             try {
@@ -290,104 +621,437 @@ public class HelloApplication extends Application {
         }
     }
 
-    private static void generateAndSaveImage(boolean parallel) {
-        int width = 800, height = 600;
-        double minX = -2.5, maxX = 1.5;
-        double minY = -1.5, maxY = 1.5;
-        double zoomFactor = 1.0;
-        int maxIter = 1000;
-
-        WritableImage image = new WritableImage(width, height);
-        PixelWriter writer = image.getPixelWriter();
-
-        Runnable task = () -> {
-            if (parallel) {
-                int cores = Runtime.getRuntime().availableProcessors();
-                Thread[] threads = new Thread[cores];
-                for (int t = 0; t < cores; t++) {
-                    final int id = t;
-                    threads[t] = new Thread(() -> {
-                        for (int y = id; y < height; y += cores) {
-                            for (int x = 0; x < width; x++) {
-                                double x0 = minX + x * (maxX - minX) / width / zoomFactor;
-                                double y0 = minY + y * (maxY - minY) / height / zoomFactor;
-                                double zx = 0.0, zy = 0.0;
-                                int iter = 0;
-                                while (zx * zx + zy * zy <= 4 && iter < maxIter) {
-                                    double tmp = zx * zx - zy * zy + x0;
-                                    zy = 2 * zx * zy + y0;
-                                    zx = tmp;
-                                    iter++;
-                                }
-                                Color color = (iter < maxIter)
-                                        ? Color.hsb(280 - ((double) iter / maxIter) * 280, 0.8, 1.0 - ((double) iter / maxIter) * 0.8)
-                                        : Color.BLACK;
-                                synchronized (writer) {
-                                    writer.setColor(x, y, color);
-                                }
-                            }
-                        }
-                    });
-                    threads[t].start();
+    /**
+     * Shows a frame saved with {@link #handleSave}: the view, formula and limit move to the
+     * file's, and the counts are colored with the current palette without computing anything.
+     * The file is read on the render thread, which also publishes computed frames.
+     */
+    private void handleOpen(Stage stage) {
+        FileChooser chooser = new FileChooser();
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Iterations", "*" + IterationFile.EXTENSION));
+        File file = chooser.showOpenDialog(stage);
+        if (file == null) {
+            return;
+        }
+        currentSession.cancel();
+        renderExecutor.execute(() -> {
+            IterationBuffer iterations;
+            Viewport viewport;
+            Fractal opened;
+            try (IterationFile saved = IterationFile.open(file.toPath())) {
+                if (saved.getWidth() > MAX_OPEN_SIZE || saved.getHeight() > MAX_OPEN_SIZE) {
+                    System.out.println(saved.getWidth() + "x" + saved.getHeight()
+                            + " is too large to show; recolor it with --recolor instead");
+                    return;
                 }
-                for (Thread thread : threads) {
-                    try {
-                        thread.join();
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
+                iterations = saved.read();
+                viewport = saved.getViewport();
+                opened = saved.getFractal();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            // No mode: the next frame is computed afresh rather than reusing this one.
+            lastFrame = new ShownFrame(viewport, null, opened, iterations, null);
+            Platform.runLater(() -> {
+                currentSession.cancel();
+                currentSession = new RenderSession();
+                EventHandler<ActionEvent> onFormula = formulaBox.getOnAction();
+                formulaBox.setOnAction(null);
+                formulaBox.setValue(opened.getName());
+                formulaBox.setOnAction(onFormula);
+                StringBuilder text = new StringBuilder();
+                for (double parameter : opened.getParameters()) {
+                    text.append(text.isEmpty() ? "" : ",").append(parameter);
                 }
-            } else {
-                for (int y = 0; y < height; y++) {
-                    for (int x = 0; x < width; x++) {
-                        double x0 = minX + x * (maxX - minX) / width / zoomFactor;
-                        double y0 = minY + y * (maxY - minY) / height / zoomFactor;
-                        double zx = 0.0, zy = 0.0;
-                        int iter = 0;
-                        while (zx * zx + zy * zy <= 4 && iter < maxIter) {
-                            double tmp = zx * zx - zy * zy + x0;
-                            zy = 2 * zx * zy + y0;
-                            zx = tmp;
-                            iter++;
+                parametersField.setText(text.toString());
+                parametersField.setDisable(text.isEmpty());
+                zoomFactor = spanX / viewport.getRangeX();
+                minX = viewport.getPreciseMinX();
+                minY = viewport.getPreciseMinY();
+                if (viewport.getWidth() != presenter.getWidth() || viewport.getHeight() != presenter.getHeight()) {
+                    widthField.setText(String.valueOf(viewport.getWidth()));
+                    heightField.setText(String.valueOf(viewport.getHeight()));
+                    handleResize();
+                }
+                showFractal(opened, false);
+                needsRedraw = false;
+                budgetLabel.setText(IterationBudget.statistics(iterations).toString());
+                recolor();
+            });
+        });
+    }
+
+    /**
+     * Renders {@code viewport} strip by strip into {@code output} (PNG, or raw PAM for
+     * {@code .pam}/{@code .raw}), so images far larger than the heap can be produced. With
+     * {@code supersampler} set, edge pixels are anti-aliased. With {@code iterationsFile} set,
+     * the counts are saved there as well, for {@link #recolorFile} or the GUI's Open. Returns
+     * whether the image was written.
+     */
+    private static boolean generateAndSaveImage(RenderMode mode, Fractal fractal, Palette palette, Viewport viewport,
+                                                int maxIter, Path output, int stripRows, boolean verify,
+                                                EdgeSupersampler supersampler, Path iterationsFile, boolean compress) {
+        long startTime = System.nanoTime();
+        long[] mismatches = {0};
+        long edgePixels = Metrics.counter("supersample.pixels").get();
+        long edgeSamples = Metrics.counter("supersample.samples").get();
+        try (Renderer renderer = createRenderer(mode, fractal, viewport, maxIter);
+             Renderer previewRenderer = createRenderer(mode, fractal);
+             ImageSink sink = ImageSink.create(output, viewport.getWidth(), viewport.getHeight());
+             IterationFile.Writer saved = iterationsFile == null ? null
+                     : new IterationFile.Writer(iterationsFile, viewport, maxIter, fractal, true, compress)) {
+            int[] lut = StripRenderer.lookupTable(previewRenderer, viewport, maxIter, palette, 0);
+            new StripRenderer(renderer, stripRows, supersampler).render(viewport, maxIter, lut, palette.isSmooth(),
+                    palette.isSmooth() || saved != null, sink, strip -> {
+                        if (verify) {
+                            mismatches[0] += verify(fractal, viewport, strip);
+                        }
+                        if (saved != null) {
+                            try {
+                                saved.write(strip);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
                         }
-                        Color color = (iter < maxIter)
-                                ? Color.hsb(280 - ((double) iter / maxIter) * 280, 0.8, 1.0 - ((double) iter / maxIter) * 0.8)
-                                : Color.BLACK;
-                        writer.setColor(x, y, color);
-                    }
+                    });
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+        if (verify) {
+            System.out.printf("Verify: %d of %d pixels differ from the scalar reference (%.4f%%)%n",
+                    mismatches[0], viewport.getPixelCount(), 100.0 * mismatches[0] / viewport.getPixelCount());
+        }
+        if (supersampler != null) {
+            edgePixels = Metrics.counter("supersample.pixels").get() - edgePixels;
+            edgeSamples = Metrics.counter("supersample.samples").get() - edgeSamples;
+            System.out.printf("Anti-aliased %d edge pixels (%.2f%%), %.1f samples each, %.2f samples per pixel overall%n",
+                    edgePixels, 100.0 * edgePixels / viewport.getPixelCount(),
+                    edgePixels == 0 ? 0.0 : (double) edgeSamples / edgePixels,
+                    1.0 + (double) (edgeSamples - edgePixels) / viewport.getPixelCount());
+        }
+        System.out.printf("Saved %dx%d to %s in %.2f s%n", viewport.getWidth(), viewport.getHeight(),
+                output.toAbsolutePath(), (System.nanoTime() - startTime) / 1e9);
+        if (iterationsFile != null) {
+            System.out.println("Saved iterations to " + iterationsFile.toAbsolutePath());
+        }
+        return true;
+    }
+
+    /**
+     * Colors the counts saved in {@code input} into {@code output} a chunk at a time, without
+     * computing the fractal. As for a render, the lookup table comes from a sample of the whole
+     * image, at most 256 pixels a side.
+     */
+    private static void recolorFile(Path input, Palette palette, int offset, Path output) {
+        long startTime = System.nanoTime();
+        try (IterationFile saved = IterationFile.open(input);
+             ImageSink sink = ImageSink.create(output, saved.getWidth(), saved.getHeight())) {
+            long openNanos = System.nanoTime() - startTime;
+            int step = Math.max(1, (Math.max(saved.getWidth(), saved.getHeight()) + 255) / 256);
+            int[] lut = palette.lookupTable(saved.sample(step), offset);
+            int[] argb = new int[0];
+            for (int chunk = 0; chunk < saved.getChunkCount(); chunk++) {
+                IterationBuffer strip = saved.readChunk(chunk);
+                int pixels = strip.getWidth() * strip.getHeight();
+                if (argb.length < pixels) {
+                    argb = new int[pixels];
                 }
+                long colorStart = System.nanoTime();
+                Colorizer.colorize(strip, lut, palette.isSmooth(), argb);
+                long encodeStart = System.nanoTime();
+                Phase.COLOR.record(colorStart, "recolor", pixels);
+                sink.writeRows(argb, strip.getHeight());
+                Phase.ENCODE.record(encodeStart, "recolor", pixels);
             }
+            System.out.printf("Recolored %dx%d %s (maxIter %d%s) with %s to %s in %.2f s, opened in %.2f ms%n",
+                    saved.getWidth(), saved.getHeight(), saved.getFractal(), saved.getMaxIter(),
+                    saved.isCompressed() ? ", compressed" : "", palette.getName(), output.toAbsolutePath(),
+                    (System.nanoTime() - startTime) / 1e9, openNanos / 1e6);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
-            File file = new File(parallel ? "mandelbrot_parallel.png" : "mandelbrot.png");
-            try {
-                BufferedImage bimg = SwingFXUtils.fromFXImage(image, null);
-                ImageIO.write(bimg, "png", file);
-                System.out.println("Saved to " + file.getAbsolutePath());
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+    /**
+     * Picks an iteration limit for a headless render from a preview of {@code viewport}. Strips
+     * share one limit, so the image is colored consistently from top to bottom.
+     */
+    private static int chooseMaxIter(RenderMode mode, Fractal fractal, Viewport viewport) {
+        long startTime = System.nanoTime();
+        IterationBudget.Statistics statistics = new IterationBudget(localKernel(mode, viewport, fractal),
+                mode == RenderMode.SEQUENTIAL ? null : TileScheduler.shared(), IterationBudget.DEFAULT_CEILING)
+                .choose(viewport, new RenderSession());
+        System.out.printf("Iteration budget: %s (preview %.2f ms)%n", statistics, (System.nanoTime() - startTime) / 1e6);
+        return statistics.getMaxIter();
+    }
+
+    /** A renderer whose kernel is prepared once for the whole image rather than once per strip. */
+    private static Renderer createRenderer(RenderMode mode, Fractal fractal, Viewport viewport, int maxIter) {
+        return switch (mode) {
+            case DISTRIBUTED -> createRenderer(mode, fractal);
+            case SEQUENTIAL -> new SequentialRenderer(kernelFor(mode, fractal).prepare(viewport, maxIter));
+            default -> new ParallelRenderer(kernelFor(mode, fractal).prepare(viewport, maxIter));
         };
+    }
+
+    /** Counts the pixels of {@code iterations} that differ from the fractal's sequential scalar kernel. */
+    private static long verify(Fractal fractal, Viewport viewport, IterationBuffer iterations) {
+        IterationBuffer reference = IterationBuffer.region(iterations.getOriginX(), iterations.getOriginY(),
+                iterations.getWidth(), iterations.getHeight(), iterations.getMaxIter(), false);
+        new SequentialRenderer(fractal.kernel()).render(viewport, reference);
+        long mismatches = 0;
+        int[] expected = reference.getIterations();
+        int[] actual = iterations.getIterations();
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] != actual[i]) {
+                mismatches++;
+            }
+        }
+        return mismatches;
+    }
 
-        new Thread(task).start();
+    /** The center of {@code fractal}'s whole view, as {@code --center} takes it. */
+    private static String homeCenter(Fractal fractal) {
+        double[] home = fractal.getFormula().getHome();
+        return home[0] + "," + home[1];
     }
 
     public static void main(String[] args) {
         boolean guiMode = true;
-        boolean parallelMode = false;
+        RenderMode mode = RenderMode.SEQUENTIAL;
+        boolean verify = false;
+        Fractal fractal = Fractal.MANDELBROT;
+        Palette palette = Palettes.HSB;
+        int width = 800;
+        int height = 600;
+        String center = null;
+        double zoom = 1.0;
+        double[] bounds = null;
+        int maxIter = DEFAULT_MAX_ITER;
+        boolean autoIter = false;
+        String output = null;
+        String format = "png";
+        int stripRows = 0;
+        boolean animate = false;
+        int frames = 100;
+        double zoomEnd = 1e6;
+        int maxIterEnd = -1;
+        String keyframes = null;
+        double oversample = 1.0;
+        int frameThreads = 2;
+        boolean metrics = false;
+        int aaSamples = 0;
+        int aaThreshold = EdgeSupersampler.DEFAULT_THRESHOLD;
+        String saveIterations = null;
+        boolean compress = false;
+        String recolor = null;
+        int offset = 0;
+        int servePort = -1;
+        long cacheBytes = TileServer.DEFAULT_CACHE_BYTES;
+        String cacheDir = null;
 
         for (String arg : args) {
             if (arg.equalsIgnoreCase("--no-gui")) {
                 guiMode = false;
             } else if (arg.equalsIgnoreCase("--parallel")) {
-                parallelMode = true;
+                mode = RenderMode.PARALLEL;
+            } else if (arg.startsWith("--mode=")) {
+                mode = RenderMode.fromLabel(arg.substring("--mode=".length()));
+            } else if (arg.equalsIgnoreCase("--verify")) {
+                verify = true;
+            } else if (arg.startsWith("--formula=")) {
+                fractal = Fractal.parse(arg.substring("--formula=".length()));
+            } else if (arg.startsWith("--palette=")) {
+                palette = Palettes.byName(arg.substring("--palette=".length()));
+            } else if (arg.startsWith("--threads=")) {
+                System.setProperty("mandelbrot.threads", arg.substring("--threads=".length()));
+            } else if (arg.startsWith("--tile=")) {
+                System.setProperty("mandelbrot.tileSize", arg.substring("--tile=".length()));
+            } else if (arg.startsWith("--workers=")) {
+                System.setProperty("mandelbrot.workers", arg.substring("--workers=".length()));
+            } else if (arg.startsWith("--size=")) {
+                String[] size = arg.substring("--size=".length()).toLowerCase().split("x");
+                width = Integer.parseInt(size[0]);
+                height = Integer.parseInt(size[1]);
+            } else if (arg.startsWith("--center=")) {
+                center = arg.substring("--center=".length());
+            } else if (arg.startsWith("--zoom=")) {
+                zoom = Double.parseDouble(arg.substring("--zoom=".length()));
+            } else if (arg.startsWith("--viewport=")) {
+                String[] parts = arg.substring("--viewport=".length()).split(",");
+                bounds = new double[4];
+                for (int i = 0; i < 4; i++) {
+                    bounds[i] = Double.parseDouble(parts[i]);
+                }
+            } else if (arg.startsWith("--max-iter=")) {
+                String value = arg.substring("--max-iter=".length());
+                autoIter = value.equalsIgnoreCase("auto");
+                if (!autoIter) {
+                    maxIter = Integer.parseInt(value);
+                }
+            } else if (arg.startsWith("--output=")) {
+                output = arg.substring("--output=".length());
+            } else if (arg.startsWith("--format=")) {
+                format = arg.substring("--format=".length()).toLowerCase();
+            } else if (arg.startsWith("--strip=")) {
+                stripRows = Integer.parseInt(arg.substring("--strip=".length()));
+            } else if (arg.equalsIgnoreCase("--animate")) {
+                animate = true;
+            } else if (arg.startsWith("--frames=")) {
+                frames = Integer.parseInt(arg.substring("--frames=".length()));
+            } else if (arg.startsWith("--zoom-end=")) {
+                zoomEnd = Double.parseDouble(arg.substring("--zoom-end=".length()));
+            } else if (arg.startsWith("--max-iter-end=")) {
+                maxIterEnd = Integer.parseInt(arg.substring("--max-iter-end=".length()));
+            } else if (arg.startsWith("--keyframes=")) {
+                keyframes = arg.substring("--keyframes=".length());
+            } else if (arg.startsWith("--oversample=")) {
+                oversample = Double.parseDouble(arg.substring("--oversample=".length()));
+            } else if (arg.startsWith("--frame-threads=")) {
+                frameThreads = Integer.parseInt(arg.substring("--frame-threads=".length()));
+            } else if (arg.equalsIgnoreCase("--metrics")) {
+                metrics = true;
+            } else if (arg.equalsIgnoreCase("--aa")) {
+                aaSamples = EdgeSupersampler.DEFAULT_MAX_SAMPLES;
+            } else if (arg.startsWith("--aa=")) {
+                aaSamples = Integer.parseInt(arg.substring("--aa=".length()));
+            } else if (arg.startsWith("--aa-threshold=")) {
+                aaThreshold = Integer.parseInt(arg.substring("--aa-threshold=".length()));
+            } else if (arg.startsWith("--save-iterations=")) {
+                saveIterations = arg.substring("--save-iterations=".length());
+            } else if (arg.equalsIgnoreCase("--compress")) {
+                compress = true;
+            } else if (arg.startsWith("--recolor=")) {
+                recolor = arg.substring("--recolor=".length());
+            } else if (arg.startsWith("--offset=")) {
+                offset = Integer.parseInt(arg.substring("--offset=".length()));
+            } else if (arg.equalsIgnoreCase("--serve")) {
+                servePort = DEFAULT_SERVE_PORT;
+            } else if (arg.startsWith("--serve=")) {
+                servePort = Integer.parseInt(arg.substring("--serve=".length()));
+            } else if (arg.startsWith("--cache-mb=")) {
+                cacheBytes = Long.parseLong(arg.substring("--cache-mb=".length())) << 20;
+            } else if (arg.startsWith("--cache-dir=")) {
+                cacheDir = arg.substring("--cache-dir=".length());
             }
         }
 
-        if (guiMode) {
+        boolean failed = false;
+        if (servePort >= 0) {
+            int threads = Integer.getInteger("mandelbrot.threads", Runtime.getRuntime().availableProcessors());
+            try {
+                TileServer server = new TileServer(servePort, threads,
+                        new TileCache(cacheBytes, cacheDir == null ? null : Path.of(cacheDir)), fractal, palette);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    server.close();
+                    Metrics.dump(System.out);
+                }, "tile-server-shutdown"));
+                server.start();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        } else if (recolor != null) {
+            if (output == null) {
+                String name = Path.of(recolor).getFileName().toString();
+                int dot = name.lastIndexOf('.');
+                output = (dot > 0 ? name.substring(0, dot) : name) + (format.equals("raw") ? ".pam" : ".png");
+            }
+            recolorFile(Path.of(recolor), palette, offset, Path.of(output));
+        } else if (guiMode) {
             launch(args);
+        } else if (animate) {
+            String extension = format.equals("raw") ? ".pam" : ".png";
+            if (output == null) {
+                output = "frames/mandelbrot_%05d" + extension;
+            } else if (!output.contains("%")) {
+                int dot = output.lastIndexOf('.');
+                output = dot > 0 ? output.substring(0, dot) + "_%05d" + output.substring(dot)
+                        : output + "_%05d" + extension;
+            }
+            String[] c = (center != null ? center : homeCenter(fractal)).split(",");
+            try {
+                List<ZoomAnimation.Keyframe> path = keyframes != null
+                        ? ZoomAnimation.readKeyframes(Path.of(keyframes))
+                        : List.of(new ZoomAnimation.Keyframe(new BigDecimal(c[0].trim()), new BigDecimal(c[1].trim()),
+                                zoom, autoIter ? IterationBudget.forZoom(zoom) : maxIter),
+                        new ZoomAnimation.Keyframe(new BigDecimal(c[0].trim()), new BigDecimal(c[1].trim()),
+                                zoomEnd, maxIterEnd > 0 ? maxIterEnd
+                                : autoIter ? IterationBudget.forZoom(zoomEnd) : maxIter));
+                System.out.println("Rendering " + frames + " frames of " + width + "x" + height + " in "
+                        + mode.getLabel().toLowerCase() + " mode...");
+                RenderMode frameMode = mode;
+                Fractal frameFractal = fractal;
+                new ZoomAnimation(path, frames, width, height).render(
+                        (viewport, iterations) -> createRenderer(frameMode, frameFractal, viewport, iterations),
+                        palette, output, frameThreads, oversample);
+            } catch (Exception e) {
+                e.printStackTrace();
+                failed = true;
+            }
         } else {
-            System.out.println("Generating image in " + (parallelMode ? "parallel" : "sequential") + " mode...");
-            generateAndSaveImage(parallelMode);
+            Viewport viewport;
+            if (bounds != null) {
+                viewport = new Viewport(bounds[0], bounds[1], bounds[2], bounds[3], 1.0, width, height);
+            } else {
+                String[] c = (center != null ? center : homeCenter(fractal)).split(",");
+                viewport = Viewport.centered(new BigDecimal(c[0].trim()), new BigDecimal(c[1].trim()),
+                        fractal.getFormula().getHome()[2] / zoom, width, height);
+            }
+            if (output == null) {
+                String extension = format.equals("raw") ? ".pam" : ".png";
+                String name = fractal.getName().toLowerCase().replace(' ', '_');
+                output = (mode == RenderMode.SEQUENTIAL ? name : name + "_" + mode.name().toLowerCase()) + extension;
+            }
+            System.out.println("Generating " + width + "x" + height + " image of " + fractal + " in "
+                    + mode.getLabel().toLowerCase() + " mode...");
+            if (mode == RenderMode.AUTO_PRECISION) {
+                System.out.printf("Precision: %s (pixel spacing %.1e of the coordinates)%n",
+                        Precision.forViewport(viewport).getLabel(), Precision.relativeSpacing(viewport));
+            }
+            if (autoIter) {
+                maxIter = chooseMaxIter(mode, fractal, viewport);
+            }
+            EdgeSupersampler supersampler = aaSamples > 1 ? new EdgeSupersampler(localKernel(mode, viewport, fractal),
+                    mode == RenderMode.SEQUENTIAL ? null : TileScheduler.shared(), aaSamples, aaThreshold) : null;
+            failed = !generateAndSaveImage(mode, fractal, palette, viewport, maxIter, Path.of(output),
+                    stripRows > 0 ? stripRows : StripRenderer.defaultStripRows(width), verify, supersampler,
+                    saveIterations == null ? null : Path.of(saveIterations), compress);
+        }
+        if (metrics) {
+            Metrics.dump(System.out);
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * A computed or opened frame together with what it was computed for, published as a whole
+     * so the FX thread never sees the counts of one frame with the view or mode of another.
+     */
+    private static final class ShownFrame {
+        private final Viewport viewport;
+        /** Null for a frame opened from a file. */
+        private final RenderMode mode;
+        private final Fractal fractal;
+        private final IterationBuffer iterations;
+        /** The anti-aliased edge pixels of {@link #iterations}, or null. */
+        private final Supersamples samples;
+
+        ShownFrame(Viewport viewport, RenderMode mode, Fractal fractal, IterationBuffer iterations,
+                   Supersamples samples) {
+            this.viewport = viewport;
+            this.mode = mode;
+            this.fractal = fractal;
+            this.iterations = iterations;
+            this.samples = samples;
+        }
+
+        ShownFrame withSamples(Supersamples samples) {
+            return new ShownFrame(viewport, mode, fractal, iterations, samples);
         }
     }
 }
@@ -0,0 +1,128 @@
+package primorska.mandelbrotsequential;
+
+import javafx.application.Platform;
+import javafx.scene.canvas.GraphicsContext;
+
+import primorska.mandelbrotsequential.distributed.DistributedRenderer;
+import primorska.mandelbrotsequential.engine.Colorizer;
+import primorska.mandelbrotsequential.engine.IterationBuffer;
+import primorska.mandelbrotsequential.engine.RenderSession;
+import primorska.mandelbrotsequential.metrics.Distribution;
+import primorska.mandelbrotsequential.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shows a Distributed frame while its tiles are still arriving. Tiles are collected as the
+ * dispatcher threads deliver them, and a painter thread repaints at most every
+ * {@link #REPAINT_MILLIS}. Each of the presenter's two buffers remembers how many tiles it
+ * already holds, so a repaint colors only the tiles that buffer is missing rather than the
+ * whole frame. Closing the stream stops the painter; the caller then presents the finished
+ * frame as usual.
+ */
+class TileStream implements DistributedRenderer.TileListener, AutoCloseable {
+    /** Longest a repaint waits for newer tiles; about 30 repaints a second. */
+    static final int REPAINT_MILLIS = 33;
+    /** Color of the parts of the frame no tile has reached yet. */
+    private static final int PENDING = 0xFF202020;
+    private static final Distribution FIRST_PAINT = Metrics.timer("distributed.first.paint");
+
+    private final FramePresenter presenter;
+    private final GraphicsContext gc;
+    private final RenderSession session;
+    private final IterationBuffer iterations;
+    private final int[] lut;
+    private final boolean smooth;
+    private final long startNanos = System.nanoTime();
+    private final List<int[]> tiles = new ArrayList<>();
+    /** Tiles already colored into each buffer; only the painter thread touches it. */
+    private final Map<FramePresenter.Frame, Integer> painted = new IdentityHashMap<>();
+    private final Thread painter;
+    private int lastPainted;
+    private volatile long firstPaintNanos = -1;
+
+    TileStream(FramePresenter presenter, GraphicsContext gc, RenderSession session, IterationBuffer iterations,
+               int[] lut, boolean smooth) {
+        this.presenter = presenter;
+        this.gc = gc;
+        this.session = session;
+        this.iterations = iterations;
+        this.lut = lut;
+        this.smooth = smooth;
+        this.painter = Thread.ofVirtual().name("mandelbrot-tile-painter").start(this::paintLoop);
+    }
+
+    @Override
+    public void tileComplete(IterationBuffer buffer, int x0, int y0, int x1, int y1) {
+        synchronized (tiles) {
+            tiles.add(new int[] {x0, y0, x1, y1});
+        }
+    }
+
+    /** Nanoseconds from the start of the stream until its first tiles were on screen, or -1. */
+    long getFirstPaintNanos() {
+        return firstPaintNanos;
+    }
+
+    private void paintLoop() {
+        try {
+            while (!session.isCancelled()) {
+                Thread.sleep(REPAINT_MILLIS);
+                paint();
+            }
+        } catch (InterruptedException e) {
+            // Closed.
+        }
+    }
+
+    private void paint() throws InterruptedException {
+        int count;
+        synchronized (tiles) {
+            count = tiles.size();
+        }
+        if (count == lastPainted) {
+            return;
+        }
+        FramePresenter.Frame frame = presenter.acquire();
+        int from = painted.getOrDefault(frame, -1);
+        if (from < 0) {
+            Arrays.fill(frame.pixels(), PENDING);
+            from = 0;
+        }
+        for (int i = from; i < count; i++) {
+            int[] tile;
+            synchronized (tiles) {
+                tile = tiles.get(i);
+            }
+            Colorizer.colorize(iterations, lut, smooth, frame.pixels(), tile[0], tile[1], tile[2], tile[3]);
+        }
+        painted.put(frame, count);
+        lastPainted = count;
+
+        Platform.runLater(() -> {
+            if (session.isCancelled()) {
+                presenter.release(frame);
+                return;
+            }
+            presenter.show(frame, gc);
+            if (firstPaintNanos < 0) {
+                firstPaintNanos = FIRST_PAINT.recordSince(startNanos);
+            }
+        });
+    }
+
+    /** Stops the painter, waiting for a repaint in progress to be handed to the FX thread. */
+    @Override
+    public void close() {
+        painter.interrupt();
+        try {
+            painter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package primorska.mandelbrotsequential.distributed;
+
+import primorska.mandelbrotsequential.engine.IterationBuffer;
+import primorska.mandelbrotsequential.engine.Kernels;
+import primorska.mandelbrotsequential.engine.RenderSession;
+import primorska.mandelbrotsequential.engine.Renderer;
+import primorska.mandelbrotsequential.engine.Viewport;
+import primorska.mandelbrotsequential.formula.Fractal;
+import primorska.mandelbrotsequential.metrics.Distribution;
+import primorska.mandelbrotsequential.metrics.Metrics;
+import primorska.mandelbrotsequential.metrics.WorkerResultEvent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cuts the frame into small tiles in a shared queue and lets every worker pull from it over a
+ * persistent connection, with several tiles in flight per worker. Faster workers come back for
+ * more sooner, so they end up with more of the frame. Tiles of a worker that fails or times
+ * out go back on the queue, and once the queue runs dry idle workers duplicate tiles still
+ * outstanding elsewhere, so one slow node cannot hold the frame back.
+ * <p>
+ * Workers use their fastest double kernel, or perturbation once the viewport is deeper than
+ * {@code double} can resolve. Formulas other than Mandelbrot travel with each task and run in
+ * the formula's own vector kernel.
+ * <p>
+ * Tiles are handed out nearest the frame center first, and a {@link TileListener} sees each
+ * one as soon as it lands, so a caller can show the frame while the slowest worker is still busy.
+ * <p>
+ * Round trips and result sizes are recorded per worker under {@code distributed.<worker>.*},
+ * the time from the start of a frame to its first tile under {@code distributed.first.tile},
+ * and the tiles still queued for the current frame under {@code distributed.queued}.
+ */
+public class DistributedRenderer implements Renderer {
+    public static final int DEFAULT_TILE_SIZE = 64;
+    public static final int DEFAULT_PIPELINE_DEPTH = 4;
+    public static final int DEFAULT_TIMEOUT_MILLIS = 10_000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 1_000;
+    private static final long POLL_MILLIS = 10;
+    private static final Distribution RESULT_BYTES = Metrics.distribution("distributed.result.bytes");
+    private static final Distribution FIRST_TILE = Metrics.timer("distributed.first.tile");
+
+    /** Called on a dispatcher thread as each tile lands in the frame, in no particular order. */
+    public interface TileListener {
+        void tileComplete(IterationBuffer buffer, int x0, int y0, int x1, int y1);
+    }
+
+    private final List<String> workers;
+    private final int tileSize;
+    private final int pipelineDepth;
+    private final int timeoutMillis;
+    private final Fractal fractal;
+    private final WorkerConnection[] connections;
+    private volatile Frame current;
+
+    public DistributedRenderer(List<String> workers) {
+        this(workers, Fractal.MANDELBROT);
+    }
+
+    public DistributedRenderer(List<String> workers, Fractal fractal) {
+        this(workers, DEFAULT_TILE_SIZE, DEFAULT_PIPELINE_DEPTH, DEFAULT_TIMEOUT_MILLIS, fractal);
+    }
+
+    /**
+     * @param pipelineDepth tiles kept in flight per worker
+     * @param timeoutMillis how long to wait for a worker's next result before re-issuing its tiles
+     */
+    public DistributedRenderer(List<String> workers, int tileSize, int pipelineDepth, int timeoutMillis,
+                               Fractal fractal) {
+        if (workers.isEmpty()) {
+            throw new IllegalArgumentException("At least one worker is required");
+        }
+        this.workers = List.copyOf(workers);
+        this.tileSize = tileSize;
+        this.pipelineDepth = pipelineDepth;
+        this.timeoutMillis = timeoutMillis;
+        this.fractal = fractal;
+        this.connections = new WorkerConnection[workers.size()];
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = new WorkerConnection(this.workers.get(i), pipelineDepth);
+        }
+        Metrics.gauge("distributed.queued", () -> {
+            Frame frame = current;
+            return frame == null ? 0 : frame.queue.size();
+        });
+        Metrics.gauge("distributed.remaining", () -> {
+            Frame frame = current;
+            return frame == null ? 0 : frame.remaining.getCount();
+        });
+    }
+
+    /** Parses a comma-separated {@code host:port} list, e.g. {@code localhost:5000,localhost:5001}. */
+    public static List<String> parseWorkers(String list) {
+        List<String> workers = new ArrayList<>();
+        for (String worker : list.split(",")) {
+            if (!worker.isBlank()) {
+                workers.add(worker.trim());
+            }
+        }
+        return workers;
+    }
+
+    public List<String> getWorkers() {
+        return workers;
+    }
+
+    @Override
+    public void render(Viewport viewport, IterationBuffer out) {
+        render(viewport, out, new RenderSession());
+    }
+
+    @Override
+    public void render(Viewport viewport, IterationBuffer out, RenderSession session) {
+        render(viewport, out, session, null);
+    }
+
+    /**
+     * Renders as above, handing each tile to {@code listener}, if not null, as soon as it lands.
+     *
+     * @throws IllegalStateException if every worker failed or was unreachable before the frame was complete
+     */
+    public void render(Viewport viewport, IterationBuffer out, RenderSession session, TileListener listener) {
+        String kernel = Kernels.fitsInDouble(viewport) ? "Vector" : Kernels.PERTURBATION.getName();
+        Frame frame = new Frame(tiles(viewport, out, kernel), out, workers.size(), listener);
+        current = frame;
+
+        for (WorkerConnection connection : connections) {
+            Thread.ofVirtual().name("mandelbrot-dispatch-" + connection.address)
+                    .start(() -> dispatch(connection, frame, session));
+        }
+
+        try {
+            while (!frame.remaining.await(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (session.isCancelled()) {
+                    return;
+                }
+                if (frame.activeWorkers.get() == 0) {
+                    throw new IllegalStateException("Distributed render incomplete: " + frame.remaining.getCount()
+                            + " of " + frame.tasks.length + " tiles missing, no workers left");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Cuts the part of the frame covered by {@code out} into tiles, those nearest its center first. */
+    private List<Task> tiles(Viewport viewport, IterationBuffer out, String kernel) {
+        List<Task> tasks = new ArrayList<>();
+        int x1 = out.getOriginX() + out.getWidth();
+        int y1 = out.getOriginY() + out.getHeight();
+        for (int y = out.getOriginY(); y < y1; y += tileSize) {
+            for (int x = out.getOriginX(); x < x1; x += tileSize) {
+                tasks.add(new Task(x, Math.min(x + tileSize, x1), y, Math.min(y + tileSize, y1),
+                        viewport, out.getMaxIter(), kernel, fractal, out.hasFractions()));
+            }
+        }
+        double centerX = out.getOriginX() + out.getWidth() / 2.0;
+        double centerY = out.getOriginY() + out.getHeight() / 2.0;
+        tasks.sort(Comparator.comparingDouble(task -> Math.hypot((task.getStartX() + task.getEndX()) / 2.0 - centerX,
+                (task.getStartY() + task.getEndY()) / 2.0 - centerY)));
+        return tasks;
+    }
+
+    /**
+     * Feeds one worker until the frame is done. Holds the connection's lock throughout, so a
+     * connection still draining results of a previous frame joins this one once it is free.
+     */
+    private void dispatch(WorkerConnection connection, Frame frame, RenderSession session) {
+        connection.lock.lock();
+        try {
+            if (frame.isFinished(session)) {
+                return;
+            }
+            if (!connection.open(timeoutMillis)) {
+                frame.activeWorkers.decrementAndGet();
+                return;
+            }
+            Queue<Integer> inFlight = new ArrayDeque<>();
+            try {
+                while (true) {
+                    boolean stopping = frame.isFinished(session);
+                    while (!stopping && inFlight.size() < pipelineDepth) {
+                        int tile = frame.next(inFlight.isEmpty());
+                        if (tile < 0) {
+                            break;
+                        }
+                        connection.send(frame.tasks[tile]);
+                        inFlight.add(tile);
+                    }
+                    if (inFlight.isEmpty()) {
+                        if (stopping) {
+                            return;
+                        }
+                        frame.remaining.await(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                        continue;
+                    }
+                    connection.flush();
+                    int tile = inFlight.element();
+                    connection.receive(frame, frame.tasks[tile]);
+                    frame.complete(tile, connection.decoder);
+                    inFlight.remove();
+                }
+            } catch (IOException e) {
+                System.err.println("Worker " + connection.address + " failed (" + e.getMessage() + "), re-issuing "
+                        + inFlight.size() + " tiles");
+                connection.close();
+                frame.queue.addAll(inFlight);
+                frame.activeWorkers.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            connection.lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (WorkerConnection connection : connections) {
+            connection.close();
+        }
+    }
+
+    /** The tiles of one frame and who has finished what. */
+    private static final class Frame {
+        final Task[] tasks;
+        final IterationBuffer out;
+        final TileListener listener;
+        final long startNanos = System.nanoTime();
+        final AtomicBoolean anyDelivered = new AtomicBoolean();
+        final Queue<Integer> queue = new ConcurrentLinkedQueue<>();
+        final AtomicIntegerArray done;
+        final CountDownLatch remaining;
+        final AtomicInteger activeWorkers;
+        final AtomicInteger speculationCursor = new AtomicInteger();
+
+        Frame(List<Task> tasks, IterationBuffer out, int workers, TileListener listener) {
+            this.tasks = tasks.toArray(new Task[0]);
+            this.out = out;
+            this.listener = listener;
+            this.done = new AtomicIntegerArray(this.tasks.length);
+            this.remaining = new CountDownLatch(this.tasks.length);
+            this.activeWorkers = new AtomicInteger(workers);
+            for (int i = 0; i < this.tasks.length; i++) {
+                queue.add(i);
+            }
+        }
+
+        boolean isFinished(RenderSession session) {
+            return remaining.getCount() == 0 || session.isCancelled();
+        }
+
+        /**
+         * The next queued tile, or, if {@code speculate} and the queue is empty, a tile still
+         * outstanding at another worker; -1 if there is nothing to hand out.
+         */
+        int next(boolean speculate) {
+            Integer tile;
+            while ((tile = queue.poll()) != null) {
+                if (done.get(tile) == 0) {
+                    return tile;
+                }
+            }
+            if (!speculate) {
+                return -1;
+            }
+            for (int i = 0; i < tasks.length && remaining.getCount() > 0; i++) {
+                int candidate = Math.floorMod(speculationCursor.getAndIncrement(), tasks.length);
+                if (done.get(candidate) == 0) {
+                    return candidate;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Decodes a tile straight into the frame unless another worker already delivered it,
+         * then reports it to the listener. A result whose position or size is not the tile's is
+         * rejected before it touches the frame. If decoding fails the tile is released again for
+         * the caller to re-issue.
+         */
+        void complete(int tile, WireProtocol.Decoder decoder) throws IOException {
+            Task task = tasks[tile];
+            decoder.checkTile(task);
+            if (!done.compareAndSet(tile, 0, 1)) {
+                return;
+            }
+            try {
+                decoder.decodeInto(out);
+            } catch (IOException e) {
+                done.set(tile, 0);
+                throw e;
+            }
+            if (!anyDelivered.getAndSet(true)) {
+                FIRST_TILE.recordSince(startNanos);
+            }
+            if (listener != null) {
+                listener.tileComplete(out, task.getStartX(), task.getStartY(), task.getEndX(), task.getEndY());
+            }
+            remaining.countDown();
+        }
+    }
+
+    /** A persistent connection to one worker, reopened on the next frame after a failure. */
+    private static final class WorkerConnection {
+        final String address;
+        final ReentrantLock lock = new ReentrantLock();
+        final WireProtocol.Decoder decoder = new WireProtocol.Decoder();
+        private final Distribution roundTrips;
+        private final Distribution resultBytes;
+        /** Send times of the tiles in flight, oldest at {@code received}. */
+        private final long[] sentAt;
+        private int sent;
+        private int received;
+        private Socket socket;
+        private DataOutputStream out;
+        private DataInputStream in;
+        private boolean reportedDown;
+
+        WorkerConnection(String address, int pipelineDepth) {
+            this.address = address;
+            this.roundTrips = Metrics.timer("distributed." + address + ".roundtrip");
+            this.resultBytes = Metrics.distribution("distributed." + address + ".bytes");
+            this.sentAt = new long[pipelineDepth];
+        }
+
+        boolean open(int timeoutMillis) {
+            if (socket != null && !socket.isClosed()) {
+                return true;
+            }
+            String[] parts = address.split(":");
+            try {
+                socket = new Socket();
+                socket.connect(new InetSocketAddress(parts[0], Integer.parseInt(parts[1])), CONNECT_TIMEOUT_MILLIS);
+                socket.setSoTimeout(timeoutMillis);
+                socket.setTcpNoDelay(true);
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                WireProtocol.writeHello(out, WireProtocol.FLAG_DEFLATE);
+                if ((WireProtocol.readHello(in) & WireProtocol.FLAG_BUSY) != 0) {
+                    throw new IOException("worker is at its connection limit");
+                }
+                reportedDown = false;
+                sent = 0;
+                received = 0;
+                return true;
+            } catch (IOException e) {
+                if (!reportedDown) {
+                    System.err.println("Worker " + address + " unavailable: " + e.getMessage());
+                    reportedDown = true;
+                }
+                close();
+                return false;
+            }
+        }
+
+        void send(Task task) throws IOException {
+            WireProtocol.writeTask(out, task);
+            sentAt[sent++ % sentAt.length] = System.nanoTime();
+        }
+
+        /** Reads the result of {@code task}, the oldest tile in flight, into {@link #decoder} and records it. */
+        void receive(Frame frame, Task task) throws IOException {
+            decoder.read(in, task);
+            long roundTrip = roundTrips.recordSince(sentAt[received++ % sentAt.length]);
+            int bytes = decoder.getWireBytes();
+            resultBytes.record(bytes);
+            RESULT_BYTES.record(bytes);
+            WorkerResultEvent event = new WorkerResultEvent();
+            if (event.shouldCommit()) {
+                event.commit(address, decoder.getStartX(), decoder.getStartY(), bytes, roundTrip,
+                        frame.queue.size());
+            }
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        /** Closes the socket; a dispatcher still using it fails its next read or write. */
+        void close() {
+            Socket current = socket;
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
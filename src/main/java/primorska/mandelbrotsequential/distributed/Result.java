@@ -1,14 +1,26 @@
-
 package primorska.mandelbrotsequential.distributed;
 
-import java.io.Serializable;
-
-public class Result implements Serializable {
+/**
+ * Iterations of one tile, row-major, {@code width} pixels per row, and their fractional parts
+ * if the task asked for them.
+ */
+public class Result {
+    public final int startX;
     public final int startY;
-    public final int[] rgbValues;
+    public final int width;
+    public final int[] iterations;
+    /** Null unless {@link Task#hasFractions()}. */
+    public final float[] fractions;
+
+    public Result(int startX, int startY, int width, int[] iterations) {
+        this(startX, startY, width, iterations, null);
+    }
 
-    public Result(int startY, int[] rgbValues) {
+    public Result(int startX, int startY, int width, int[] iterations, float[] fractions) {
+        this.startX = startX;
         this.startY = startY;
-        this.rgbValues = rgbValues;
+        this.width = width;
+        this.iterations = iterations;
+        this.fractions = fractions;
     }
 }
@@ -1,19 +1,70 @@
 package primorska.mandelbrotsequential.distributed;
 
-import java.io.Serializable;
+import primorska.mandelbrotsequential.engine.Viewport;
+import primorska.mandelbrotsequential.formula.Fractal;
 
-public class Task implements Serializable {
+import java.math.BigDecimal;
+
+public class Task {
+    private final int startX;
+    private final int endX;
     private final int startY;
     private final int endY;
     private final int width;
     private final int height;
     private final double minX, maxX, minY, maxY;
+    private final BigDecimal preciseMinX, preciseMinY;
     private final double zoomFactor;
     private final int maxIter;
+    private final String kernel;
+    private final Fractal fractal;
+    private final boolean fractions;
+
+    public Task(int startY, int endY, Viewport viewport, int maxIter, String kernel) {
+        this(0, viewport.getWidth(), startY, endY, viewport, maxIter, kernel);
+    }
+
+    /** A tile covering columns {@code [startX, endX)} and rows {@code [startY, endY)} of the frame. */
+    public Task(int startX, int endX, int startY, int endY, Viewport viewport, int maxIter, String kernel) {
+        this(startX, endX, startY, endY, viewport, maxIter, kernel, Fractal.MANDELBROT);
+    }
+
+    /**
+     * A tile of {@code fractal}. {@code kernel} names the Mandelbrot kernel to use; other
+     * formulas always run their own vector kernel.
+     */
+    public Task(int startX, int endX, int startY, int endY, Viewport viewport, int maxIter, String kernel,
+                Fractal fractal) {
+        this(startX, endX, startY, endY, viewport, maxIter, kernel, fractal, false);
+    }
+
+    /** As above; with {@code fractions} the result carries the fractional escape counts as well. */
+    public Task(int startX, int endX, int startY, int endY, Viewport viewport, int maxIter, String kernel,
+                Fractal fractal, boolean fractions) {
+        this.startX = startX;
+        this.endX = endX;
+        this.startY = startY;
+        this.endY = endY;
+        this.width = viewport.getWidth();
+        this.height = viewport.getHeight();
+        this.minX = viewport.getMinX();
+        this.maxX = viewport.getMaxX();
+        this.minY = viewport.getMinY();
+        this.maxY = viewport.getMaxY();
+        this.preciseMinX = viewport.getPreciseMinX();
+        this.preciseMinY = viewport.getPreciseMinY();
+        this.zoomFactor = viewport.getZoomFactor();
+        this.maxIter = maxIter;
+        this.kernel = kernel;
+        this.fractal = fractal;
+        this.fractions = fractions;
+    }
 
-    public Task(int startY, int endY, int width, int height,
-                double minX, double maxX, double minY, double maxY,
-                double zoomFactor, int maxIter) {
+    Task(int startX, int endX, int startY, int endY, int width, int height,
+         double minX, double maxX, double minY, double maxY, BigDecimal preciseMinX, BigDecimal preciseMinY,
+         double zoomFactor, int maxIter, String kernel, Fractal fractal, boolean fractions) {
+        this.startX = startX;
+        this.endX = endX;
         this.startY = startY;
         this.endY = endY;
         this.width = width;
@@ -22,10 +73,17 @@ public class Task implements Serializable {
         this.maxX = maxX;
         this.minY = minY;
         this.maxY = maxY;
+        this.preciseMinX = preciseMinX;
+        this.preciseMinY = preciseMinY;
         this.zoomFactor = zoomFactor;
         this.maxIter = maxIter;
+        this.kernel = kernel;
+        this.fractal = fractal;
+        this.fractions = fractions;
     }
 
+    public int getStartX() { return startX; }
+    public int getEndX() { return endX; }
     public int getStartY() { return startY; }
     public int getEndY() { return endY; }
     public int getWidth() { return width; }
@@ -34,6 +92,25 @@ public class Task implements Serializable {
     public double getMaxX() { return maxX; }
     public double getMinY() { return minY; }
     public double getMaxY() { return maxY; }
+    public BigDecimal getPreciseMinX() { return preciseMinX; }
+    public BigDecimal getPreciseMinY() { return preciseMinY; }
     public double getZoomFactor() { return zoomFactor; }
     public int getMaxIter() { return maxIter; }
+    public String getKernel() { return kernel; }
+    public Fractal getFractal() { return fractal; }
+    public boolean hasFractions() { return fractions; }
+
+    /** Whether {@code other} belongs to the same frame, so a kernel prepared for one serves both. */
+    public boolean sameFrame(Task other) {
+        return other != null
+                && width == other.width && height == other.height
+                && minX == other.minX && maxX == other.maxX && minY == other.minY && maxY == other.maxY
+                && zoomFactor == other.zoomFactor && maxIter == other.maxIter
+                && preciseMinX.equals(other.preciseMinX) && preciseMinY.equals(other.preciseMinY)
+                && kernel.equals(other.kernel) && fractal.equals(other.fractal);
+    }
+
+    public Viewport toViewport() {
+        return new Viewport(preciseMinX, preciseMinY, maxX - minX, maxY - minY, zoomFactor, width, height);
+    }
 }
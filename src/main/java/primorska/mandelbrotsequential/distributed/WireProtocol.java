@@ -0,0 +1,407 @@
+package primorska.mandelbrotsequential.distributed;
+
+import primorska.mandelbrotsequential.engine.IterationBuffer;
+import primorska.mandelbrotsequential.engine.Kernels;
+import primorska.mandelbrotsequential.formula.Formulas;
+import primorska.mandelbrotsequential.formula.Fractal;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary protocol between {@link DistributedRenderer} and {@link WorkerServer}.
+ * <p>
+ * Both sides open with a hello: magic, version and the client's capability flags, which the
+ * worker answers with the flags it will use. After that the client streams tasks and the
+ * worker answers each with a result, in order. A result carries the tile's iteration counts as
+ * runs of {@code (zigzag varint delta to the previous run's value, varint length)}; escape-time
+ * images are mostly long runs, so this is a fraction of the 4 bytes per pixel a raw array costs.
+ * A task can ask for the fractional parts too; they follow the runs as raw {@code float} bits,
+ * which is what smooth coloring and saved iteration files need, and mostly zeros inside the set.
+ * Payloads above {@value #DEFLATE_THRESHOLD} bytes are deflated as well if both sides agreed to it.
+ */
+final class WireProtocol {
+    static final int MAGIC = 0x4D414E44;
+    /** 2 added the formula and its parameters to tasks, 3 the fractional parts of the counts. */
+    static final int VERSION = 3;
+    static final int FLAG_DEFLATE = 1;
+    /** Sent by a worker in place of a normal hello when it is at its connection limit. */
+    static final int FLAG_BUSY = 2;
+    /** Set in a result's encoding when the fractions of its pixels follow the runs. */
+    static final int FLAG_FRACTIONS = 4;
+
+    private static final int DEFLATE_THRESHOLD = 512;
+
+    private WireProtocol() {
+    }
+
+    /**
+     * Longest result payload a tile of {@code pixels} can have: a run per pixel, each two
+     * varints of at most five bytes, and four bytes per pixel of fractions.
+     */
+    static long maxEncodedLength(long pixels, boolean fractions) {
+        return pixels * (fractions ? 14 : 10);
+    }
+
+    static void writeHello(DataOutputStream out, int flags) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(flags);
+        out.flush();
+    }
+
+    /** Reads the other side's hello and returns its flags. */
+    static int readHello(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a Mandelbrot worker connection");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported protocol version " + version + ", expected " + VERSION);
+        }
+        return in.readInt();
+    }
+
+    static void writeTask(DataOutputStream out, Task task) throws IOException {
+        out.writeInt(task.getStartX());
+        out.writeInt(task.getEndX());
+        out.writeInt(task.getStartY());
+        out.writeInt(task.getEndY());
+        out.writeInt(task.getWidth());
+        out.writeInt(task.getHeight());
+        out.writeDouble(task.getMinX());
+        out.writeDouble(task.getMaxX());
+        out.writeDouble(task.getMinY());
+        out.writeDouble(task.getMaxY());
+        out.writeUTF(task.getPreciseMinX().toString());
+        out.writeUTF(task.getPreciseMinY().toString());
+        out.writeDouble(task.getZoomFactor());
+        out.writeInt(task.getMaxIter());
+        out.writeUTF(task.getKernel());
+        out.writeUTF(task.getFractal().getName());
+        double[] parameters = task.getFractal().getParameters();
+        out.writeByte(parameters.length);
+        for (double parameter : parameters) {
+            out.writeDouble(parameter);
+        }
+        out.writeBoolean(task.hasFractions());
+    }
+
+    /**
+     * Reads the next task; throws {@link java.io.EOFException} when the client has hung up, and
+     * an {@link IOException} for a task the worker could not render: an unknown kernel or
+     * formula, bad parameters, or a tile outside a frame of positive size.
+     */
+    static Task readTask(DataInputStream in) throws IOException {
+        int startX = in.readInt();
+        int endX = in.readInt();
+        int startY = in.readInt();
+        int endY = in.readInt();
+        int width = in.readInt();
+        int height = in.readInt();
+        double minX = in.readDouble();
+        double maxX = in.readDouble();
+        double minY = in.readDouble();
+        double maxY = in.readDouble();
+        String preciseMinX = in.readUTF();
+        String preciseMinY = in.readUTF();
+        double zoomFactor = in.readDouble();
+        int maxIter = in.readInt();
+        String kernel = in.readUTF();
+        String formula = in.readUTF();
+        double[] parameters = new double[in.readUnsignedByte()];
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = in.readDouble();
+        }
+        boolean fractions = in.readBoolean();
+        if (startX < 0 || startX >= endX || endX > width || startY < 0 || startY >= endY || endY > height
+                || maxIter <= 0) {
+            throw new IOException("Tile " + startX + ".." + endX + " x " + startY + ".." + endY
+                    + " does not fit a " + width + "x" + height + " frame of " + maxIter + " iterations");
+        }
+        try {
+            Fractal fractal = new Fractal(Formulas.byName(formula), parameters);
+            Task task = new Task(startX, endX, startY, endY, width, height, minX, maxX, minY, maxY,
+                    new BigDecimal(preciseMinX), new BigDecimal(preciseMinY), zoomFactor, maxIter, kernel,
+                    fractal, fractions);
+            // Resolve what the worker will render with now, so a bad task fails here and not on a worker thread.
+            if (fractal.isMandelbrot()) {
+                Kernels.byName(kernel);
+            } else {
+                fractal.vectorKernel();
+            }
+            task.toViewport();
+            return task;
+        } catch (IllegalArgumentException e) {
+            // Also covers NumberFormatException from a malformed anchor.
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /** Writes results on one connection, reusing its buffers and deflater. */
+    static final class Encoder {
+        private final boolean deflate;
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private byte[] encoded = new byte[4096];
+        private byte[] compressed = new byte[4096];
+        private int length;
+        private long bytesWritten;
+
+        Encoder(boolean deflate) {
+            this.deflate = deflate;
+        }
+
+        void write(DataOutputStream out, Result result) throws IOException {
+            encode(result.iterations);
+            int encoding = 0;
+            if (result.fractions != null) {
+                append(result.fractions);
+                encoding |= FLAG_FRACTIONS;
+            }
+            int height = result.iterations.length / result.width;
+            out.writeInt(result.startX);
+            out.writeInt(result.startY);
+            out.writeInt(result.width);
+            out.writeInt(height);
+
+            int compressedLength = deflate && length > DEFLATE_THRESHOLD ? compress() : -1;
+            if (compressedLength >= 0 && compressedLength < length) {
+                out.writeByte(encoding | FLAG_DEFLATE);
+                out.writeInt(compressedLength);
+                out.writeInt(length);
+                out.write(compressed, 0, compressedLength);
+                bytesWritten += 25 + compressedLength;
+            } else {
+                out.writeByte(encoding);
+                out.writeInt(length);
+                out.write(encoded, 0, length);
+                bytesWritten += 21 + length;
+            }
+        }
+
+        long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        void close() {
+            deflater.end();
+        }
+
+        private void encode(int[] values) {
+            length = 0;
+            int previous = 0;
+            int i = 0;
+            while (i < values.length) {
+                int value = values[i];
+                int run = 1;
+                while (i + run < values.length && values[i + run] == value) {
+                    run++;
+                }
+                putVarint((value - previous) << 1 ^ (value - previous) >> 31);
+                putVarint(run);
+                previous = value;
+                i += run;
+            }
+        }
+
+        private void append(float[] fractions) {
+            if (length + 4 * fractions.length > encoded.length) {
+                encoded = Arrays.copyOf(encoded, Math.max(length + 4 * fractions.length, encoded.length * 2));
+            }
+            for (float fraction : fractions) {
+                int bits = Float.floatToRawIntBits(fraction);
+                encoded[length++] = (byte) (bits >>> 24);
+                encoded[length++] = (byte) (bits >>> 16);
+                encoded[length++] = (byte) (bits >>> 8);
+                encoded[length++] = (byte) bits;
+            }
+        }
+
+        private void putVarint(int value) {
+            if (length + 5 > encoded.length) {
+                encoded = Arrays.copyOf(encoded, encoded.length * 2);
+            }
+            while ((value & ~0x7F) != 0) {
+                encoded[length++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            encoded[length++] = (byte) value;
+        }
+
+        /** Deflates the encoded runs into {@code compressed}; returns the compressed length. */
+        private int compress() {
+            deflater.reset();
+            deflater.setInput(encoded, 0, length);
+            deflater.finish();
+            int size = 0;
+            while (!deflater.finished()) {
+                if (size == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                size += deflater.deflate(compressed, size, compressed.length - size);
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Reads results on one connection. {@link #read} takes a result off the wire; the caller
+     * checks that it covers the tile it asked for and then either decodes it straight into the
+     * frame with {@link #decodeInto} or drops it.
+     */
+    static final class Decoder {
+        private final Inflater inflater = new Inflater();
+        private byte[] payload = new byte[4096];
+        private byte[] inflated = new byte[4096];
+        private int startX, startY, width, height;
+        private boolean fractions;
+        private byte[] runs;
+        private int length;
+        private int wireBytes;
+
+        /**
+         * Reads the next result, which should be {@code expected}'s. Its payload may be no larger
+         * than the longest encoding of that tile, so a corrupt header cannot make it allocate more.
+         */
+        void read(DataInputStream in, Task expected) throws IOException {
+            startX = in.readInt();
+            startY = in.readInt();
+            width = in.readInt();
+            height = in.readInt();
+            int encoding = in.readByte();
+            int size = in.readInt();
+            int rawLength = (encoding & FLAG_DEFLATE) != 0 ? in.readInt() : size;
+            fractions = (encoding & FLAG_FRACTIONS) != 0;
+            long maxLength = maxEncodedLength((long) (expected.getEndX() - expected.getStartX())
+                    * (expected.getEndY() - expected.getStartY()), fractions);
+            if (size < 0 || rawLength < 0 || width <= 0 || height <= 0 || size > maxLength || rawLength > maxLength
+                    || fractions && rawLength < 4L * width * height) {
+                throw new IOException("Corrupt result header");
+            }
+            if (payload.length < size) {
+                payload = new byte[Math.max(size, payload.length * 2)];
+            }
+            in.readFully(payload, 0, size);
+            wireBytes = ((encoding & FLAG_DEFLATE) != 0 ? 25 : 21) + size;
+
+            if ((encoding & FLAG_DEFLATE) == 0) {
+                runs = payload;
+                length = size;
+                return;
+            }
+            if (inflated.length < rawLength) {
+                inflated = new byte[Math.max(rawLength, inflated.length * 2)];
+            }
+            inflater.reset();
+            inflater.setInput(payload, 0, size);
+            try {
+                length = inflater.inflate(inflated, 0, rawLength);
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt compressed result", e);
+            }
+            if (length != rawLength) {
+                throw new IOException("Truncated compressed result");
+            }
+            runs = inflated;
+        }
+
+        int getStartX() { return startX; }
+        int getStartY() { return startY; }
+        /** Size of the last result on the wire, header included. */
+        int getWireBytes() { return wireBytes; }
+
+        /** Throws unless the last result covers exactly {@code task}'s tile. */
+        void checkTile(Task task) throws IOException {
+            int taskWidth = task.getEndX() - task.getStartX();
+            int taskHeight = task.getEndY() - task.getStartY();
+            if (startX != task.getStartX() || startY != task.getStartY() || width != taskWidth || height != taskHeight) {
+                throw new IOException("Result for tile (" + startX + ", " + startY + ") " + width + "x" + height
+                        + " arrived in place of (" + task.getStartX() + ", " + task.getStartY() + ") "
+                        + taskWidth + "x" + taskHeight);
+            }
+        }
+
+        /**
+         * Expands the runs of the last result directly into its tile of {@code out}, and copies
+         * its fractions there if both have them.
+         */
+        void decodeInto(IterationBuffer out) throws IOException {
+            try {
+                expand(out);
+            } catch (ArrayIndexOutOfBoundsException e) {
+                throw new IOException("Corrupt result runs", e);
+            }
+        }
+
+        private void expand(IterationBuffer out) throws IOException {
+            int[] iterations = out.getIterations();
+            int stride = out.getWidth();
+            int rowStart = out.index(startX, startY);
+            int x = 0;
+            int rowsLeft = height;
+            int previous = 0;
+            int position = 0;
+            int runsEnd = fractions ? length - 4 * width * height : length;
+            while (position < runsEnd) {
+                int zigzag = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = runs[position++];
+                    zigzag |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                int run = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = runs[position++];
+                    run |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                int value = previous + (zigzag >>> 1 ^ -(zigzag & 1));
+                previous = value;
+                while (run > 0) {
+                    if (rowsLeft == 0) {
+                        throw new IOException("Result overruns its tile");
+                    }
+                    int count = Math.min(run, width - x);
+                    Arrays.fill(iterations, rowStart + x, rowStart + x + count, value);
+                    x += count;
+                    run -= count;
+                    if (x == width) {
+                        x = 0;
+                        rowsLeft--;
+                        rowStart += stride;
+                    }
+                }
+            }
+            if (rowsLeft != 0 || x != 0 || position != runsEnd) {
+                throw new IOException("Result is short of its tile");
+            }
+            if (fractions && out.hasFractions()) {
+                copyFractions(out.getFractions(), stride, out.index(startX, startY), position);
+            }
+        }
+
+        private void copyFractions(float[] target, int stride, int rowStart, int position) {
+            for (int y = 0; y < height; y++, rowStart += stride) {
+                for (int x = 0; x < width; x++, position += 4) {
+                    target[rowStart + x] = Float.intBitsToFloat((runs[position] & 0xFF) << 24
+                            | (runs[position + 1] & 0xFF) << 16 | (runs[position + 2] & 0xFF) << 8
+                            | runs[position + 3] & 0xFF);
+                }
+            }
+        }
+
+        void close() {
+            inflater.end();
+        }
+    }
+}
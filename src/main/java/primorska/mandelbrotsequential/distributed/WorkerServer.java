@@ -1,75 +1,292 @@
-
 package primorska.mandelbrotsequential.distributed;
 
+import primorska.mandelbrotsequential.engine.IterationBuffer;
+import primorska.mandelbrotsequential.engine.Kernel;
+import primorska.mandelbrotsequential.engine.Kernels;
+import primorska.mandelbrotsequential.engine.TileScheduler;
+import primorska.mandelbrotsequential.metrics.Distribution;
+import primorska.mandelbrotsequential.metrics.Metrics;
+import primorska.mandelbrotsequential.metrics.Phase;
+
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
-public class WorkerServer {
+/**
+ * Serves render tasks to any number of clients. Every connection gets a virtual thread that
+ * reads tasks and one that writes results back in order; the tasks themselves are computed
+ * concurrently on a tile scheduler sized to the host's cores. A global limit on queued tasks
+ * stops reading from clients when the cores are saturated, and connections beyond
+ * {@code maxConnections} are turned away with a busy hello.
+ * <p>
+ * Task durations are recorded as the compute phase and result sizes under {@code worker.*};
+ * the totals are printed when the server shuts down.
+ */
+public class WorkerServer implements AutoCloseable {
+    public static final int DEFAULT_MAX_CONNECTIONS = 64;
+    /** Tasks queued or running per core before clients are made to wait. */
+    private static final int TASKS_PER_CORE = 4;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10_000;
+    private static final Future<Result> END_OF_TASKS = CompletableFuture.completedFuture(null);
+    private static final Distribution RESULT_BYTES = Metrics.distribution("worker.result.bytes");
 
-    private static int mandelbrotColor(double x0, double y0, int maxIter) {
-        double zx = 0.0, zy = 0.0;
-        int iter = 0;
-        while (zx * zx + zy * zy <= 4 && iter < maxIter) {
-            double tmp = zx * zx - zy * zy + x0;
-            zy = 2 * zx * zy + y0;
-            zx = tmp;
-            iter++;
-        }
+    private final ServerSocket serverSocket;
+    private final TileScheduler scheduler;
+    private final ExecutorService taskExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore pendingTasks;
+    private final int maxConnections;
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    private final Set<Thread> connectionThreads = ConcurrentHashMap.newKeySet();
 
-        if (iter < maxIter) {
-            int hue = (int) (280 - ((double) iter / maxIter) * 280);
-            return hsbToRGB(hue, 0.8, 1.0 - ((double) iter / maxIter) * 0.8);
-        } else {
-            return 0xFF000000; // opaque black
-        }
+    public WorkerServer(int port) throws IOException {
+        this(port, Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_CONNECTIONS);
     }
 
-    private static int hsbToRGB(double hue, double saturation, double brightness) {
-        int rgb = java.awt.Color.HSBtoRGB((float)(hue / 360.0), (float)saturation, (float)brightness);
-        return 0xFF000000 | (rgb & 0x00FFFFFF); // ensure full alpha
+    public WorkerServer(int port, int threads, int maxConnections) throws IOException {
+        this.serverSocket = new ServerSocket(port);
+        this.scheduler = new TileScheduler(threads, TileScheduler.DEFAULT_TILE_SIZE);
+        this.pendingTasks = new Semaphore(threads * TASKS_PER_CORE);
+        this.maxConnections = maxConnections;
+        int permits = threads * TASKS_PER_CORE;
+        Metrics.gauge("worker.pending", () -> permits - pendingTasks.availablePermits());
+        Metrics.gauge("worker.clients", clients::size);
     }
 
-    public static void main(String[] args) throws IOException {
-       // int port = 5000;
-        int port = Integer.parseInt(args[0]);
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /** Accepts clients until the server is closed. */
+    public void serve() {
+        System.out.println("Worker ready on port " + getPort() + " [" + Kernels.best().getName() + " kernel, "
+                + scheduler.getParallelism() + " threads]");
+
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket client = serverSocket.accept();
+                if (clients.size() >= maxConnections) {
+                    reject(client);
+                    continue;
+                }
+                clients.add(client);
+                Thread thread = Thread.ofVirtual().name("worker-connection-" + client.getPort()).unstarted(() -> {
+                    try {
+                        handle(client);
+                    } finally {
+                        clients.remove(client);
+                        connectionThreads.remove(Thread.currentThread());
+                    }
+                });
+                connectionThreads.add(thread);
+                thread.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("Error accepting connection: " + e.getMessage());
+                }
+            }
+        }
+    }
 
-        try (ServerSocket serverSocket = new ServerSocket(port)) {
-            System.out.println("Worker ready on port " + port);
+    private void reject(Socket client) {
+        try (client) {
+            WireProtocol.writeHello(new DataOutputStream(client.getOutputStream()), WireProtocol.FLAG_BUSY);
+        } catch (IOException ignored) {
+        }
+        System.err.println("Rejected " + client.getRemoteSocketAddress() + ": " + maxConnections + " clients connected");
+    }
 
+    /**
+     * Reads tasks until the client hangs up or the server shuts down, queueing each for
+     * computation, while a writer thread sends the results back in the order they were asked for.
+     */
+    private void handle(Socket client) {
+        String peer = client.getRemoteSocketAddress().toString();
+        BlockingQueue<Future<Result>> results = new LinkedBlockingQueue<>();
+        Thread writer = null;
+        int tasks = 0;
+        try (client;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()))) {
+            client.setTcpNoDelay(true);
+            int flags = WireProtocol.readHello(in) & WireProtocol.FLAG_DEFLATE;
+            WireProtocol.writeHello(out, flags);
+            WireProtocol.Encoder encoder = new WireProtocol.Encoder((flags & WireProtocol.FLAG_DEFLATE) != 0);
+            writer = Thread.ofVirtual().name("worker-writer-" + client.getPort())
+                    .start(() -> writeResults(client, out, encoder, results, peer));
+            System.out.println("Client connected: " + peer);
+
+            Task frame = null;
+            Kernel kernel = null;
             while (true) {
-                try (Socket client = serverSocket.accept();
-                     ObjectInputStream in = new ObjectInputStream(client.getInputStream());
-                     ObjectOutputStream out = new ObjectOutputStream(client.getOutputStream())) {
-
-                    Task task = (Task) in.readObject();
-                    System.out.println("Received task: lines " + task.getStartY() + " to " + task.getEndY());
-
-                    int width = task.getWidth();
-                    int height = task.getHeight();
-                    int[] pixels = new int[(task.getEndY() - task.getStartY()) * width];
-
-                    double rangeX = (task.getMaxX() - task.getMinX()) / task.getZoomFactor();
-                    double rangeY = (task.getMaxY() - task.getMinY()) / task.getZoomFactor();
-
-                    for (int y = task.getStartY(); y < task.getEndY(); y++) {
-                        for (int x = 0; x < width; x++) {
-                            double x0 = task.getMinX() + x * rangeX / width;
-                            double y0 = task.getMinY() + y * rangeY / height;
-                            int rgb = mandelbrotColor(x0, y0, task.getMaxIter());
-                            pixels[(y - task.getStartY()) * width + x] = rgb;
-                        }
+                Task task;
+                try {
+                    task = WireProtocol.readTask(in);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (!task.sameFrame(frame)) {
+                    frame = task;
+                    try {
+                        Kernel formulaKernel = task.getFractal().isMandelbrot()
+                                ? Kernels.byName(task.getKernel()) : task.getFractal().vectorKernel();
+                        kernel = formulaKernel.prepare(task.toViewport(), task.getMaxIter());
+                    } catch (RuntimeException e) {
+                        throw new IOException("Cannot prepare " + task.getKernel() + " for "
+                                + task.getFractal() + ": " + e, e);
                     }
+                }
+                pendingTasks.acquire();
+                Kernel frameKernel = kernel;
+                results.add(taskExecutor.submit(() -> compute(task, frameKernel, scheduler)));
+                tasks++;
+            }
+            results.add(END_OF_TASKS);
+            writer.join();
+        } catch (IOException e) {
+            if (!serverSocket.isClosed()) {
+                System.err.println("Error reading tasks from " + peer + ": " + e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (writer != null) {
+                writer.interrupt();
+                try {
+                    writer.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            for (Future<Result> abandoned; (abandoned = results.poll()) != null; ) {
+                if (abandoned != END_OF_TASKS) {
+                    abandoned.cancel(true);
+                    pendingTasks.release();
+                }
+            }
+        }
+        System.out.println("Client disconnected: " + peer + " (" + tasks + " tiles)");
+    }
 
-                    Result result = new Result(task.getStartY(), pixels);
-                    out.writeObject(result);
+    private void writeResults(Socket client, DataOutputStream out, WireProtocol.Encoder encoder,
+                              BlockingQueue<Future<Result>> results, String peer) {
+        try {
+            while (true) {
+                Future<Result> next = results.take();
+                if (next == END_OF_TASKS) {
+                    break;
+                }
+                try {
+                    long before = encoder.getBytesWritten();
+                    encoder.write(out, next.get());
+                    RESULT_BYTES.record(encoder.getBytesWritten() - before);
+                } finally {
+                    pendingTasks.release();
+                }
+                // Send each result as soon as the next one is not ready yet, rather than
+                // holding finished tiles back until the whole pipeline has drained.
+                Future<Result> following = results.peek();
+                if (following == null || !following.isDone()) {
                     out.flush();
+                }
+            }
+            out.flush();
+        } catch (IOException | ExecutionException e) {
+            System.err.println("Error sending results to " + peer + ": " + e.getMessage());
+            closeQuietly(client);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            encoder.close();
+        }
+    }
+
+    /** Same as {@link #shutdown(long)} with a ten second grace period. */
+    @Override
+    public void close() throws IOException {
+        shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+    }
 
-                    System.out.println("Sent result for lines " + task.getStartY() + " to " + task.getEndY());
-                } catch (Exception e) {
-                    System.err.println("Error processing task: " + e.getMessage());
+    /**
+     * Stops accepting connections and stops reading new tasks, lets every connection finish and
+     * send the tasks it has already read, then stops the compute threads. Connections still busy
+     * after {@code timeoutMillis} are closed; their clients re-issue the tiles elsewhere.
+     */
+    public void shutdown(long timeoutMillis) throws IOException {
+        serverSocket.close();
+        for (Socket client : clients) {
+            try {
+                client.shutdownInput();
+            } catch (IOException ignored) {
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            for (Thread thread : connectionThreads) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !thread.join(Duration.ofNanos(remaining))) {
+                    break;
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        for (Socket client : clients) {
+            closeQuietly(client);
+        }
+        taskExecutor.shutdownNow();
+        scheduler.close();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /** Renders {@code task} split into tiles across {@code scheduler}'s threads. */
+    static Result compute(Task task, Kernel kernel, TileScheduler scheduler) {
+        long start = System.nanoTime();
+        IterationBuffer tile = tileBuffer(task);
+        scheduler.render(task.toViewport(), tile, kernel);
+        Phase.COMPUTE.record(start, task.getFractal().isMandelbrot() ? task.getKernel() : task.getFractal().getName(),
+                tile.getIterations().length);
+        Metrics.PIXELS.add(tile.getIterations().length);
+        Metrics.ITERATIONS.add(tile.totalIterations());
+        return new Result(task.getStartX(), task.getStartY(), tile.getWidth(), tile.getIterations(),
+                tile.getFractions());
+    }
+
+    private static IterationBuffer tileBuffer(Task task) {
+        return IterationBuffer.region(task.getStartX(), task.getStartY(), task.getEndX() - task.getStartX(),
+                task.getEndY() - task.getStartY(), task.getMaxIter(), task.hasFractions());
+    }
+
+    /** Usage: {@code WorkerServer <port> [threads]}. Ctrl-C drains open connections before exiting. */
+    public static void main(String[] args) throws IOException {
+        int port = Integer.parseInt(args[0]);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        WorkerServer server = new WorkerServer(port, threads, DEFAULT_MAX_CONNECTIONS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+                Metrics.dump(System.out);
+            } catch (IOException e) {
+                System.err.println("Error shutting down: " + e.getMessage());
+            }
+        }, "worker-shutdown"));
+        server.serve();
     }
 }
@@ -0,0 +1,163 @@
+package primorska.mandelbrotsequential.engine;
+
+/**
+ * Skips work inside the set in three ways.
+ * <ul>
+ *   <li>Points in the main cardioid and the period-2 bulb are rejected analytically.</li>
+ *   <li>Orbits that revisit an earlier point are periodic and stop early. The point saved
+ *       for comparison is refreshed at doubling intervals, as in Brent's cycle detection.</li>
+ *   <li>Tiles are filled by Mariani-Silver subdivision. If every pixel on a rectangle's border
+ *       has the same count, the inside is filled without iterating; otherwise the rectangle
+ *       is split in four and each part is tried again.</li>
+ * </ul>
+ * Subdivision can miss filaments thinner than a pixel that cross a uniform border, so the
+ * output is close to, but not guaranteed equal to, the brute-force image. Run
+ * {@code --verify} to measure the difference.
+ */
+final class AcceleratedKernel implements Kernel {
+    private static final double PERIOD_EPSILON = 1e-13;
+    private static final int MIN_SUBDIVIDE = 4;
+
+    @Override
+    public String getName() {
+        return "Accelerated";
+    }
+
+    static boolean inCardioidOrBulb(double x0, double y0) {
+        double xq = x0 - 0.25;
+        double y2 = y0 * y0;
+        double q = xq * xq + y2;
+        if (q * (q + xq) <= 0.25 * y2) {
+            return true;
+        }
+        double xb = x0 + 1.0;
+        return xb * xb + y2 <= 0.0625;
+    }
+
+    static int iterate(double x0, double y0, int maxIter, float[] fractions, int index) {
+        if (inCardioidOrBulb(x0, y0)) {
+            if (fractions != null) {
+                fractions[index] = 0f;
+            }
+            return maxIter;
+        }
+        double zx = 0.0, zy = 0.0;
+        double savedX = 0.0, savedY = 0.0;
+        int period = 8;
+        int sinceSaved = 0;
+        int iter = 0;
+        while (zx * zx + zy * zy <= 4 && iter < maxIter) {
+            double tmp = zx * zx - zy * zy + x0;
+            zy = 2 * zx * zy + y0;
+            zx = tmp;
+            iter++;
+            if (Math.abs(zx - savedX) < PERIOD_EPSILON && Math.abs(zy - savedY) < PERIOD_EPSILON) {
+                iter = maxIter;
+                break;
+            }
+            if (++sinceSaved == period) {
+                savedX = zx;
+                savedY = zy;
+                sinceSaved = 0;
+                period <<= 1;
+            }
+        }
+        if (fractions != null) {
+            fractions[index] = iter < maxIter ? MandelbrotEngine.fraction(zx * zx + zy * zy) : 0f;
+        }
+        return iter;
+    }
+
+    @Override
+    public void renderTile(Viewport viewport, IterationBuffer out, int x0, int y0, int x1, int y1) {
+        for (int x = x0; x < x1; x++) {
+            compute(viewport, out, x, y0);
+            if (y1 - 1 > y0) {
+                compute(viewport, out, x, y1 - 1);
+            }
+        }
+        for (int y = y0 + 1; y < y1 - 1; y++) {
+            compute(viewport, out, x0, y);
+            if (x1 - 1 > x0) {
+                compute(viewport, out, x1 - 1, y);
+            }
+        }
+        subdivide(viewport, out, x0, y0, x1, y1);
+    }
+
+    /** Sparse samples cannot share borders, so spans only get the per-point shortcuts. */
+    @Override
+    public void renderSpan(Viewport viewport, IterationBuffer out, int y, int x0, int x1, int step) {
+        for (int x = x0; x < x1; x += step) {
+            compute(viewport, out, x, y);
+        }
+    }
+
+    /** Fills the inside of a rectangle whose border pixels are already computed. */
+    private void subdivide(Viewport viewport, IterationBuffer out, int x0, int y0, int x1, int y1) {
+        if (x1 - x0 <= 2 || y1 - y0 <= 2) {
+            return;
+        }
+        int value = out.get(x0, y0);
+        if (isUniformBorder(out, value, x0, y0, x1, y1)
+                && (!out.hasFractions() || value == out.getMaxIter())) {
+            fill(out, value, x0 + 1, y0 + 1, x1 - 1, y1 - 1);
+            return;
+        }
+        if (x1 - x0 <= MIN_SUBDIVIDE || y1 - y0 <= MIN_SUBDIVIDE) {
+            for (int y = y0 + 1; y < y1 - 1; y++) {
+                for (int x = x0 + 1; x < x1 - 1; x++) {
+                    compute(viewport, out, x, y);
+                }
+            }
+            return;
+        }
+
+        int mx = (x0 + x1) / 2;
+        int my = (y0 + y1) / 2;
+        for (int x = x0 + 1; x < x1 - 1; x++) {
+            compute(viewport, out, x, my);
+        }
+        for (int y = y0 + 1; y < y1 - 1; y++) {
+            if (y != my) {
+                compute(viewport, out, mx, y);
+            }
+        }
+        subdivide(viewport, out, x0, y0, mx + 1, my + 1);
+        subdivide(viewport, out, mx, y0, x1, my + 1);
+        subdivide(viewport, out, x0, my, mx + 1, y1);
+        subdivide(viewport, out, mx, my, x1, y1);
+    }
+
+    private static boolean isUniformBorder(IterationBuffer out, int value, int x0, int y0, int x1, int y1) {
+        for (int x = x0; x < x1; x++) {
+            if (out.get(x, y0) != value || out.get(x, y1 - 1) != value) {
+                return false;
+            }
+        }
+        for (int y = y0 + 1; y < y1 - 1; y++) {
+            if (out.get(x0, y) != value || out.get(x1 - 1, y) != value) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void fill(IterationBuffer out, int value, int x0, int y0, int x1, int y1) {
+        int[] iterations = out.getIterations();
+        float[] fractions = out.getFractions();
+        for (int y = y0; y < y1; y++) {
+            int row = out.index(x0, y);
+            java.util.Arrays.fill(iterations, row, row + (x1 - x0), value);
+            if (fractions != null) {
+                java.util.Arrays.fill(fractions, row, row + (x1 - x0), 0f);
+            }
+        }
+    }
+
+    private static void compute(Viewport viewport, IterationBuffer out, int x, int y) {
+        int index = out.index(x, y);
+        out.getIterations()[index] = iterate(viewport.x0(x), viewport.y0(y), out.getMaxIter(),
+                out.getFractions(), index);
+    }
+}
@@ -0,0 +1,90 @@
+package primorska.mandelbrotsequential.engine;
+
+/**
+ * Turns an {@link IterationBuffer} into ARGB pixels. Recoloring only rebuilds the lookup
+ * table, so changing palette or offset never recomputes the fractal.
+ */
+public final class Colorizer {
+
+    private Colorizer() {
+    }
+
+    public static void colorize(IterationBuffer buffer, Palette palette, int offset, int[] argb) {
+        colorize(buffer, palette.lookupTable(buffer, offset), palette.isSmooth(), argb);
+    }
+
+    /**
+     * Colors with a lookup table built beforehand, e.g. from a preview of the whole image
+     * when the buffer is only one strip of it.
+     */
+    public static void colorize(IterationBuffer buffer, int[] lut, boolean smooth, int[] argb) {
+        int[] iterations = buffer.getIterations();
+        float[] fractions = buffer.getFractions();
+        if (smooth && fractions != null) {
+            int maxIter = buffer.getMaxIter();
+            for (int i = 0; i < iterations.length; i++) {
+                int iter = iterations[i];
+                argb[i] = iter >= maxIter - 1 ? lut[iter] : blend(lut[iter], lut[iter + 1], fractions[i]);
+            }
+        } else {
+            for (int i = 0; i < iterations.length; i++) {
+                argb[i] = lut[iterations[i]];
+            }
+        }
+    }
+
+    /**
+     * Colors only {@code [x0, x1) x [y0, y1)}, given in frame coordinates, into {@code argb}
+     * laid out like the buffer; e.g. a tile that has just arrived.
+     */
+    public static void colorize(IterationBuffer buffer, int[] lut, boolean smooth, int[] argb,
+                                int x0, int y0, int x1, int y1) {
+        int[] iterations = buffer.getIterations();
+        float[] fractions = buffer.getFractions();
+        boolean blend = smooth && fractions != null;
+        int maxIter = buffer.getMaxIter();
+        for (int y = y0; y < y1; y++) {
+            for (int i = buffer.index(x0, y), end = i + x1 - x0; i < end; i++) {
+                argb[i] = color(iterations[i], blend ? fractions[i] : 0f, maxIter, lut, blend);
+            }
+        }
+    }
+
+    /**
+     * Colors a partially refined buffer in which only every {@code step}-th pixel of every
+     * {@code step}-th row has been computed, drawing each sample as a {@code step x step} block.
+     */
+    public static void colorize(IterationBuffer buffer, Palette palette, int offset, int[] argb, int step) {
+        if (step == 1) {
+            colorize(buffer, palette, offset, argb);
+            return;
+        }
+        int[] lut = palette.lookupTable(buffer, offset);
+        int[] iterations = buffer.getIterations();
+        int width = buffer.getWidth();
+        int height = buffer.getHeight();
+        for (int y = 0; y < height; y++) {
+            int sampleRow = (y - y % step) * width;
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                argb[row + x] = lut[iterations[sampleRow + x - x % step]];
+            }
+        }
+    }
+
+    public static void colorize(IterationBuffer buffer, Palette palette, int[] argb) {
+        colorize(buffer, palette, 0, argb);
+    }
+
+    /** Color of a single sample, as {@link #colorize(IterationBuffer, int[], boolean, int[])} computes it. */
+    static int color(int iter, float fraction, int maxIter, int[] lut, boolean smooth) {
+        return !smooth || iter >= maxIter - 1 ? lut[iter] : blend(lut[iter], lut[iter + 1], fraction);
+    }
+
+    private static int blend(int a, int b, float t) {
+        int r = (int) (((a >> 16) & 0xFF) + (((b >> 16) & 0xFF) - ((a >> 16) & 0xFF)) * t);
+        int g = (int) (((a >> 8) & 0xFF) + (((b >> 8) & 0xFF) - ((a >> 8) & 0xFF)) * t);
+        int bl = (int) ((a & 0xFF) + ((b & 0xFF) - (a & 0xFF)) * t);
+        return 0xFF000000 | (r << 16) | (g << 8) | bl;
+    }
+}
@@ -0,0 +1,200 @@
+package primorska.mandelbrotsequential.engine;
+
+import primorska.mandelbrotsequential.metrics.Counter;
+import primorska.mandelbrotsequential.metrics.Metrics;
+import primorska.mandelbrotsequential.metrics.Phase;
+
+import java.util.Arrays;
+
+/**
+ * Anti-aliases a rendered frame by supersampling only its edge pixels: those whose count
+ * differs from one of their eight neighbors by more than a threshold, or that escaped while
+ * a neighbor did not. An edge pixel is first sampled on a 2x2 grid; while its samples still
+ * disagree by more than the threshold the grid is doubled, up to the sample limit. Smooth
+ * areas keep their single sample, so the cost follows the length of the boundary rather
+ * than the size of the image.
+ * <p>
+ * Sample grids are rendered as pixels of the same viewport at a multiple of its resolution,
+ * so every kernel, including perturbation, can compute them. Neighbors outside the buffer are
+ * ignored, which for a strip means its first and last rows are compared sideways only.
+ */
+public class EdgeSupersampler {
+    public static final int DEFAULT_MAX_SAMPLES = 16;
+    public static final int DEFAULT_THRESHOLD = 2;
+    private static final Counter EDGE_PIXELS = Metrics.counter("supersample.pixels");
+    private static final Counter SAMPLES = Metrics.counter("supersample.samples");
+
+    private final Kernel kernel;
+    private final TileScheduler scheduler;
+    private final int maxGrid;
+    private final int threshold;
+
+    /**
+     * @param maxSamples samples per edge pixel at most; rounded down to a square power-of-two grid
+     * @param threshold  largest difference in counts still treated as smooth
+     */
+    public EdgeSupersampler(Kernel kernel, TileScheduler scheduler, int maxSamples, int threshold) {
+        if (maxSamples < 4 || threshold < 0) {
+            throw new IllegalArgumentException("Need at least 4 samples and a non-negative threshold");
+        }
+        this.kernel = kernel;
+        this.scheduler = scheduler;
+        this.maxGrid = Integer.highestOneBit((int) Math.sqrt(maxSamples));
+        this.threshold = threshold;
+    }
+
+    public int getMaxSamples() {
+        return maxGrid * maxGrid;
+    }
+
+    /** Samples the edge pixels of {@code iterations}; returns null if {@code session} was cancelled. */
+    public Supersamples sample(Viewport viewport, IterationBuffer iterations, RenderSession session) {
+        long start = System.nanoTime();
+        int levels = Integer.numberOfTrailingZeros(maxGrid);
+        Viewport[] grids = new Viewport[levels + 1];
+        Kernel[] kernels = new Kernel[levels + 1];
+        for (int level = 1; level <= levels; level++) {
+            int grid = 1 << level;
+            grids[level] = viewport.resized(viewport.getWidth() * grid, viewport.getHeight() * grid);
+            kernels[level] = kernel.prepare(grids[level], iterations.getMaxIter());
+        }
+
+        int y0 = iterations.getOriginY();
+        int rows = iterations.getHeight();
+        RowSamples[] results = new RowSamples[rows];
+        if (scheduler != null) {
+            scheduler.forEachRow(y0, y0 + rows, 1,
+                    y -> results[y - y0] = sampleRow(grids, kernels, iterations, y), session);
+        } else {
+            for (int y = y0; y < y0 + rows && !session.isCancelled(); y++) {
+                results[y - y0] = sampleRow(grids, kernels, iterations, y);
+            }
+        }
+        if (session.isCancelled()) {
+            return null;
+        }
+
+        int pixelCount = 0;
+        int sampleCount = 0;
+        for (RowSamples row : results) {
+            pixelCount += row.pixels;
+            sampleCount += row.samples;
+        }
+        int[] pixels = new int[pixelCount];
+        int[] offsets = new int[pixelCount + 1];
+        int[] counts = new int[sampleCount];
+        float[] fractions = iterations.hasFractions() ? new float[sampleCount] : null;
+        int p = 0;
+        int s = 0;
+        for (RowSamples row : results) {
+            for (int i = 0; i < row.pixels; i++) {
+                pixels[p] = row.pixelIndices[i];
+                offsets[p++] = s + row.offsets[i];
+            }
+            System.arraycopy(row.iterations, 0, counts, s, row.samples);
+            if (fractions != null) {
+                System.arraycopy(row.fractions, 0, fractions, s, row.samples);
+            }
+            s += row.samples;
+        }
+        offsets[pixelCount] = sampleCount;
+
+        EDGE_PIXELS.add(pixelCount);
+        SAMPLES.add(sampleCount);
+        Phase.SUPERSAMPLE.record(start, kernel.getName(), pixelCount);
+        return new Supersamples(iterations, pixels, offsets, counts, fractions);
+    }
+
+    private RowSamples sampleRow(Viewport[] grids, Kernel[] kernels, IterationBuffer iterations, int y) {
+        RowSamples row = new RowSamples(iterations.hasFractions());
+        int x0 = iterations.getOriginX();
+        int x1 = x0 + iterations.getWidth();
+        for (int x = x0; x < x1; x++) {
+            if (!isEdge(iterations, x, y)) {
+                continue;
+            }
+            IterationBuffer block = null;
+            for (int level = 1; level < grids.length; level++) {
+                int grid = 1 << level;
+                block = IterationBuffer.region(x * grid, y * grid, grid, grid, iterations.getMaxIter(),
+                        iterations.hasFractions());
+                kernels[level].renderTile(grids[level], block, x * grid, y * grid, x * grid + grid, y * grid + grid);
+                if (!disagrees(block.getIterations(), iterations.getMaxIter())) {
+                    break;
+                }
+            }
+            row.add(iterations.index(x, y), block);
+        }
+        return row;
+    }
+
+    private boolean isEdge(IterationBuffer iterations, int x, int y) {
+        int[] counts = iterations.getIterations();
+        int maxIter = iterations.getMaxIter();
+        int center = counts[iterations.index(x, y)];
+        int xStart = Math.max(x - 1, iterations.getOriginX());
+        int xEnd = Math.min(x + 1, iterations.getOriginX() + iterations.getWidth() - 1);
+        int yStart = Math.max(y - 1, iterations.getOriginY());
+        int yEnd = Math.min(y + 1, iterations.getOriginY() + iterations.getHeight() - 1);
+        for (int ny = yStart; ny <= yEnd; ny++) {
+            for (int nx = xStart; nx <= xEnd; nx++) {
+                int neighbor = counts[iterations.index(nx, ny)];
+                if (Math.abs(neighbor - center) > threshold || (neighbor == maxIter) != (center == maxIter)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean disagrees(int[] samples, int maxIter) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        int unescaped = 0;
+        for (int sample : samples) {
+            min = Math.min(min, sample);
+            max = Math.max(max, sample);
+            if (sample == maxIter) {
+                unescaped++;
+            }
+        }
+        return max - min > threshold || (unescaped > 0 && unescaped < samples.length);
+    }
+
+    /** Samples of one row, grown as edge pixels are found. */
+    private static final class RowSamples {
+        int pixels;
+        int samples;
+        int[] pixelIndices = new int[16];
+        int[] offsets = new int[16];
+        int[] iterations = new int[64];
+        float[] fractions;
+
+        RowSamples(boolean withFractions) {
+            fractions = withFractions ? new float[64] : null;
+        }
+
+        void add(int pixelIndex, IterationBuffer block) {
+            if (pixels == pixelIndices.length) {
+                pixelIndices = Arrays.copyOf(pixelIndices, pixels * 2);
+                offsets = Arrays.copyOf(offsets, pixels * 2);
+            }
+            pixelIndices[pixels] = pixelIndex;
+            offsets[pixels++] = samples;
+
+            int n = block.getIterations().length;
+            if (samples + n > iterations.length) {
+                int capacity = Math.max(samples + n, iterations.length * 2);
+                iterations = Arrays.copyOf(iterations, capacity);
+                if (fractions != null) {
+                    fractions = Arrays.copyOf(fractions, capacity);
+                }
+            }
+            System.arraycopy(block.getIterations(), 0, iterations, samples, n);
+            if (fractions != null) {
+                System.arraycopy(block.getFractions(), 0, fractions, samples, n);
+            }
+            samples += n;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package primorska.mandelbrotsequential.engine;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link VectorKernel} in {@code float}: twice the lanes per register and half the memory
+ * traffic, for views shallow enough that {@link Precision#FLOAT} resolves them. Counts match
+ * the double kernels except where an orbit is chaotic enough to amplify float rounding.
+ * Only obtain instances through {@link Kernels#forPrecision}, which checks that the incubator
+ * module is present.
+ */
+final class FloatVectorKernel implements Kernel {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    static int laneCount() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public String getName() {
+        return "Float vector (" + SPECIES.length() + " lanes)";
+    }
+
+    @Override
+    public void renderTile(Viewport viewport, IterationBuffer out, int x0, int y0, int x1, int y1) {
+        float[] scratch = new float[SPECIES.length() * 4];
+        for (int y = y0; y < y1; y++) {
+            renderRow(viewport, out, y, x0, x1, 1, scratch);
+        }
+    }
+
+    @Override
+    public void renderSpan(Viewport viewport, IterationBuffer out, int y, int x0, int x1, int step) {
+        renderRow(viewport, out, y, x0, x1, step, new float[SPECIES.length() * 4]);
+    }
+
+    private static void renderRow(Viewport viewport, IterationBuffer out, int y, int x0, int x1, int step,
+                                  float[] scratch) {
+        int lanes = SPECIES.length();
+        int maxIter = out.getMaxIter();
+        int[] iterations = out.getIterations();
+        float[] fractions = out.getFractions();
+        float cyScalar = (float) viewport.y0(y);
+
+        int x = x0;
+        for (; x + (lanes - 1) * step < x1; x += lanes * step) {
+            for (int i = 0; i < lanes; i++) {
+                scratch[i] = (float) viewport.x0(x + i * step);
+            }
+            FloatVector cx = FloatVector.fromArray(SPECIES, scratch, 0);
+            FloatVector cy = FloatVector.broadcast(SPECIES, cyScalar);
+            FloatVector zx = FloatVector.zero(SPECIES);
+            FloatVector zy = FloatVector.zero(SPECIES);
+            FloatVector count = FloatVector.zero(SPECIES);
+
+            for (int iter = 0; iter < maxIter; iter++) {
+                FloatVector zx2 = zx.mul(zx);
+                FloatVector zy2 = zy.mul(zy);
+                VectorMask<Float> active = zx2.add(zy2).compare(VectorOperators.LE, 4.0f);
+                if (!active.anyTrue()) {
+                    break;
+                }
+                FloatVector nextZy = zx.mul(2.0f).mul(zy).add(cy);
+                zx = zx.blend(zx2.sub(zy2).add(cx), active);
+                zy = zy.blend(nextZy, active);
+                count = count.add(1.0f, active);
+            }
+
+            count.intoArray(scratch, lanes);
+            int index = out.index(x, y);
+            for (int i = 0; i < lanes; i++) {
+                iterations[index + i * step] = (int) scratch[lanes + i];
+            }
+            if (fractions != null) {
+                zx.intoArray(scratch, 2 * lanes);
+                zy.intoArray(scratch, 3 * lanes);
+                for (int i = 0; i < lanes; i++) {
+                    double zxi = scratch[2 * lanes + i];
+                    double zyi = scratch[3 * lanes + i];
+                    fractions[index + i * step] = iterations[index + i * step] < maxIter
+                            ? MandelbrotEngine.fraction(zxi * zxi + zyi * zyi)
+                            : 0f;
+                }
+            }
+        }
+        for (; x < x1; x += step) {
+            int index = out.index(x, y);
+            iterations[index] = iterate((float) viewport.x0(x), cyScalar, maxIter, fractions, index);
+        }
+    }
+
+    /** The scalar float loop for the pixels left over after the last full register. */
+    private static int iterate(float cx, float cy, int maxIter, float[] fractions, int index) {
+        float zx = 0f, zy = 0f;
+        int iter = 0;
+        while (zx * zx + zy * zy <= 4f && iter < maxIter) {
+            float tmp = zx * zx - zy * zy + cx;
+            zy = 2f * zx * zy + cy;
+            zx = tmp;
+            iter++;
+        }
+        if (fractions != null) {
+            fractions[index] = iter < maxIter ? MandelbrotEngine.fraction((double) zx * zx + (double) zy * zy) : 0f;
+        }
+        return iter;
+    }
+}
@@ -0,0 +1,170 @@
+package primorska.mandelbrotsequential.engine;
+
+import java.math.BigDecimal;
+import java.util.function.IntConsumer;
+
+/**
+ * Renders a frame by reusing the samples of the previous one. When the new pixel grid lines
+ * up with the old one (a pan by whole pixels, or a zoom by a small rational factor), every
+ * pixel that lands exactly on an old sample is copied and only the rest is computed. A pan by
+ * a tenth of the view therefore computes a tenth of the pixels.
+ */
+public class IncrementalRenderer {
+    /** Largest denominator of the old-to-new spacing ratio; 1.5x zoom steps need 3. */
+    private static final int MAX_DENOMINATOR = 4;
+    private static final double RATIO_TOLERANCE = 1e-9;
+    private static final double OFFSET_TOLERANCE = 1e-6;
+
+    private final Kernel kernel;
+    private final TileScheduler scheduler;
+
+    /** A renderer that spreads the work over {@code scheduler}, or runs on the caller when it is null. */
+    public IncrementalRenderer(Kernel kernel, TileScheduler scheduler) {
+        this.kernel = kernel;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Fills {@code out} for {@code viewport} from {@code previous}, rendered for {@code previousViewport},
+     * plus whatever is newly exposed. Returns the number of pixels reused, or -1 without touching
+     * {@code out} when the two grids do not line up and the caller has to render the frame in full.
+     */
+    public int render(Viewport previousViewport, IterationBuffer previous, Viewport viewport, IterationBuffer out,
+                      RenderSession session) {
+        if (previous.getMaxIter() != out.getMaxIter() || previous.hasFractions() != out.hasFractions()) {
+            return -1;
+        }
+        Axis columns = Axis.map(previousViewport.getPreciseMinX(), previousViewport.getPixelSpacingX(),
+                previousViewport.getWidth(), viewport.getPreciseMinX(), viewport.getPixelSpacingX(), viewport.getWidth());
+        Axis rows = Axis.map(previousViewport.getPreciseMinY(), previousViewport.getPixelSpacingY(),
+                previousViewport.getHeight(), viewport.getPreciseMinY(), viewport.getPixelSpacingY(), viewport.getHeight());
+        if (columns == null || rows == null || columns.mapped == 0 || rows.mapped == 0) {
+            return -1;
+        }
+
+        Kernel frameKernel = kernel.prepare(viewport, out.getMaxIter());
+        int width = viewport.getWidth();
+        IntConsumer row = y -> {
+            int sourceY = rows.source[y];
+            if (sourceY < 0) {
+                frameKernel.renderSpan(viewport, out, y, 0, width, 1);
+                return;
+            }
+            copyRow(previous, sourceY, out, y, columns);
+            for (int residue = 0; residue < columns.period; residue++) {
+                renderGaps(frameKernel, viewport, out, y, residue, columns);
+            }
+        };
+        if (scheduler != null) {
+            scheduler.forEachRow(0, viewport.getHeight(), 1, row, session);
+        } else {
+            for (int y = 0; y < viewport.getHeight() && !session.isCancelled(); y++) {
+                row.accept(y);
+            }
+        }
+        return columns.mapped * rows.mapped;
+    }
+
+    private static void copyRow(IterationBuffer from, int sourceY, IterationBuffer to, int y, Axis columns) {
+        int[] source = columns.source;
+        int[] fromIterations = from.getIterations();
+        int[] toIterations = to.getIterations();
+        float[] fromFractions = from.getFractions();
+        float[] toFractions = to.getFractions();
+        int fromRow = from.index(0, sourceY);
+        int toRow = to.index(0, y);
+
+        if (columns.contiguous) {
+            int first = columns.firstMapped;
+            int srcPos = fromRow + source[first];
+            System.arraycopy(fromIterations, srcPos, toIterations, toRow + first, columns.mapped);
+            if (toFractions != null) {
+                System.arraycopy(fromFractions, srcPos, toFractions, toRow + first, columns.mapped);
+            }
+            return;
+        }
+        for (int x = 0; x < source.length; x++) {
+            if (source[x] >= 0) {
+                toIterations[toRow + x] = fromIterations[fromRow + source[x]];
+                if (toFractions != null) {
+                    toFractions[toRow + x] = fromFractions[fromRow + source[x]];
+                }
+            }
+        }
+    }
+
+    /** Renders the unmapped columns {@code residue, residue + period, ...} as strided spans. */
+    private static void renderGaps(Kernel kernel, Viewport viewport, IterationBuffer out, int y, int residue,
+                                   Axis columns) {
+        int[] source = columns.source;
+        int step = columns.period;
+        int x = residue;
+        while (x < source.length) {
+            while (x < source.length && source[x] >= 0) {
+                x += step;
+            }
+            int start = x;
+            while (x < source.length && source[x] < 0) {
+                x += step;
+            }
+            if (x > start) {
+                kernel.renderSpan(viewport, out, y, start, Math.min(x, source.length), step);
+            }
+        }
+    }
+
+    /**
+     * Maps each new pixel along one axis to the old pixel at exactly the same coordinate.
+     * New pixel {@code i} sits at old pixel {@code (offset + i * numerator) / period}, so only
+     * indices where that division is exact have a source, and they repeat every {@code period}.
+     */
+    private static final class Axis {
+        final int[] source;
+        final int period;
+        final int mapped;
+        final int firstMapped;
+        final boolean contiguous;
+
+        private Axis(int[] source, int period, boolean contiguous) {
+            this.source = source;
+            this.period = period;
+            this.contiguous = contiguous;
+            int count = 0;
+            int first = -1;
+            for (int i = 0; i < source.length; i++) {
+                if (source[i] >= 0) {
+                    if (first < 0) {
+                        first = i;
+                    }
+                    count++;
+                }
+            }
+            this.mapped = count;
+            this.firstMapped = first;
+        }
+
+        static Axis map(BigDecimal oldMin, double oldSpacing, int oldSize, BigDecimal newMin, double newSpacing,
+                        int newSize) {
+            double ratio = newSpacing / oldSpacing;
+            double shift = newMin.subtract(oldMin).doubleValue() / oldSpacing;
+            for (int denominator = 1; denominator <= MAX_DENOMINATOR; denominator++) {
+                long numerator = Math.round(ratio * denominator);
+                long offset = Math.round(shift * denominator);
+                if (numerator <= 0
+                        || Math.abs(ratio * denominator - numerator) > RATIO_TOLERANCE * denominator
+                        || Math.abs(shift * denominator - offset) > OFFSET_TOLERANCE * denominator) {
+                    continue;
+                }
+                int[] source = new int[newSize];
+                for (int i = 0; i < newSize; i++) {
+                    long position = offset + i * numerator;
+                    long oldIndex = Math.floorDiv(position, denominator);
+                    boolean exact = Math.floorMod(position, denominator) == 0;
+                    source[i] = exact && oldIndex >= 0 && oldIndex < oldSize ? (int) oldIndex : -1;
+                }
+                return new Axis(source, denominator, denominator == 1 && numerator == 1);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package primorska.mandelbrotsequential.engine;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Chooses {@code maxIter} per frame instead of using one fixed limit. A first guess comes from
+ * the zoom depth. A small preview of the frame then shows how the escape counts are spread.
+ * The limit is doubled while enough pixels still escape in the top half of it, since each
+ * doubling turns some black pixels into colored ones, and lowered when every escape happens
+ * far below it. Raising recomputes only the pixels that had not escaped yet.
+ */
+public final class IterationBudget {
+    /** Highest limit the budget will ever choose unless given a lower ceiling. */
+    public static final int DEFAULT_CEILING = 1 << 20;
+    private static final int FLOOR = 64;
+    /** Roughly how many pixels the statistics preview samples. */
+    private static final int PREVIEW_PIXELS = 1 << 14;
+    /**
+     * Share of all pixels that must escape in the upper half of the limit before it is doubled.
+     * Below this, a higher limit would change too few pixels to be worth the iterations.
+     */
+    private static final double RAISE_THRESHOLD = 1e-3;
+
+    private final Kernel kernel;
+    private final TileScheduler scheduler;
+    private final int ceiling;
+
+    /** A budget that previews and refines with {@code kernel}, on {@code scheduler} or, if null, the caller. */
+    public IterationBudget(Kernel kernel, TileScheduler scheduler, int ceiling) {
+        if (ceiling < FLOOR) {
+            throw new IllegalArgumentException("Iteration ceiling must be at least " + FLOOR + ": " + ceiling);
+        }
+        this.kernel = kernel;
+        this.scheduler = scheduler;
+        this.ceiling = ceiling;
+    }
+
+    /** A starting limit for a view magnified {@code magnification} times relative to the whole set. */
+    public static int forZoom(double magnification) {
+        double depth = Math.log(Math.max(magnification, 1.0)) / Math.log(2);
+        return powerOfTwoAtLeast((int) Math.min(1 << 30, 128 + 64 * depth));
+    }
+
+    public static int forZoom(Viewport viewport) {
+        return forZoom(4.0 / viewport.getRangeX());
+    }
+
+    /**
+     * Picks a limit for {@code viewport} from a preview of it. Returns the preview's statistics
+     * under the chosen limit, or null if {@code session} was cancelled.
+     */
+    public Statistics choose(Viewport viewport, RenderSession session) {
+        double scale = Math.min(1.0, Math.sqrt((double) PREVIEW_PIXELS / viewport.getPixelCount()));
+        Viewport preview = viewport.resized(Math.max(1, (int) Math.round(viewport.getWidth() * scale)),
+                Math.max(1, (int) Math.round(viewport.getHeight() * scale)));
+        int maxIter = Math.min(ceiling, Math.max(FLOOR, forZoom(viewport)));
+        IterationBuffer buffer = IterationBuffer.forViewport(preview, maxIter);
+        if (scheduler != null) {
+            scheduler.render(preview, buffer, kernel, session);
+        } else {
+            kernel.prepare(preview, maxIter).renderTile(preview, buffer, 0, 0, preview.getWidth(), preview.getHeight());
+        }
+        buffer = raise(preview, buffer, session);
+        if (buffer == null) {
+            return null;
+        }
+
+        Statistics statistics = statistics(buffer);
+        int trimmed = Math.max(FLOOR, powerOfTwoAtLeast(2 * statistics.getMaxEscaped() + 1));
+        if (statistics.getMaxEscaped() < buffer.getMaxIter() / 4 && trimmed < buffer.getMaxIter()) {
+            statistics = statistics(buffer.withMaxIter(trimmed));
+        }
+        return statistics;
+    }
+
+    /**
+     * Raises the limit of a fully rendered frame for as long as its own statistics call for it,
+     * recomputing only the pixels that have not escaped. Returns {@code out} if the limit
+     * stays, a new buffer if it was raised, or null if {@code session} was cancelled.
+     */
+    public IterationBuffer refine(Viewport viewport, IterationBuffer out, RenderSession session) {
+        return raise(viewport, out, session);
+    }
+
+    private IterationBuffer raise(Viewport viewport, IterationBuffer buffer, RenderSession session) {
+        while (buffer.getMaxIter() < ceiling && statistics(buffer).needsHigherLimit()) {
+            int maxIter = (int) Math.min(ceiling, 2L * buffer.getMaxIter());
+            IterationBuffer raised = buffer.withMaxIter(maxIter);
+            renderUnescaped(viewport, raised, kernel.prepare(viewport, maxIter), session);
+            if (session.isCancelled()) {
+                return null;
+            }
+            buffer = raised;
+        }
+        return session.isCancelled() ? null : buffer;
+    }
+
+    /** Recomputes the runs of unescaped pixels in every row of {@code out}. */
+    private void renderUnescaped(Viewport viewport, IterationBuffer out, Kernel frameKernel, RenderSession session) {
+        int[] iterations = out.getIterations();
+        int maxIter = out.getMaxIter();
+        int x0 = out.getOriginX();
+        int x1 = x0 + out.getWidth();
+        IntConsumer row = y -> {
+            int base = out.index(0, y);
+            int x = x0;
+            while (x < x1) {
+                if (iterations[base + x] != maxIter) {
+                    x++;
+                    continue;
+                }
+                int start = x;
+                while (x < x1 && iterations[base + x] == maxIter) {
+                    x++;
+                }
+                frameKernel.renderTile(viewport, out, start, y, x, y + 1);
+            }
+        };
+        int y0 = out.getOriginY();
+        int y1 = y0 + out.getHeight();
+        if (scheduler != null) {
+            scheduler.forEachRow(y0, y1, 1, row, session);
+        } else {
+            for (int y = y0; y < y1 && !session.isCancelled(); y++) {
+                row.accept(y);
+            }
+        }
+    }
+
+    public static Statistics statistics(IterationBuffer buffer) {
+        int maxIter = buffer.getMaxIter();
+        int[] histogram = new int[maxIter + 1];
+        for (int iter : buffer.getIterations()) {
+            histogram[iter]++;
+        }
+        return new Statistics(maxIter, buffer.getIterations().length, histogram);
+    }
+
+    private static int powerOfTwoAtLeast(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    /** How the escape counts of a buffer are spread under its limit. */
+    public static final class Statistics {
+        private final int maxIter;
+        private final int pixels;
+        private final int unescaped;
+        private final int nearLimit;
+        private final int maxEscaped;
+        private final int median;
+        private final int p99;
+
+        Statistics(int maxIter, int pixels, int[] histogram) {
+            this.maxIter = maxIter;
+            this.pixels = pixels;
+            this.unescaped = histogram[maxIter];
+            int escaped = pixels - unescaped;
+            int near = 0;
+            int highest = 0;
+            int medianCount = -1;
+            int p99Count = -1;
+            long seen = 0;
+            for (int i = 0; i < maxIter; i++) {
+                if (histogram[i] == 0) {
+                    continue;
+                }
+                highest = i;
+                if (i >= maxIter / 2) {
+                    near += histogram[i];
+                }
+                seen += histogram[i];
+                if (medianCount < 0 && seen * 2 >= escaped) {
+                    medianCount = i;
+                }
+                if (p99Count < 0 && seen * 100 >= 99L * escaped) {
+                    p99Count = i;
+                }
+            }
+            this.nearLimit = near;
+            this.maxEscaped = highest;
+            this.median = Math.max(0, medianCount);
+            this.p99 = Math.max(0, p99Count);
+        }
+
+        /** Whether enough pixels still escape close to the limit that doubling it would show more detail. */
+        boolean needsHigherLimit() {
+            return unescaped > 0 && nearLimit > RAISE_THRESHOLD * pixels;
+        }
+
+        public int getMaxIter() { return maxIter; }
+        public int getPixels() { return pixels; }
+        public int getUnescaped() { return unescaped; }
+        public int getMaxEscaped() { return maxEscaped; }
+        public int getMedian() { return median; }
+        public int getP99() { return p99; }
+
+        @Override
+        public String toString() {
+            return String.format("maxIter %d, escape median %d, p99 %d, max %d, %.1f%% unescaped", maxIter, median,
+                    p99, maxEscaped, 100.0 * unescaped / pixels);
+        }
+    }
+}
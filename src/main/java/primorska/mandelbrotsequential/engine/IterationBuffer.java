@@ -0,0 +1,107 @@
+package primorska.mandelbrotsequential.engine;
+
+/**
+ * Row-major escape-time counts for a frame, or for a rectangular region of one whose top-left
+ * pixel is {@code (originX, originY)}. Kernels always address pixels in frame coordinates.
+ * A value equal to {@code maxIter} means the point did not escape. Buffers created with
+ * fractions also keep, per escaped pixel, the continuous part of the count in {@code [0, 1)}
+ * for smooth coloring.
+ */
+public final class IterationBuffer {
+    private final int originX;
+    private final int originY;
+    private final int width;
+    private final int height;
+    private final int maxIter;
+    private final int[] iterations;
+    private final float[] fractions;
+
+    public IterationBuffer(int width, int height, int maxIter) {
+        this(width, height, maxIter, false);
+    }
+
+    public IterationBuffer(int width, int height, int maxIter, boolean withFractions) {
+        this(0, 0, width, height, maxIter, withFractions);
+    }
+
+    private IterationBuffer(int originX, int originY, int width, int height, int maxIter, boolean withFractions) {
+        this.originX = originX;
+        this.originY = originY;
+        this.width = width;
+        this.height = height;
+        this.maxIter = maxIter;
+        this.iterations = new int[width * height];
+        this.fractions = withFractions ? new float[width * height] : null;
+    }
+
+    public static IterationBuffer forViewport(Viewport viewport, int maxIter) {
+        return new IterationBuffer(viewport.getWidth(), viewport.getHeight(), maxIter);
+    }
+
+    public static IterationBuffer forViewport(Viewport viewport, int maxIter, boolean withFractions) {
+        return new IterationBuffer(viewport.getWidth(), viewport.getHeight(), maxIter, withFractions);
+    }
+
+    /** A buffer covering only {@code [x0, x0 + width) x [y0, y0 + height)} of a larger frame. */
+    public static IterationBuffer region(int x0, int y0, int width, int height, int maxIter, boolean withFractions) {
+        return new IterationBuffer(x0, y0, width, height, maxIter, withFractions);
+    }
+
+    /**
+     * A copy of this buffer under a different iteration limit. Pixels that had not escaped stay
+     * unescaped, i.e. equal to the new limit; when lowering, counts at or above it become
+     * unescaped too. After raising, only the unescaped pixels need to be computed again.
+     */
+    public IterationBuffer withMaxIter(int newMaxIter) {
+        IterationBuffer copy = new IterationBuffer(originX, originY, width, height, newMaxIter, fractions != null);
+        for (int i = 0; i < iterations.length; i++) {
+            int iter = iterations[i];
+            if (iter >= maxIter || iter >= newMaxIter) {
+                copy.iterations[i] = newMaxIter;
+            } else {
+                copy.iterations[i] = iter;
+                if (fractions != null) {
+                    copy.fractions[i] = fractions[i];
+                }
+            }
+        }
+        return copy;
+    }
+
+    /** Array index of frame pixel {@code (x, y)}. */
+    public int index(int x, int y) {
+        return (y - originY) * width + (x - originX);
+    }
+
+    public int get(int x, int y) {
+        return iterations[index(x, y)];
+    }
+
+    public long totalIterations() {
+        long total = 0;
+        for (int iter : iterations) {
+            total += iter;
+        }
+        return total;
+    }
+
+    /** Sum of the counts in frame pixels {@code [x0, x1) x [y0, y1)}. */
+    public long totalIterations(int x0, int y0, int x1, int y1) {
+        long total = 0;
+        for (int y = y0; y < y1; y++) {
+            for (int i = index(x0, y), end = i + x1 - x0; i < end; i++) {
+                total += iterations[i];
+            }
+        }
+        return total;
+    }
+
+    public int getOriginX() { return originX; }
+    public int getOriginY() { return originY; }
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getMaxIter() { return maxIter; }
+    public int[] getIterations() { return iterations; }
+    public float[] getFractions() { return fractions; }
+    public boolean hasFractions() { return fractions != null; }
+}
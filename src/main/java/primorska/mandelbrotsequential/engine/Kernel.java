@@ -0,0 +1,35 @@
+package primorska.mandelbrotsequential.engine;
+
+/**
+ * Computes the escape counts of a rectangle of pixels. Renderers decide which rectangles to
+ * hand out and on which threads; kernels decide how the pixels inside one are iterated.
+ */
+public interface Kernel {
+
+    String getName();
+
+    /**
+     * Called once per frame before any tile is rendered. Kernels that need per-frame state,
+     * such as a reference orbit, return a kernel bound to that state; the rest return themselves.
+     */
+    default Kernel prepare(Viewport viewport, int maxIter) {
+        return this;
+    }
+
+    /** Fills {@code [x0, x1) x [y0, y1)} of {@code out}, given in frame coordinates. */
+    void renderTile(Viewport viewport, IterationBuffer out, int x0, int y0, int x1, int y1);
+
+    /**
+     * Fills every {@code step}-th pixel of row {@code y}, starting at {@code x0} and stopping
+     * before {@code x1}. Progressive refinement uses this to sample a sparse grid.
+     */
+    default void renderSpan(Viewport viewport, IterationBuffer out, int y, int x0, int x1, int step) {
+        if (step == 1) {
+            renderTile(viewport, out, x0, y, x1, y + 1);
+            return;
+        }
+        for (int x = x0; x < x1; x += step) {
+            renderTile(viewport, out, x, y, x + 1, y + 1);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package primorska.mandelbrotsequential.engine;
+
+/**
+ * The available kernels. {@link #vector()} falls back to the scalar kernel when the JVM was
+ * started without {@code --add-modules jdk.incubator.vector} or has no SIMD lanes to offer.
+ */
+public final class Kernels {
+
+    public static final Kernel SCALAR = new Kernel() {
+        @Override
+        public String getName() {
+            return "Scalar";
+        }
+
+        @Override
+        public void renderTile(Viewport viewport, IterationBuffer out, int x0, int y0, int x1, int y1) {
+            MandelbrotEngine.renderTile(viewport, out, x0, y0, x1, y1);
+        }
+
+        @Override
+        public void renderSpan(Viewport viewport, IterationBuffer out, int y, int x0, int x1, int step) {
+            MandelbrotEngine.renderSpan(viewport, out, y, x0, x1, step);
+        }
+    };
+
+    /** Cardioid/bulb rejection, periodicity checking and Mariani-Silver subdivision. */
+    public static final Kernel ACCELERATED = new AcceleratedKernel();
+
+    /** Perturbation against a BigDecimal reference orbit, for zooms beyond double precision. */
+    public static final Kernel PERTURBATION = new PerturbationKernel();
+
+    /** Direct iteration in double-double, for zooms between double and perturbation depth. */
+    public static final Kernel DOUBLE_DOUBLE = new DoubleDoubleKernel();
+
+    /** Picks a kernel per frame from {@link Precision#forViewport}. */
+    public static final Kernel TIERED = new TieredKernel();
+
+    private static volatile Kernel vector;
+    private static volatile Kernel floatVector;
+
+    private Kernels() {
+    }
+
+    public static boolean isVectorAvailable() {
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+                && VectorKernel.laneCount() > 1;
+    }
+
+    public static Kernel vector() {
+        Kernel kernel = vector;
+        if (kernel == null) {
+            kernel = isVectorAvailable() ? new VectorKernel() : SCALAR;
+            vector = kernel;
+        }
+        return kernel;
+    }
+
+    /** The float vector kernel, or the double one when there are no SIMD lanes to use. */
+    public static Kernel floatVector() {
+        Kernel kernel = floatVector;
+        if (kernel == null) {
+            kernel = isVectorAvailable() ? new FloatVectorKernel() : vector();
+            floatVector = kernel;
+        }
+        return kernel;
+    }
+
+    public static Kernel forPrecision(Precision precision) {
+        return switch (precision) {
+            case FLOAT -> floatVector();
+            case DOUBLE -> vector();
+            case DOUBLE_DOUBLE -> DOUBLE_DOUBLE;
+            case PERTURBATION -> PERTURBATION;
+        };
+    }
+
+    /** Looks a kernel up by {@link Kernel#getName()}, ignoring the lane count of the vector kernel. */
+    public static Kernel byName(String name) {
+        if (name.equalsIgnoreCase(SCALAR.getName())) {
+            return SCALAR;
+        } else if (name.equalsIgnoreCase(ACCELERATED.getName())) {
+            return ACCELERATED;
+        } else if (name.equalsIgnoreCase(PERTURBATION.getName())) {
+            return PERTURBATION;
+        } else if (name.equalsIgnoreCase(DOUBLE_DOUBLE.getName())) {
+            return DOUBLE_DOUBLE;
+        } else if (name.equalsIgnoreCase(TIERED.getName())) {
+            return TIERED;
+        } else if (name.toLowerCase().startsWith("vector")) {
+            return vector();
+        } else if (name.toLowerCase().startsWith("float vector")) {
+            return floatVector();
+        }
+        throw new IllegalArgumentException("Unknown kernel: " + name);
+    }
+
+    /**
+     * Whether plain {@code double} coordinates can still tell neighboring pixels apart,
+     * with a few bits to spare.
+     */
+    public static boolean fitsInDouble(Viewport viewport) {
+        return Precision.DOUBLE.resolves(viewport);
+    }
+
+    /** The fastest kernel that reproduces the scalar iteration counts exactly. */
+    public static Kernel best() {
+        return vector();
+    }
+}
@@ -0,0 +1,86 @@
+package primorska.mandelbrotsequential.engine;
+
+/**
+ * Headless escape-time computation shared by the GUI, the {@code --no-gui} path and the
+ * distributed workers.
+ */
+public final class MandelbrotEngine {
+
+    private MandelbrotEngine() {
+    }
+
+    public static int iterate(double x0, double y0, int maxIter) {
+        double zx = 0.0, zy = 0.0;
+        int iter = 0;
+        while (zx * zx + zy * zy <= 4 && iter < maxIter) {
+            double tmp = zx * zx - zy * zy + x0;
+            zy = 2 * zx * zy + y0;
+            zx = tmp;
+            iter++;
+        }
+        return iter;
+    }
+
+    /**
+     * Like {@link #iterate} but also stores the continuous part of the escape count in
+     * {@code fractions[index]}.
+     */
+    public static int iterateSmooth(double x0, double y0, int maxIter, float[] fractions, int index) {
+        double zx = 0.0, zy = 0.0;
+        int iter = 0;
+        while (zx * zx + zy * zy <= 4 && iter < maxIter) {
+            double tmp = zx * zx - zy * zy + x0;
+            zy = 2 * zx * zy + y0;
+            zx = tmp;
+            iter++;
+        }
+        fractions[index] = iter < maxIter ? fraction(zx * zx + zy * zy) : 0f;
+        return iter;
+    }
+
+    /** Normalized fractional escape count for an orbit that left with {@code |z|^2 = modulusSquared}. */
+    public static float fraction(double modulusSquared) {
+        double nu = 1.0 - Math.log(0.5 * Math.log(modulusSquared) / Math.log(2)) / Math.log(2);
+        return (float) Math.min(Math.max(nu, 0.0), 0.999);
+    }
+
+    /** Same as {@link #fraction(double)} for an orbit of {@code z -> z^degree + c}. */
+    public static float fraction(double modulusSquared, int degree) {
+        double nu = 1.0 - Math.log(0.5 * Math.log(modulusSquared) / Math.log(2)) / Math.log(degree);
+        return (float) Math.min(Math.max(nu, 0.0), 0.999);
+    }
+
+    /** Scalar kernel: computes {@code [x0, x1) x [y0, y1)}, in frame coordinates, into {@code out}. */
+    public static void renderTile(Viewport viewport, IterationBuffer out, int x0, int y0, int x1, int y1) {
+        int maxIter = out.getMaxIter();
+        int[] iterations = out.getIterations();
+        float[] fractions = out.getFractions();
+        for (int y = y0; y < y1; y++) {
+            double cy = viewport.y0(y);
+            int row = out.index(0, y);
+            if (fractions != null) {
+                for (int x = x0; x < x1; x++) {
+                    iterations[row + x] = iterateSmooth(viewport.x0(x), cy, maxIter, fractions, row + x);
+                }
+            } else {
+                for (int x = x0; x < x1; x++) {
+                    iterations[row + x] = iterate(viewport.x0(x), cy, maxIter);
+                }
+            }
+        }
+    }
+
+    /** Scalar kernel over every {@code step}-th pixel of row {@code y} in {@code [x0, x1)}. */
+    public static void renderSpan(Viewport viewport, IterationBuffer out, int y, int x0, int x1, int step) {
+        int maxIter = out.getMaxIter();
+        int[] iterations = out.getIterations();
+        float[] fractions = out.getFractions();
+        double cy = viewport.y0(y);
+        int row = out.index(0, y);
+        for (int x = x0; x < x1; x += step) {
+            iterations[row + x] = fractions != null
+                    ? iterateSmooth(viewport.x0(x), cy, maxIter, fractions, row + x)
+                    : iterate(viewport.x0(x), cy, maxIter);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package primorska.mandelbrotsequential.engine;
+
+/**
+ * Maps escape counts to colors through a lookup table, so coloring a frame is one array
+ * read per pixel and never touches the iteration loop.
+ */
+public interface Palette {
+
+    String getName();
+
+    /**
+     * ARGB color for every count {@code 0..maxIter} of the buffer. Index {@code maxIter}
+     * is the interior color. {@code offset} rotates the ramp over the escaped counts.
+     */
+    int[] lookupTable(IterationBuffer buffer, int offset);
+
+    /** Whether the palette blends neighboring entries using the buffer's fractional counts. */
+    default boolean isSmooth() {
+        return false;
+    }
+}
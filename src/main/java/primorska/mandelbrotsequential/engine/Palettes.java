@@ -0,0 +1,98 @@
+package primorska.mandelbrotsequential.engine;
+
+import java.util.List;
+
+/**
+ * The built-in palettes: the explorer's original HSB ramp, a continuously shaded variant
+ * and a histogram-equalized variant that spreads the ramp evenly over the pixels on screen.
+ */
+public final class Palettes {
+    private static final int INTERIOR = 0xFF000000;
+
+    public static final Palette HSB = new Palette() {
+        @Override
+        public String getName() {
+            return "HSB";
+        }
+
+        @Override
+        public int[] lookupTable(IterationBuffer buffer, int offset) {
+            int maxIter = buffer.getMaxIter();
+            int[] lut = new int[maxIter + 1];
+            for (int i = 0; i < maxIter; i++) {
+                lut[i] = ramp((double) Math.floorMod(i + offset, maxIter) / maxIter);
+            }
+            lut[maxIter] = INTERIOR;
+            return lut;
+        }
+    };
+
+    public static final Palette SMOOTH = new Palette() {
+        @Override
+        public String getName() {
+            return "Smooth";
+        }
+
+        @Override
+        public int[] lookupTable(IterationBuffer buffer, int offset) {
+            return HSB.lookupTable(buffer, offset);
+        }
+
+        @Override
+        public boolean isSmooth() {
+            return true;
+        }
+    };
+
+    public static final Palette HISTOGRAM = new Palette() {
+        @Override
+        public String getName() {
+            return "Histogram";
+        }
+
+        @Override
+        public int[] lookupTable(IterationBuffer buffer, int offset) {
+            int maxIter = buffer.getMaxIter();
+            long[] cumulative = new long[maxIter + 1];
+            for (int iter : buffer.getIterations()) {
+                cumulative[iter]++;
+            }
+            long escaped = 0;
+            for (int i = 0; i < maxIter; i++) {
+                escaped += cumulative[i];
+                cumulative[i] = escaped;
+            }
+            int[] lut = new int[maxIter + 1];
+            for (int i = 0; i < maxIter; i++) {
+                double t = escaped == 0 ? 0 : (double) cumulative[i] / escaped;
+                lut[i] = ramp((t + (double) offset / maxIter) % 1.0);
+            }
+            lut[maxIter] = INTERIOR;
+            return lut;
+        }
+    };
+
+    private static final List<Palette> ALL = List.of(HSB, SMOOTH, HISTOGRAM);
+
+    private Palettes() {
+    }
+
+    public static List<Palette> all() {
+        return ALL;
+    }
+
+    public static Palette byName(String name) {
+        for (Palette palette : ALL) {
+            if (palette.getName().equalsIgnoreCase(name)) {
+                return palette;
+            }
+        }
+        throw new IllegalArgumentException("Unknown palette: " + name);
+    }
+
+    /** Violet for fast escapes fading to dark red as {@code t} approaches 1. */
+    static int ramp(double t) {
+        int rgb = java.awt.Color.HSBtoRGB((float) ((280 - t * 280) / 360.0), 0.8f, (float) (1.0 - t * 0.8));
+        return 0xFF000000 | (rgb & 0x00FFFFFF);
+    }
+}
@@ -0,0 +1,52 @@
+package primorska.mandelbrotsequential.engine;
+
+/**
+ * Renders through a {@link TileScheduler}. Without a thread count the shared scheduler is
+ * used; the sized constructors own a private pool, released by {@link #close()}.
+ */
+public class ParallelRenderer implements Renderer {
+    private final TileScheduler scheduler;
+    private final boolean ownsScheduler;
+    private final Kernel kernel;
+
+    public ParallelRenderer() {
+        this(Kernels.SCALAR);
+    }
+
+    public ParallelRenderer(Kernel kernel) {
+        this.scheduler = TileScheduler.shared();
+        this.ownsScheduler = false;
+        this.kernel = kernel;
+    }
+
+    public ParallelRenderer(int threadCount) {
+        this(threadCount, TileScheduler.DEFAULT_TILE_SIZE);
+    }
+
+    public ParallelRenderer(int threadCount, int tileSize) {
+        this(threadCount, tileSize, Kernels.SCALAR);
+    }
+
+    public ParallelRenderer(int threadCount, int tileSize, Kernel kernel) {
+        this.scheduler = new TileScheduler(threadCount, tileSize);
+        this.ownsScheduler = true;
+        this.kernel = kernel;
+    }
+
+    @Override
+    public void render(Viewport viewport, IterationBuffer out) {
+        scheduler.render(viewport, out, kernel);
+    }
+
+    @Override
+    public void render(Viewport viewport, IterationBuffer out, RenderSession session) {
+        scheduler.render(viewport, out, kernel, session);
+    }
+
+    @Override
+    public void close() {
+        if (ownsScheduler) {
+            scheduler.close();
+        }
+    }
+}
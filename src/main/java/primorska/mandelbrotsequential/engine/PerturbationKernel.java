@@ -0,0 +1,187 @@
+package primorska.mandelbrotsequential.engine;
+
+import primorska.mandelbrotsequential.metrics.Counter;
+import primorska.mandelbrotsequential.metrics.Distribution;
+import primorska.mandelbrotsequential.metrics.Metrics;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * Deep-zoom kernel. One reference orbit at the frame center is iterated in
+ * {@link BigDecimal}; every pixel then iterates only its small offset from that orbit in
+ * {@code double}:
+ * <pre>
+ *     dz' = 2 Z dz + dz^2 + dc,    z = Z + dz
+ * </pre>
+ * A third-order series approximation in {@code dc} skips the iterations during which all
+ * offsets in the frame still evolve almost linearly. Pixels that already escaped inside the
+ * skipped range start again from iteration zero.
+ * <p>
+ * A pixel whose full value {@code |Z + dz|} drops below {@code |dz|} has lost the reference
+ * and would glitch. Such pixels are rebased: {@code z} becomes the new offset and the
+ * reference restarts from its first iteration. The same happens when a pixel outlives the
+ * reference orbit.
+ * <p>
+ * The skipped iterations and the reference length of each frame, and the number of rebases,
+ * go to the metrics registry under {@code perturbation.*}.
+ */
+final class PerturbationKernel implements Kernel {
+    /** Largest third-order series term allowed, relative to the first-order term, when skipping. */
+    private static final double SERIES_TOLERANCE = 1e-12;
+    /** Largest second-order term allowed, relative to the first, i.e. how far from linear dz may drift. */
+    private static final double LINEAR_TOLERANCE = 1e-3;
+    private static final Distribution SKIPPED = Metrics.distribution("perturbation.skipped");
+    private static final Distribution REFERENCE_LENGTH = Metrics.distribution("perturbation.reference.length");
+    private static final Counter REBASES = Metrics.counter("perturbation.rebases");
+
+    @Override
+    public String getName() {
+        return "Perturbation";
+    }
+
+    @Override
+    public Kernel prepare(Viewport viewport, int maxIter) {
+        return new Frame(viewport, maxIter);
+    }
+
+    @Override
+    public void renderTile(Viewport viewport, IterationBuffer out, int x0, int y0, int x1, int y1) {
+        prepare(viewport, out.getMaxIter()).renderTile(viewport, out, x0, y0, x1, y1);
+    }
+
+    /** Reference orbit and series coefficients for one viewport. */
+    static final class Frame implements Kernel {
+        private final double refPixelX;
+        private final double refPixelY;
+        private final double[] refX;
+        private final double[] refY;
+        private final int refLength;
+        private final int skip;
+        private final double ax, ay, bx, by, cx, cy;
+
+        Frame(Viewport viewport, int maxIter) {
+            refPixelX = viewport.getWidth() / 2.0;
+            refPixelY = viewport.getHeight() / 2.0;
+            MathContext mc = new MathContext(viewport.requiredPrecision());
+            BigDecimal cRe = viewport.preciseX0(refPixelX, mc);
+            BigDecimal cIm = viewport.preciseY0(refPixelY, mc);
+
+            refX = new double[maxIter + 1];
+            refY = new double[maxIter + 1];
+            BigDecimal zRe = BigDecimal.ZERO;
+            BigDecimal zIm = BigDecimal.ZERO;
+            BigDecimal four = BigDecimal.valueOf(4);
+            int n = 0;
+            while (n < maxIter) {
+                BigDecimal re2 = zRe.multiply(zRe, mc);
+                BigDecimal im2 = zIm.multiply(zIm, mc);
+                if (re2.add(im2, mc).compareTo(four) > 0) {
+                    break;
+                }
+                BigDecimal nextIm = zRe.multiply(zIm, mc).multiply(BigDecimal.TWO, mc).add(cIm, mc);
+                zRe = re2.subtract(im2, mc).add(cRe, mc);
+                zIm = nextIm;
+                n++;
+                refX[n] = zRe.doubleValue();
+                refY[n] = zIm.doubleValue();
+            }
+            refLength = n + 1;
+
+            double dMax = Math.hypot(viewport.getWidth() * viewport.getPixelSpacingX(),
+                    viewport.getHeight() * viewport.getPixelSpacingY()) / 2;
+            double sAx = 0, sAy = 0, sBx = 0, sBy = 0, sCx = 0, sCy = 0;
+            int m = 0;
+            while (m < refLength - 2) {
+                double zx = refX[m], zy = refY[m];
+                // A' = 2ZA + 1, B' = 2ZB + A^2, C' = 2ZC + 2AB
+                double nAx = 2 * (zx * sAx - zy * sAy) + 1;
+                double nAy = 2 * (zx * sAy + zy * sAx);
+                double nBx = 2 * (zx * sBx - zy * sBy) + (sAx * sAx - sAy * sAy);
+                double nBy = 2 * (zx * sBy + zy * sBx) + 2 * sAx * sAy;
+                double nCx = 2 * (zx * sCx - zy * sCy) + 2 * (sAx * sBx - sAy * sBy);
+                double nCy = 2 * (zx * sCy + zy * sCx) + 2 * (sAx * sBy + sAy * sBx);
+                double first = Math.hypot(nAx, nAy) * dMax;
+                double second = Math.hypot(nBx, nBy) * dMax * dMax;
+                double third = Math.hypot(nCx, nCy) * dMax * dMax * dMax;
+                if (!Double.isFinite(third) || third > SERIES_TOLERANCE * first || second > LINEAR_TOLERANCE * first) {
+                    break;
+                }
+                sAx = nAx; sAy = nAy; sBx = nBx; sBy = nBy; sCx = nCx; sCy = nCy;
+                m++;
+            }
+            skip = m;
+            ax = sAx; ay = sAy; bx = sBx; by = sBy; cx = sCx; cy = sCy;
+            SKIPPED.record(skip);
+            REFERENCE_LENGTH.record(refLength);
+        }
+
+        @Override
+        public String getName() {
+            return "Perturbation";
+        }
+
+        @Override
+        public void renderTile(Viewport viewport, IterationBuffer out, int x0, int y0, int x1, int y1) {
+            int maxIter = out.getMaxIter();
+            int[] iterations = out.getIterations();
+            float[] fractions = out.getFractions();
+            double spacingX = viewport.getPixelSpacingX();
+            double spacingY = viewport.getPixelSpacingY();
+            int rebased = 0;
+
+            for (int y = y0; y < y1; y++) {
+                double dcy = (y - refPixelY) * spacingY;
+                for (int x = x0; x < x1; x++) {
+                    double dcx = (x - refPixelX) * spacingX;
+
+                    // Series estimate of dz at iteration `skip`: A dc + B dc^2 + C dc^3
+                    double dc2x = dcx * dcx - dcy * dcy, dc2y = 2 * dcx * dcy;
+                    double dc3x = dc2x * dcx - dc2y * dcy, dc3y = dc2x * dcy + dc2y * dcx;
+                    double dzx = (ax * dcx - ay * dcy) + (bx * dc2x - by * dc2y) + (cx * dc3x - cy * dc3y);
+                    double dzy = (ax * dcy + ay * dcx) + (bx * dc2y + by * dc2x) + (cx * dc3y + cy * dc3x);
+                    int m = skip;
+                    int iter = skip;
+                    double r2 = 0;
+                    double startX = refX[m] + dzx, startY = refY[m] + dzy;
+                    if (startX * startX + startY * startY > 4) {
+                        // escaped before the skipped iterations ended; the series says nothing here
+                        dzx = 0;
+                        dzy = 0;
+                        m = 0;
+                        iter = 0;
+                    }
+
+                    while (iter < maxIter) {
+                        double zx = refX[m] + dzx;
+                        double zy = refY[m] + dzy;
+                        r2 = zx * zx + zy * zy;
+                        if (r2 > 4) {
+                            break;
+                        }
+                        if (r2 < dzx * dzx + dzy * dzy || m == refLength - 1) {
+                            dzx = zx;
+                            dzy = zy;
+                            m = 0;
+                            rebased++;
+                        }
+                        double refZx = refX[m], refZy = refY[m];
+                        double nextX = 2 * (refZx * dzx - refZy * dzy) + (dzx * dzx - dzy * dzy) + dcx;
+                        double nextY = 2 * (refZx * dzy + refZy * dzx) + 2 * dzx * dzy + dcy;
+                        dzx = nextX;
+                        dzy = nextY;
+                        m++;
+                        iter++;
+                    }
+
+                    int index = out.index(x, y);
+                    iterations[index] = iter;
+                    if (fractions != null) {
+                        fractions[index] = iter < maxIter ? MandelbrotEngine.fraction(r2) : 0f;
+                    }
+                }
+            }
+            REBASES.add(rebased);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package primorska.mandelbrotsequential.engine;
+
+/**
+ * Number formats the kernels iterate in, from cheapest to most precise. Each tier resolves
+ * pixel spacings down to a limit relative to the largest coordinate in view, with a few bits
+ * to spare for the rounding error an orbit accumulates; {@link #forViewport} picks the
+ * cheapest tier that still resolves a viewport.
+ */
+public enum Precision {
+    /** 24-bit mantissa, twice the SIMD lanes of double; shallow views only. */
+    FLOAT("float", 1e-5),
+    /** 53-bit mantissa. */
+    DOUBLE("double", 1e-13),
+    /** An unevaluated sum of two doubles, about 106 bits. */
+    DOUBLE_DOUBLE("double-double", 1e-28),
+    /** Perturbation against an arbitrary-precision reference orbit; no depth limit. */
+    PERTURBATION("perturbation", 0);
+
+    private final String label;
+    private final double minRelativeSpacing;
+
+    Precision(String label, double minRelativeSpacing) {
+        this.label = label;
+        this.minRelativeSpacing = minRelativeSpacing;
+    }
+
+    public String getLabel() { return label; }
+    /** Smallest pixel spacing, relative to the largest coordinate in view, this tier resolves. */
+    public double getMinRelativeSpacing() { return minRelativeSpacing; }
+
+    public boolean resolves(Viewport viewport) {
+        return relativeSpacing(viewport) > minRelativeSpacing;
+    }
+
+    public static Precision forViewport(Viewport viewport) {
+        double spacing = relativeSpacing(viewport);
+        for (Precision precision : values()) {
+            if (spacing > precision.minRelativeSpacing) {
+                return precision;
+            }
+        }
+        return PERTURBATION;
+    }
+
+    /**
+     * Pixel spacing divided by the largest coordinate magnitude in view. The far corner is
+     * {@code min + range}: {@link Viewport#getMaxX()} is the unzoomed extent, not what is visible.
+     */
+    public static double relativeSpacing(Viewport viewport) {
+        double spacing = Math.min(viewport.getPixelSpacingX(), viewport.getPixelSpacingY());
+        double farX = viewport.getMinX() + viewport.getRangeX();
+        double farY = viewport.getMinY() + viewport.getRangeY();
+        double magnitude = Math.max(Math.max(Math.abs(viewport.getMinX()), Math.abs(farX)),
+                Math.max(Math.abs(viewport.getMinY()), Math.abs(farY)));
+        return spacing / magnitude;
+    }
+}
@@ -0,0 +1,70 @@
+package primorska.mandelbrotsequential.engine;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Renders a frame coarse-to-fine. The first pass samples one pixel in every
+ * {@code coarsestStep x coarsestStep} block. Each following pass halves the step and
+ * computes only the grid points the earlier passes have not already sampled, so the final
+ * pass finishes the frame with no pixel computed twice. Every finished pass is handed to a
+ * listener, which can show it with {@link Colorizer#colorize(IterationBuffer, Palette, int, int[], int)}.
+ */
+public class ProgressiveRenderer {
+    public static final int DEFAULT_COARSEST_STEP = 8;
+
+    /** Called after each pass with the step that pass sampled at; 1 means the frame is complete. */
+    public interface PassListener {
+        void passComplete(IterationBuffer buffer, int step);
+    }
+
+    private final Kernel kernel;
+    private final TileScheduler scheduler;
+    private final int coarsestStep;
+
+    /** A renderer that spreads each pass over {@code scheduler}, or runs on the caller when it is null. */
+    public ProgressiveRenderer(Kernel kernel, TileScheduler scheduler) {
+        this(kernel, scheduler, DEFAULT_COARSEST_STEP);
+    }
+
+    public ProgressiveRenderer(Kernel kernel, TileScheduler scheduler, int coarsestStep) {
+        if (Integer.bitCount(coarsestStep) != 1) {
+            throw new IllegalArgumentException("Coarsest step must be a power of two: " + coarsestStep);
+        }
+        this.kernel = kernel;
+        this.scheduler = scheduler;
+        this.coarsestStep = coarsestStep;
+    }
+
+    /** Returns {@code true} if every pass completed, {@code false} if the session was cancelled. */
+    public boolean render(Viewport viewport, IterationBuffer out, RenderSession session, PassListener listener) {
+        Kernel frameKernel = kernel.prepare(viewport, out.getMaxIter());
+        int width = viewport.getWidth();
+        int height = viewport.getHeight();
+
+        for (int step = coarsestStep; step >= 1; step /= 2) {
+            final int s = step;
+            boolean first = step == coarsestStep;
+            IntConsumer row = y -> {
+                if (first) {
+                    frameKernel.renderSpan(viewport, out, y, 0, width, s);
+                } else if (y % (2 * s) == 0) {
+                    frameKernel.renderSpan(viewport, out, y, s, width, 2 * s);
+                } else {
+                    frameKernel.renderSpan(viewport, out, y, 0, width, s);
+                }
+            };
+            if (scheduler != null) {
+                scheduler.forEachRow(0, height, s, row, session);
+            } else {
+                for (int y = 0; y < height && !session.isCancelled(); y += s) {
+                    row.accept(y);
+                }
+            }
+            if (session.isCancelled()) {
+                return false;
+            }
+            listener.passComplete(out, s);
+        }
+        return true;
+    }
+}
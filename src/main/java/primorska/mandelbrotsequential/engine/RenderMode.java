@@ -0,0 +1,30 @@
+package primorska.mandelbrotsequential.engine;
+
+public enum RenderMode {
+    SEQUENTIAL("Sequential"),
+    PARALLEL("Parallel"),
+    DISTRIBUTED("Distributed"),
+    VECTOR("Vector"),
+    ACCELERATED("Accelerated"),
+    DEEP_ZOOM("Deep zoom"),
+    AUTO_PRECISION("Auto precision");
+
+    private final String label;
+
+    RenderMode(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public static RenderMode fromLabel(String label) {
+        for (RenderMode mode : values()) {
+            if (mode.label.equalsIgnoreCase(label) || mode.name().equalsIgnoreCase(label)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown render mode: " + label);
+    }
+}
@@ -0,0 +1,18 @@
+package primorska.mandelbrotsequential.engine;
+
+/**
+ * Cancellation token for one render. Starting a render for a new viewport cancels the
+ * previous session; work in flight notices at the next tile or row and stops, and nothing
+ * it produced after that point is shown.
+ */
+public final class RenderSession {
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,19 @@
+package primorska.mandelbrotsequential.engine;
+
+/**
+ * Fills an {@link IterationBuffer} for a viewport. Implementations differ only in how the
+ * work is scheduled.
+ */
+public interface Renderer extends AutoCloseable {
+
+    void render(Viewport viewport, IterationBuffer out);
+
+    /** Renders, stopping early if {@code session} is cancelled; the buffer is then incomplete. */
+    default void render(Viewport viewport, IterationBuffer out, RenderSession session) {
+        render(viewport, out);
+    }
+
+    @Override
+    default void close() {
+    }
+}
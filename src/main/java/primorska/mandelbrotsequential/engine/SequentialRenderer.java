@@ -0,0 +1,20 @@
+package primorska.mandelbrotsequential.engine;
+
+public class SequentialRenderer implements Renderer {
+    private final Kernel kernel;
+
+    public SequentialRenderer() {
+        this(Kernels.SCALAR);
+    }
+
+    public SequentialRenderer(Kernel kernel) {
+        this.kernel = kernel;
+    }
+
+    @Override
+    public void render(Viewport viewport, IterationBuffer out) {
+        int x0 = out.getOriginX();
+        int y0 = out.getOriginY();
+        kernel.prepare(viewport, out.getMaxIter()).renderTile(viewport, out, x0, y0, x0 + out.getWidth(), y0 + out.getHeight());
+    }
+}
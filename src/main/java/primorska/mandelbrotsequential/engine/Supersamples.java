@@ -0,0 +1,51 @@
+package primorska.mandelbrotsequential.engine;
+
+/**
+ * Extra escape counts taken inside the edge pixels of one {@link IterationBuffer}. Kept as
+ * counts rather than colors, so a recolor only has to average them again through the new
+ * lookup table.
+ */
+public final class Supersamples {
+    private final IterationBuffer source;
+    /** Buffer index of each supersampled pixel. */
+    private final int[] pixels;
+    /** Samples of pixel {@code i} are {@code [offsets[i], offsets[i + 1])}. */
+    private final int[] offsets;
+    private final int[] iterations;
+    private final float[] fractions;
+
+    Supersamples(IterationBuffer source, int[] pixels, int[] offsets, int[] iterations, float[] fractions) {
+        this.source = source;
+        this.pixels = pixels;
+        this.offsets = offsets;
+        this.iterations = iterations;
+        this.fractions = fractions;
+    }
+
+    /**
+     * Replaces the supersampled pixels of {@code argb}, already colored from {@link #getSource()}
+     * with the same {@code lut}, by the average color of their samples.
+     */
+    public void resolve(int[] lut, boolean smooth, int[] argb) {
+        int maxIter = source.getMaxIter();
+        boolean blend = smooth && fractions != null;
+        for (int p = 0; p < pixels.length; p++) {
+            int start = offsets[p];
+            int end = offsets[p + 1];
+            int r = 0, g = 0, b = 0;
+            for (int i = start; i < end; i++) {
+                int color = Colorizer.color(iterations[i], blend ? fractions[i] : 0f, maxIter, lut, blend);
+                r += (color >> 16) & 0xFF;
+                g += (color >> 8) & 0xFF;
+                b += color & 0xFF;
+            }
+            int n = end - start;
+            argb[pixels[p]] = 0xFF000000 | (r / n) << 16 | (g / n) << 8 | b / n;
+        }
+    }
+
+    /** The buffer whose pixels these samples refine. */
+    public IterationBuffer getSource() { return source; }
+    public int getPixelCount() { return pixels.length; }
+    public int getSampleCount() { return iterations.length; }
+}
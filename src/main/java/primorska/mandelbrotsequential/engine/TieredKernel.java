@@ -0,0 +1,29 @@
+package primorska.mandelbrotsequential.engine;
+
+/**
+ * Hands each frame to the cheapest kernel whose number format still resolves it, as chosen
+ * by {@link Precision#forViewport}: float lanes for overviews, double until its bits run out,
+ * double-double beyond that and perturbation past double-double's reach.
+ */
+final class TieredKernel implements Kernel {
+
+    @Override
+    public String getName() {
+        return "Tiered";
+    }
+
+    @Override
+    public Kernel prepare(Viewport viewport, int maxIter) {
+        return Kernels.forPrecision(Precision.forViewport(viewport)).prepare(viewport, maxIter);
+    }
+
+    @Override
+    public void renderTile(Viewport viewport, IterationBuffer out, int x0, int y0, int x1, int y1) {
+        prepare(viewport, out.getMaxIter()).renderTile(viewport, out, x0, y0, x1, y1);
+    }
+
+    @Override
+    public void renderSpan(Viewport viewport, IterationBuffer out, int y, int x0, int x1, int step) {
+        prepare(viewport, out.getMaxIter()).renderSpan(viewport, out, y, x0, x1, step);
+    }
+}
@@ -0,0 +1,155 @@
+package primorska.mandelbrotsequential.engine;
+
+import primorska.mandelbrotsequential.metrics.Metrics;
+import primorska.mandelbrotsequential.metrics.TileEvent;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Long-lived work-stealing pool that renders a frame by recursively halving it into tiles.
+ * Idle workers steal the still-unsplit halves, so a few expensive tiles near the set
+ * no longer hold up a whole core's share of rows.
+ */
+public class TileScheduler implements AutoCloseable {
+    public static final int DEFAULT_TILE_SIZE = 32;
+
+    private static volatile TileScheduler shared;
+
+    private final ForkJoinPool pool;
+    private final int tileSize;
+
+    public TileScheduler(int parallelism, int tileSize) {
+        if (parallelism <= 0 || tileSize <= 0) {
+            throw new IllegalArgumentException("Parallelism and tile size must be positive");
+        }
+        this.tileSize = tileSize;
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("mandelbrot-tile-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * The process-wide scheduler, sized from the {@code mandelbrot.threads} and
+     * {@code mandelbrot.tileSize} system properties.
+     */
+    public static TileScheduler shared() {
+        TileScheduler scheduler = shared;
+        if (scheduler == null) {
+            synchronized (TileScheduler.class) {
+                scheduler = shared;
+                if (scheduler == null) {
+                    scheduler = new TileScheduler(
+                            Integer.getInteger("mandelbrot.threads", Runtime.getRuntime().availableProcessors()),
+                            Integer.getInteger("mandelbrot.tileSize", DEFAULT_TILE_SIZE));
+                    shared = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /** Renders every pixel covered by {@code out} with the given kernel. */
+    public void render(Viewport viewport, IterationBuffer out, Kernel kernel) {
+        render(viewport, out, kernel, new RenderSession());
+    }
+
+    /** Like {@link #render(Viewport, IterationBuffer, Kernel)}, skipping remaining tiles once the session is cancelled. */
+    public void render(Viewport viewport, IterationBuffer out, Kernel kernel, RenderSession session) {
+        int x0 = out.getOriginX();
+        int y0 = out.getOriginY();
+        Kernel frameKernel = kernel.prepare(viewport, out.getMaxIter());
+        pool.invoke(new TileTask(viewport, out, frameKernel, session, x0, y0, x0 + out.getWidth(), y0 + out.getHeight()));
+    }
+
+    /** Runs {@code action} for every {@code step}-th row in {@code [y0, y1)} on the pool. */
+    public void forEachRow(int y0, int y1, int step, IntConsumer action, RenderSession session) {
+        int rows = (y1 - y0 + step - 1) / step;
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                IntStream.range(0, rows).parallel().forEach(i -> {
+                    if (!session.isCancelled()) {
+                        long start = System.nanoTime();
+                        action.accept(y0 + i * step);
+                        Metrics.ROW.recordSince(start);
+                    }
+                });
+            }
+        });
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ForkJoinTask is Serializable, but tiles never leave the pool.
+    @SuppressWarnings("serial")
+    private final class TileTask extends RecursiveAction {
+        private final Viewport viewport;
+        private final IterationBuffer out;
+        private final Kernel kernel;
+        private final RenderSession session;
+        private final int x0, y0, x1, y1;
+
+        TileTask(Viewport viewport, IterationBuffer out, Kernel kernel, RenderSession session,
+                 int x0, int y0, int x1, int y1) {
+            this.viewport = viewport;
+            this.out = out;
+            this.kernel = kernel;
+            this.session = session;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+        }
+
+        @Override
+        protected void compute() {
+            if (session.isCancelled()) {
+                return;
+            }
+            int w = x1 - x0;
+            int h = y1 - y0;
+            if (w <= tileSize && h <= tileSize) {
+                long start = System.nanoTime();
+                kernel.renderTile(viewport, out, x0, y0, x1, y1);
+                long elapsed = System.nanoTime() - start;
+                Metrics.TILE.record(elapsed);
+                TileEvent event = new TileEvent();
+                if (event.shouldCommit()) {
+                    event.commit(x0, y0, x1, y1, out.totalIterations(x0, y0, x1, y1), elapsed);
+                }
+            } else if (w >= h) {
+                int mid = x0 + w / 2;
+                invokeAll(new TileTask(viewport, out, kernel, session, x0, y0, mid, y1),
+                        new TileTask(viewport, out, kernel, session, mid, y0, x1, y1));
+            } else {
+                int mid = y0 + h / 2;
+                invokeAll(new TileTask(viewport, out, kernel, session, x0, y0, x1, mid),
+                        new TileTask(viewport, out, kernel, session, x0, mid, x1, y1));
+            }
+        }
+    }
+}
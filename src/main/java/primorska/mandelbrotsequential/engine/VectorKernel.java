@@ -0,0 +1,96 @@
+package primorska.mandelbrotsequential.engine;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Iterates a full SIMD register of horizontally adjacent pixels at once. Lanes that have
+ * escaped are masked out of further updates, so each lane performs exactly the same
+ * floating-point operations as {@link MandelbrotEngine#iterate} and produces identical counts.
+ * A frozen lane stays outside the escape radius, so the mask is simply recomputed every
+ * step; carrying it across iterations defeats C2's vector unboxing and runs slower than scalar.
+ * Only obtain instances through {@link Kernels#vector()}, which checks that the incubator
+ * module is present.
+ */
+final class VectorKernel implements Kernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    static int laneCount() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public String getName() {
+        return "Vector (" + SPECIES.length() + " lanes)";
+    }
+
+    @Override
+    public void renderTile(Viewport viewport, IterationBuffer out, int x0, int y0, int x1, int y1) {
+        double[] scratch = new double[SPECIES.length() * 4];
+        for (int y = y0; y < y1; y++) {
+            renderRow(viewport, out, y, x0, x1, 1, scratch);
+        }
+    }
+
+    @Override
+    public void renderSpan(Viewport viewport, IterationBuffer out, int y, int x0, int x1, int step) {
+        renderRow(viewport, out, y, x0, x1, step, new double[SPECIES.length() * 4]);
+    }
+
+    /** Kept separate from the tile loop so C2 compiles it as a normal method rather than an OSR loop. */
+    private static void renderRow(Viewport viewport, IterationBuffer out, int y, int x0, int x1, int step,
+                                  double[] scratch) {
+        int lanes = SPECIES.length();
+        int maxIter = out.getMaxIter();
+        int[] iterations = out.getIterations();
+        float[] fractions = out.getFractions();
+        double cyScalar = viewport.y0(y);
+
+        int x = x0;
+        for (; x + (lanes - 1) * step < x1; x += lanes * step) {
+            for (int i = 0; i < lanes; i++) {
+                scratch[i] = viewport.x0(x + i * step);
+            }
+            DoubleVector cx = DoubleVector.fromArray(SPECIES, scratch, 0);
+            DoubleVector cy = DoubleVector.broadcast(SPECIES, cyScalar);
+            DoubleVector zx = DoubleVector.zero(SPECIES);
+            DoubleVector zy = DoubleVector.zero(SPECIES);
+            DoubleVector count = DoubleVector.zero(SPECIES);
+
+            for (int iter = 0; iter < maxIter; iter++) {
+                DoubleVector zx2 = zx.mul(zx);
+                DoubleVector zy2 = zy.mul(zy);
+                VectorMask<Double> active = zx2.add(zy2).compare(VectorOperators.LE, 4.0);
+                if (!active.anyTrue()) {
+                    break;
+                }
+                DoubleVector nextZy = zx.mul(2.0).mul(zy).add(cy);
+                zx = zx.blend(zx2.sub(zy2).add(cx), active);
+                zy = zy.blend(nextZy, active);
+                count = count.add(1.0, active);
+            }
+
+            count.intoArray(scratch, lanes);
+            int index = out.index(x, y);
+            for (int i = 0; i < lanes; i++) {
+                iterations[index + i * step] = (int) scratch[lanes + i];
+            }
+            if (fractions != null) {
+                zx.intoArray(scratch, 2 * lanes);
+                zy.intoArray(scratch, 3 * lanes);
+                for (int i = 0; i < lanes; i++) {
+                    double zxi = scratch[2 * lanes + i];
+                    double zyi = scratch[3 * lanes + i];
+                    fractions[index + i * step] = iterations[index + i * step] < maxIter
+                            ? MandelbrotEngine.fraction(zxi * zxi + zyi * zyi)
+                            : 0f;
+                }
+            }
+        }
+        if (x < x1) {
+            MandelbrotEngine.renderSpan(viewport, out, y, x, x1, step);
+        }
+    }
+}
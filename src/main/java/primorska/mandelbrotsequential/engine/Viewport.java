@@ -0,0 +1,118 @@
+package primorska.mandelbrotsequential.engine;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * Maps pixel coordinates of a {@code width x height} frame onto the complex plane.
+ * The range is {@code (maxX - minX) / zoomFactor} wide and anchored at {@code minX/minY},
+ * the same convention the explorer has always used.
+ * <p>
+ * The anchor is also kept as a {@link BigDecimal}. Plain {@code double} corners run out of
+ * digits around 1e13 magnification; deep-zoom kernels read the precise anchor instead, and
+ * pixel spacing stays a {@code double} down to roughly 1e-300.
+ */
+public final class Viewport {
+    private final double minX, maxX, minY, maxY;
+    private final double zoomFactor;
+    private final int width;
+    private final int height;
+    private final double rangeX;
+    private final double rangeY;
+    private final BigDecimal preciseMinX;
+    private final BigDecimal preciseMinY;
+
+    public Viewport(double minX, double maxX, double minY, double maxY,
+                    double zoomFactor, int width, int height) {
+        this(new BigDecimal(minX), new BigDecimal(minY), maxX - minX, maxY - minY, zoomFactor, width, height);
+    }
+
+    /**
+     * A viewport anchored at an arbitrary-precision corner. {@code spanX/spanY} are the
+     * unzoomed extents, i.e. {@code maxX - minX} and {@code maxY - minY}.
+     */
+    public Viewport(BigDecimal preciseMinX, BigDecimal preciseMinY, double spanX, double spanY,
+                    double zoomFactor, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Viewport size must be positive: " + width + "x" + height);
+        }
+        this.preciseMinX = preciseMinX;
+        this.preciseMinY = preciseMinY;
+        this.minX = preciseMinX.doubleValue();
+        this.maxX = minX + spanX;
+        this.minY = preciseMinY.doubleValue();
+        this.maxY = minY + spanY;
+        this.zoomFactor = zoomFactor;
+        this.width = width;
+        this.height = height;
+        this.rangeX = spanX / zoomFactor;
+        this.rangeY = spanY / zoomFactor;
+    }
+
+    /** A viewport of the given size centered on {@code (centerX, centerY)}, {@code rangeX} wide. */
+    public static Viewport centered(double centerX, double centerY, double rangeX, int width, int height) {
+        double rangeY = rangeX * height / width;
+        return new Viewport(centerX - rangeX / 2, centerX + rangeX / 2,
+                centerY - rangeY / 2, centerY + rangeY / 2, 1.0, width, height);
+    }
+
+    /** Same as {@link #centered(double, double, double, int, int)} with a precise center. */
+    public static Viewport centered(BigDecimal centerX, BigDecimal centerY, double rangeX, int width, int height) {
+        double rangeY = rangeX * height / width;
+        return new Viewport(centerX.subtract(new BigDecimal(rangeX / 2)), centerY.subtract(new BigDecimal(rangeY / 2)),
+                rangeX, rangeY, 1.0, width, height);
+    }
+
+    /** The same region of the plane sampled at a different resolution. */
+    public Viewport resized(int width, int height) {
+        return new Viewport(preciseMinX, preciseMinY, maxX - minX, maxY - minY, zoomFactor, width, height);
+    }
+
+    public double x0(int x) {
+        return minX + x * rangeX / width;
+    }
+
+    public double y0(int y) {
+        return minY + y * rangeY / height;
+    }
+
+    /** Real part of the (possibly fractional) pixel column {@code x}, without losing digits. */
+    public BigDecimal preciseX0(double x, MathContext mc) {
+        return preciseMinX.add(new BigDecimal(x * getPixelSpacingX()), mc);
+    }
+
+    public BigDecimal preciseY0(double y, MathContext mc) {
+        return preciseMinY.add(new BigDecimal(y * getPixelSpacingY()), mc);
+    }
+
+    public double getPixelSpacingX() {
+        return rangeX / width;
+    }
+
+    public double getPixelSpacingY() {
+        return rangeY / height;
+    }
+
+    /**
+     * Decimal digits needed to tell neighboring pixels apart, plus headroom for the
+     * cancellation that accumulates over an orbit.
+     */
+    public int requiredPrecision() {
+        double spacing = Math.min(getPixelSpacingX(), getPixelSpacingY());
+        double magnitude = Math.max(1.0, Math.max(Math.abs(minX), Math.abs(minY)));
+        return Math.max(20, (int) Math.ceil(Math.log10(magnitude / spacing)) + 20);
+    }
+
+    public double getMinX() { return minX; }
+    public double getMaxX() { return maxX; }
+    public double getMinY() { return minY; }
+    public double getMaxY() { return maxY; }
+    public BigDecimal getPreciseMinX() { return preciseMinX; }
+    public BigDecimal getPreciseMinY() { return preciseMinY; }
+    public double getZoomFactor() { return zoomFactor; }
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public double getRangeX() { return rangeX; }
+    public double getRangeY() { return rangeY; }
+    public long getPixelCount() { return (long) width * height; }
+}
@@ -0,0 +1,73 @@
+package primorska.mandelbrotsequential.formula;
+
+import primorska.mandelbrotsequential.engine.IterationBuffer;
+import primorska.mandelbrotsequential.engine.Kernel;
+import primorska.mandelbrotsequential.engine.Kernels;
+import primorska.mandelbrotsequential.engine.MandelbrotEngine;
+import primorska.mandelbrotsequential.engine.Viewport;
+
+/** {@code z -> (|Re z| + i|Im z|)^2 + c}, drawn with the imaginary axis pointing down as usual. */
+public final class BurningShipFormula implements Formula {
+
+    @Override
+    public String getName() {
+        return "Burning Ship";
+    }
+
+    @Override
+    public double[] getHome() {
+        return new double[] {-0.5, -0.5, 4};
+    }
+
+    @Override
+    public Kernel kernel(double[] parameters) {
+        return new ScalarKernel();
+    }
+
+    @Override
+    public Kernel vectorKernel(double[] parameters) {
+        return Kernels.isVectorAvailable() ? new FormulaVectorKernels.BurningShip() : kernel(parameters);
+    }
+
+    static int iterate(double cx, double cy, int maxIter, float[] fractions, int index) {
+        double zx = 0, zy = 0;
+        int iter = 0;
+        while (zx * zx + zy * zy <= 4 && iter < maxIter) {
+            double tmp = zx * zx - zy * zy + cx;
+            zy = Math.abs(2 * zx * zy) + cy;
+            zx = tmp;
+            iter++;
+        }
+        if (fractions != null) {
+            fractions[index] = iter < maxIter ? MandelbrotEngine.fraction(zx * zx + zy * zy) : 0f;
+        }
+        return iter;
+    }
+
+    private static final class ScalarKernel implements Kernel {
+
+        @Override
+        public String getName() {
+            return "Burning Ship";
+        }
+
+        @Override
+        public void renderTile(Viewport viewport, IterationBuffer out, int x0, int y0, int x1, int y1) {
+            for (int y = y0; y < y1; y++) {
+                renderSpan(viewport, out, y, x0, x1, 1);
+            }
+        }
+
+        @Override
+        public void renderSpan(Viewport viewport, IterationBuffer out, int y, int x0, int x1, int step) {
+            int maxIter = out.getMaxIter();
+            int[] iterations = out.getIterations();
+            float[] fractions = out.getFractions();
+            double cy = viewport.y0(y);
+            for (int x = x0; x < x1; x += step) {
+                int index = out.index(x, y);
+                iterations[index] = iterate(viewport.x0(x), cy, maxIter, fractions, index);
+            }
+        }
+    }
+}
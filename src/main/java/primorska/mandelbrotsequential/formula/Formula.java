@@ -0,0 +1,41 @@
+package primorska.mandelbrotsequential.formula;
+
+import primorska.mandelbrotsequential.engine.Kernel;
+
+import java.util.List;
+
+/**
+ * An escape-time formula, plugged in through {@link java.util.ServiceLoader}. A formula never
+ * iterates a single step for the caller: it hands out whole kernels, each with the formula
+ * written into its own loop, so the JIT compiles one monomorphic loop per formula and there is
+ * no interface call per iteration. {@link Formulas} lists the formulas found.
+ */
+public interface Formula {
+
+    String getName();
+
+    /** Names of the parameters {@link #kernel} takes, in order; empty for most formulas. */
+    default List<String> getParameterNames() {
+        return List.of();
+    }
+
+    default double[] getDefaultParameters() {
+        return new double[0];
+    }
+
+    /** Center and width, {@code {x, y, width}}, of the view that shows the whole fractal. */
+    default double[] getHome() {
+        return new double[] {-0.5, 0, 4};
+    }
+
+    /** A scalar kernel iterating this formula with {@code parameters}. Called per frame or task, not per pixel. */
+    Kernel kernel(double[] parameters);
+
+    /**
+     * The fastest kernel for {@code parameters}, iterating several pixels per SIMD register
+     * where the JVM offers the Vector API; the scalar kernel otherwise.
+     */
+    default Kernel vectorKernel(double[] parameters) {
+        return kernel(parameters);
+    }
+}
@@ -0,0 +1,283 @@
+package primorska.mandelbrotsequential.formula;
+
+import primorska.mandelbrotsequential.engine.IterationBuffer;
+import primorska.mandelbrotsequential.engine.Kernel;
+import primorska.mandelbrotsequential.engine.MandelbrotEngine;
+import primorska.mandelbrotsequential.engine.Viewport;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD kernels for the formulas other than Mandelbrot, in the style of the engine's vector
+ * kernel: lanes that escaped are masked out, so each lane performs exactly the operations of
+ * the formula's scalar loop and the counts match it. Every formula has its own copy of the
+ * iteration loop on purpose; a shared loop calling back into the formula would be one call
+ * site for all of them, and the JIT could no longer inline the step. Only loading pixels and
+ * storing counts, once per register, are shared. Only created after
+ * {@link primorska.mandelbrotsequential.engine.Kernels#isVectorAvailable()}.
+ */
+final class FormulaVectorKernels {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private FormulaVectorKernels() {
+    }
+
+    private static String name(String formula) {
+        return formula + " vector (" + SPECIES.length() + " lanes)";
+    }
+
+    /** Real parts of the {@code lanes} pixels from column {@code x} on, {@code step} apart. */
+    private static DoubleVector columns(Viewport viewport, int x, int step, double[] scratch) {
+        for (int i = 0; i < SPECIES.length(); i++) {
+            scratch[i] = viewport.x0(x + i * step);
+        }
+        return DoubleVector.fromArray(SPECIES, scratch, 0);
+    }
+
+    /** Stores one register's counts and, if the buffer keeps them, fractional counts. */
+    private static void store(IterationBuffer out, int x, int y, int step, DoubleVector count,
+                              DoubleVector zx, DoubleVector zy, int degree, double[] scratch) {
+        int lanes = SPECIES.length();
+        int maxIter = out.getMaxIter();
+        int[] iterations = out.getIterations();
+        float[] fractions = out.getFractions();
+        count.intoArray(scratch, lanes);
+        int index = out.index(x, y);
+        for (int i = 0; i < lanes; i++) {
+            iterations[index + i * step] = (int) scratch[lanes + i];
+        }
+        if (fractions != null) {
+            zx.intoArray(scratch, 2 * lanes);
+            zy.intoArray(scratch, 3 * lanes);
+            for (int i = 0; i < lanes; i++) {
+                double zxi = scratch[2 * lanes + i];
+                double zyi = scratch[3 * lanes + i];
+                fractions[index + i * step] = iterations[index + i * step] < maxIter
+                        ? MandelbrotEngine.fraction(zxi * zxi + zyi * zyi, degree)
+                        : 0f;
+            }
+        }
+    }
+
+    private static double[] scratch() {
+        return new double[SPECIES.length() * 4];
+    }
+
+    static final class Julia implements Kernel {
+        private final double cx, cy;
+
+        Julia(double cx, double cy) {
+            this.cx = cx;
+            this.cy = cy;
+        }
+
+        @Override
+        public String getName() {
+            return name("Julia");
+        }
+
+        @Override
+        public void renderTile(Viewport viewport, IterationBuffer out, int x0, int y0, int x1, int y1) {
+            for (int y = y0; y < y1; y++) {
+                renderSpan(viewport, out, y, x0, x1, 1);
+            }
+        }
+
+        @Override
+        public void renderSpan(Viewport viewport, IterationBuffer out, int y, int x0, int x1, int step) {
+            int lanes = SPECIES.length();
+            int maxIter = out.getMaxIter();
+            double[] scratch = scratch();
+            double zyScalar = viewport.y0(y);
+            DoubleVector vcx = DoubleVector.broadcast(SPECIES, cx);
+            DoubleVector vcy = DoubleVector.broadcast(SPECIES, cy);
+
+            int x = x0;
+            for (; x + (lanes - 1) * step < x1; x += lanes * step) {
+                DoubleVector zx = columns(viewport, x, step, scratch);
+                DoubleVector zy = DoubleVector.broadcast(SPECIES, zyScalar);
+                DoubleVector count = DoubleVector.zero(SPECIES);
+                for (int iter = 0; iter < maxIter; iter++) {
+                    DoubleVector zx2 = zx.mul(zx);
+                    DoubleVector zy2 = zy.mul(zy);
+                    VectorMask<Double> active = zx2.add(zy2).compare(VectorOperators.LE, 4.0);
+                    if (!active.anyTrue()) {
+                        break;
+                    }
+                    DoubleVector nextZy = zx.mul(2.0).mul(zy).add(vcy);
+                    zx = zx.blend(zx2.sub(zy2).add(vcx), active);
+                    zy = zy.blend(nextZy, active);
+                    count = count.add(1.0, active);
+                }
+                store(out, x, y, step, count, zx, zy, 2, scratch);
+            }
+            for (; x < x1; x += step) {
+                int index = out.index(x, y);
+                out.getIterations()[index] = JuliaFormula.iterate(viewport.x0(x), zyScalar, cx, cy, maxIter,
+                        out.getFractions(), index);
+            }
+        }
+    }
+
+    static final class Multibrot implements Kernel {
+        private final int power;
+
+        Multibrot(int power) {
+            this.power = power;
+        }
+
+        @Override
+        public String getName() {
+            return name("Multibrot");
+        }
+
+        @Override
+        public void renderTile(Viewport viewport, IterationBuffer out, int x0, int y0, int x1, int y1) {
+            for (int y = y0; y < y1; y++) {
+                renderSpan(viewport, out, y, x0, x1, 1);
+            }
+        }
+
+        @Override
+        public void renderSpan(Viewport viewport, IterationBuffer out, int y, int x0, int x1, int step) {
+            int lanes = SPECIES.length();
+            int maxIter = out.getMaxIter();
+            double[] scratch = scratch();
+            double cyScalar = viewport.y0(y);
+
+            int x = x0;
+            for (; x + (lanes - 1) * step < x1; x += lanes * step) {
+                DoubleVector cx = columns(viewport, x, step, scratch);
+                DoubleVector cy = DoubleVector.broadcast(SPECIES, cyScalar);
+                DoubleVector zx = DoubleVector.zero(SPECIES);
+                DoubleVector zy = DoubleVector.zero(SPECIES);
+                DoubleVector count = DoubleVector.zero(SPECIES);
+                for (int iter = 0; iter < maxIter; iter++) {
+                    VectorMask<Double> active = zx.mul(zx).add(zy.mul(zy)).compare(VectorOperators.LE, 4.0);
+                    if (!active.anyTrue()) {
+                        break;
+                    }
+                    DoubleVector px = zx;
+                    DoubleVector py = zy;
+                    for (int k = 1; k < power; k++) {
+                        DoubleVector tmp = px.mul(zx).sub(py.mul(zy));
+                        py = px.mul(zy).add(py.mul(zx));
+                        px = tmp;
+                    }
+                    zx = zx.blend(px.add(cx), active);
+                    zy = zy.blend(py.add(cy), active);
+                    count = count.add(1.0, active);
+                }
+                store(out, x, y, step, count, zx, zy, power, scratch);
+            }
+            for (; x < x1; x += step) {
+                int index = out.index(x, y);
+                out.getIterations()[index] = MultibrotFormula.iterate(viewport.x0(x), cyScalar, power, maxIter,
+                        out.getFractions(), index);
+            }
+        }
+    }
+
+    static final class BurningShip implements Kernel {
+
+        @Override
+        public String getName() {
+            return name("Burning Ship");
+        }
+
+        @Override
+        public void renderTile(Viewport viewport, IterationBuffer out, int x0, int y0, int x1, int y1) {
+            for (int y = y0; y < y1; y++) {
+                renderSpan(viewport, out, y, x0, x1, 1);
+            }
+        }
+
+        @Override
+        public void renderSpan(Viewport viewport, IterationBuffer out, int y, int x0, int x1, int step) {
+            int lanes = SPECIES.length();
+            int maxIter = out.getMaxIter();
+            double[] scratch = scratch();
+            double cyScalar = viewport.y0(y);
+
+            int x = x0;
+            for (; x + (lanes - 1) * step < x1; x += lanes * step) {
+                DoubleVector cx = columns(viewport, x, step, scratch);
+                DoubleVector cy = DoubleVector.broadcast(SPECIES, cyScalar);
+                DoubleVector zx = DoubleVector.zero(SPECIES);
+                DoubleVector zy = DoubleVector.zero(SPECIES);
+                DoubleVector count = DoubleVector.zero(SPECIES);
+                for (int iter = 0; iter < maxIter; iter++) {
+                    DoubleVector zx2 = zx.mul(zx);
+                    DoubleVector zy2 = zy.mul(zy);
+                    VectorMask<Double> active = zx2.add(zy2).compare(VectorOperators.LE, 4.0);
+                    if (!active.anyTrue()) {
+                        break;
+                    }
+                    DoubleVector nextZy = zx.mul(2.0).mul(zy).abs().add(cy);
+                    zx = zx.blend(zx2.sub(zy2).add(cx), active);
+                    zy = zy.blend(nextZy, active);
+                    count = count.add(1.0, active);
+                }
+                store(out, x, y, step, count, zx, zy, 2, scratch);
+            }
+            for (; x < x1; x += step) {
+                int index = out.index(x, y);
+                out.getIterations()[index] = BurningShipFormula.iterate(viewport.x0(x), cyScalar, maxIter,
+                        out.getFractions(), index);
+            }
+        }
+    }
+
+    static final class Tricorn implements Kernel {
+
+        @Override
+        public String getName() {
+            return name("Tricorn");
+        }
+
+        @Override
+        public void renderTile(Viewport viewport, IterationBuffer out, int x0, int y0, int x1, int y1) {
+            for (int y = y0; y < y1; y++) {
+                renderSpan(viewport, out, y, x0, x1, 1);
+            }
+        }
+
+        @Override
+        public void renderSpan(Viewport viewport, IterationBuffer out, int y, int x0, int x1, int step) {
+            int lanes = SPECIES.length();
+            int maxIter = out.getMaxIter();
+            double[] scratch = scratch();
+            double cyScalar = viewport.y0(y);
+
+            int x = x0;
+            for (; x + (lanes - 1) * step < x1; x += lanes * step) {
+                DoubleVector cx = columns(viewport, x, step, scratch);
+                DoubleVector cy = DoubleVector.broadcast(SPECIES, cyScalar);
+                DoubleVector zx = DoubleVector.zero(SPECIES);
+                DoubleVector zy = DoubleVector.zero(SPECIES);
+                DoubleVector count = DoubleVector.zero(SPECIES);
+                for (int iter = 0; iter < maxIter; iter++) {
+                    DoubleVector zx2 = zx.mul(zx);
+                    DoubleVector zy2 = zy.mul(zy);
+                    VectorMask<Double> active = zx2.add(zy2).compare(VectorOperators.LE, 4.0);
+                    if (!active.anyTrue()) {
+                        break;
+                    }
+                    DoubleVector nextZy = zx.mul(-2.0).mul(zy).add(cy);
+                    zx = zx.blend(zx2.sub(zy2).add(cx), active);
+                    zy = zy.blend(nextZy, active);
+                    count = count.add(1.0, active);
+                }
+                store(out, x, y, step, count, zx, zy, 2, scratch);
+            }
+            for (; x < x1; x += step) {
+                int index = out.index(x, y);
+                out.getIterations()[index] = TricornFormula.iterate(viewport.x0(x), cyScalar, maxIter,
+                        out.getFractions(), index);
+            }
+        }
+    }
+}
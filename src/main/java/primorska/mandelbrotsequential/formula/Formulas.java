@@ -0,0 +1,53 @@
+package primorska.mandelbrotsequential.formula;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * The formulas registered as {@link Formula} services: the built-in Mandelbrot, Julia,
+ * Multibrot, Burning Ship and Tricorn, plus any a jar on the class or module path provides.
+ */
+public final class Formulas {
+    public static final String MANDELBROT = "Mandelbrot";
+
+    private static final List<Formula> ALL = load();
+
+    private Formulas() {
+    }
+
+    private static List<Formula> load() {
+        List<Formula> formulas = new ArrayList<>();
+        for (Formula formula : ServiceLoader.load(Formula.class)) {
+            formulas.add(formula);
+        }
+        if (formulas.stream().noneMatch(formula -> formula.getName().equals(MANDELBROT))) {
+            // Run from a build without the service registration.
+            formulas.add(0, new MandelbrotFormula());
+        }
+        return List.copyOf(formulas);
+    }
+
+    public static List<Formula> all() {
+        return ALL;
+    }
+
+    /** Looks a formula up by name, ignoring case, spaces and hyphens, so "burning-ship" finds "Burning Ship". */
+    public static Formula byName(String name) {
+        String key = normalize(name);
+        for (Formula formula : ALL) {
+            if (normalize(formula.getName()).equals(key)) {
+                return formula;
+            }
+        }
+        throw new IllegalArgumentException("Unknown formula: " + name);
+    }
+
+    public static Formula mandelbrot() {
+        return byName(MANDELBROT);
+    }
+
+    private static String normalize(String name) {
+        return name.replaceAll("[\\s_-]", "").toLowerCase();
+    }
+}
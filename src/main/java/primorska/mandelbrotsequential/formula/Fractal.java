@@ -0,0 +1,86 @@
+package primorska.mandelbrotsequential.formula;
+
+import primorska.mandelbrotsequential.engine.Kernel;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/** A {@link Formula} together with its parameters: what a frame or a distributed task renders. */
+public final class Fractal {
+    public static final Fractal MANDELBROT = new Fractal(Formulas.mandelbrot(), new double[0]);
+
+    private final Formula formula;
+    private final double[] parameters;
+
+    public Fractal(Formula formula, double[] parameters) {
+        if (parameters.length != formula.getParameterNames().size()) {
+            throw new IllegalArgumentException(formula.getName() + " takes " + formula.getParameterNames().size()
+                    + " parameters " + formula.getParameterNames() + ", got " + parameters.length);
+        }
+        this.formula = formula;
+        this.parameters = parameters.clone();
+    }
+
+    /** The formula with its default parameters. */
+    public static Fractal of(Formula formula) {
+        return new Fractal(formula, formula.getDefaultParameters());
+    }
+
+    /**
+     * Parses {@code name} or {@code name:p1,p2,...}, e.g. {@code julia:-0.8,0.156}; missing
+     * parameters take the formula's defaults.
+     */
+    public static Fractal parse(String spec) {
+        int colon = spec.indexOf(':');
+        Formula formula = Formulas.byName(colon < 0 ? spec : spec.substring(0, colon));
+        double[] parameters = formula.getDefaultParameters();
+        if (colon >= 0 && !spec.substring(colon + 1).isBlank()) {
+            String[] values = spec.substring(colon + 1).split(",");
+            if (values.length > parameters.length) {
+                throw new IllegalArgumentException(formula.getName() + " takes at most " + parameters.length
+                        + " parameters " + formula.getParameterNames());
+            }
+            for (int i = 0; i < values.length; i++) {
+                parameters[i] = Double.parseDouble(values[i].trim());
+            }
+        }
+        return new Fractal(formula, parameters);
+    }
+
+    public Formula getFormula() { return formula; }
+    public String getName() { return formula.getName(); }
+    public double[] getParameters() { return parameters.clone(); }
+
+    public boolean isMandelbrot() {
+        return formula.getName().equals(Formulas.MANDELBROT);
+    }
+
+    public Kernel kernel() {
+        return formula.kernel(parameters);
+    }
+
+    public Kernel vectorKernel() {
+        return formula.vectorKernel(parameters);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Fractal other && formula.getName().equals(other.formula.getName())
+                && Arrays.equals(parameters, other.parameters);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(formula.getName(), Arrays.hashCode(parameters));
+    }
+
+    /** E.g. {@code Julia:-0.8,0.156}, which {@link #parse} reads back. */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(formula.getName());
+        for (int i = 0; i < parameters.length; i++) {
+            text.append(i == 0 ? ':' : ',').append(parameters[i]);
+        }
+        return text.toString();
+    }
+}
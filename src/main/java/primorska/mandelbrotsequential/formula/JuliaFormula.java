@@ -0,0 +1,92 @@
+package primorska.mandelbrotsequential.formula;
+
+import primorska.mandelbrotsequential.engine.IterationBuffer;
+import primorska.mandelbrotsequential.engine.Kernel;
+import primorska.mandelbrotsequential.engine.Kernels;
+import primorska.mandelbrotsequential.engine.MandelbrotEngine;
+import primorska.mandelbrotsequential.engine.Viewport;
+
+import java.util.List;
+
+/** {@code z -> z^2 + c} for a fixed {@code c}, starting from the pixel: the Julia set of {@code c}. */
+public final class JuliaFormula implements Formula {
+
+    @Override
+    public String getName() {
+        return "Julia";
+    }
+
+    @Override
+    public List<String> getParameterNames() {
+        return List.of("re", "im");
+    }
+
+    @Override
+    public double[] getDefaultParameters() {
+        return new double[] {-0.8, 0.156};
+    }
+
+    @Override
+    public double[] getHome() {
+        return new double[] {0, 0, 3.5};
+    }
+
+    @Override
+    public Kernel kernel(double[] parameters) {
+        return new ScalarKernel(parameters[0], parameters[1]);
+    }
+
+    @Override
+    public Kernel vectorKernel(double[] parameters) {
+        return Kernels.isVectorAvailable()
+                ? new FormulaVectorKernels.Julia(parameters[0], parameters[1])
+                : kernel(parameters);
+    }
+
+    static int iterate(double zx, double zy, double cx, double cy, int maxIter, float[] fractions, int index) {
+        int iter = 0;
+        while (zx * zx + zy * zy <= 4 && iter < maxIter) {
+            double tmp = zx * zx - zy * zy + cx;
+            zy = 2 * zx * zy + cy;
+            zx = tmp;
+            iter++;
+        }
+        if (fractions != null) {
+            fractions[index] = iter < maxIter ? MandelbrotEngine.fraction(zx * zx + zy * zy) : 0f;
+        }
+        return iter;
+    }
+
+    private static final class ScalarKernel implements Kernel {
+        private final double cx, cy;
+
+        ScalarKernel(double cx, double cy) {
+            this.cx = cx;
+            this.cy = cy;
+        }
+
+        @Override
+        public String getName() {
+            return "Julia";
+        }
+
+        @Override
+        public void renderTile(Viewport viewport, IterationBuffer out, int x0, int y0, int x1, int y1) {
+            for (int y = y0; y < y1; y++) {
+                renderSpan(viewport, out, y, x0, x1, 1);
+            }
+        }
+
+        @Override
+        public void renderSpan(Viewport viewport, IterationBuffer out, int y, int x0, int x1, int step) {
+            int maxIter = out.getMaxIter();
+            int[] iterations = out.getIterations();
+            float[] fractions = out.getFractions();
+            double zy = viewport.y0(y);
+            for (int x = x0; x < x1; x += step) {
+                int index = out.index(x, y);
+                iterations[index] = iterate(viewport.x0(x), zy, cx, cy, maxIter, fractions, index);
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package primorska.mandelbrotsequential.formula;
+
+import primorska.mandelbrotsequential.engine.Kernel;
+import primorska.mandelbrotsequential.engine.Kernels;
+
+/**
+ * {@code z -> z^2 + c}. Its kernels are the engine's own, so the render modes' accelerated,
+ * perturbation and precision-tiered kernels still apply to it.
+ */
+public final class MandelbrotFormula implements Formula {
+
+    @Override
+    public String getName() {
+        return Formulas.MANDELBROT;
+    }
+
+    @Override
+    public Kernel kernel(double[] parameters) {
+        return Kernels.SCALAR;
+    }
+
+    @Override
+    public Kernel vectorKernel(double[] parameters) {
+        return Kernels.vector();
+    }
+}
@@ -0,0 +1,104 @@
+package primorska.mandelbrotsequential.formula;
+
+import primorska.mandelbrotsequential.engine.IterationBuffer;
+import primorska.mandelbrotsequential.engine.Kernel;
+import primorska.mandelbrotsequential.engine.Kernels;
+import primorska.mandelbrotsequential.engine.MandelbrotEngine;
+import primorska.mandelbrotsequential.engine.Viewport;
+
+import java.util.List;
+
+/** {@code z -> z^n + c} for an integer power {@code n >= 2}; {@code n = 2} is the Mandelbrot set. */
+public final class MultibrotFormula implements Formula {
+
+    @Override
+    public String getName() {
+        return "Multibrot";
+    }
+
+    @Override
+    public List<String> getParameterNames() {
+        return List.of("power");
+    }
+
+    @Override
+    public double[] getDefaultParameters() {
+        return new double[] {3};
+    }
+
+    @Override
+    public double[] getHome() {
+        return new double[] {0, 0, 3.5};
+    }
+
+    @Override
+    public Kernel kernel(double[] parameters) {
+        return new ScalarKernel(power(parameters));
+    }
+
+    @Override
+    public Kernel vectorKernel(double[] parameters) {
+        return Kernels.isVectorAvailable() ? new FormulaVectorKernels.Multibrot(power(parameters)) : kernel(parameters);
+    }
+
+    private static int power(double[] parameters) {
+        int power = (int) Math.round(parameters[0]);
+        if (power < 2 || power != parameters[0]) {
+            throw new IllegalArgumentException("Multibrot power must be an integer of at least 2: " + parameters[0]);
+        }
+        return power;
+    }
+
+    /** Raises {@code z} to the power by repeated multiplication, which the vector kernel does the same way. */
+    static int iterate(double cx, double cy, int power, int maxIter, float[] fractions, int index) {
+        double zx = 0, zy = 0;
+        int iter = 0;
+        while (zx * zx + zy * zy <= 4 && iter < maxIter) {
+            double px = zx, py = zy;
+            for (int k = 1; k < power; k++) {
+                double tmp = px * zx - py * zy;
+                py = px * zy + py * zx;
+                px = tmp;
+            }
+            zx = px + cx;
+            zy = py + cy;
+            iter++;
+        }
+        if (fractions != null) {
+            fractions[index] = iter < maxIter ? MandelbrotEngine.fraction(zx * zx + zy * zy, power) : 0f;
+        }
+        return iter;
+    }
+
+    private static final class ScalarKernel implements Kernel {
+        private final int power;
+
+        ScalarKernel(int power) {
+            this.power = power;
+        }
+
+        @Override
+        public String getName() {
+            return "Multibrot";
+        }
+
+        @Override
+        public void renderTile(Viewport viewport, IterationBuffer out, int x0, int y0, int x1, int y1) {
+            for (int y = y0; y < y1; y++) {
+                renderSpan(viewport, out, y, x0, x1, 1);
+            }
+        }
+
+        @Override
+        public void renderSpan(Viewport viewport, IterationBuffer out, int y, int x0, int x1, int step) {
+            int maxIter = out.getMaxIter();
+            int[] iterations = out.getIterations();
+            float[] fractions = out.getFractions();
+            double cy = viewport.y0(y);
+            for (int x = x0; x < x1; x += step) {
+                int index = out.index(x, y);
+                iterations[index] = iterate(viewport.x0(x), cy, power, maxIter, fractions, index);
+            }
+        }
+    }
+}
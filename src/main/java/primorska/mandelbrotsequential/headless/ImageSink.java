@@ -0,0 +1,27 @@
+package primorska.mandelbrotsequential.headless;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Receives an image top to bottom, a strip of rows at a time, so the whole image never has
+ * to be held in memory.
+ */
+public interface ImageSink extends AutoCloseable {
+
+    /** Appends the next {@code rows} rows, taken from the start of {@code argb}. May modify {@code argb}. */
+    void writeRows(int[] argb, int rows) throws IOException;
+
+    /** Finishes the file; fails if fewer rows than the image height were written. */
+    @Override
+    void close() throws IOException;
+
+    /** A PAM sink for {@code .pam} or {@code .raw} files, a PNG sink for anything else. */
+    static ImageSink create(Path file, int width, int height) throws IOException {
+        String name = file.getFileName().toString().toLowerCase();
+        if (name.endsWith(".pam") || name.endsWith(".raw")) {
+            return new PamSink(file, width, height);
+        }
+        return new PngSink(file, width, height);
+    }
+}
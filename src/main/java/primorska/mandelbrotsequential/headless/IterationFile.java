@@ -0,0 +1,411 @@
+package primorska.mandelbrotsequential.headless;
+
+import primorska.mandelbrotsequential.engine.IterationBuffer;
+import primorska.mandelbrotsequential.engine.Viewport;
+import primorska.mandelbrotsequential.formula.Fractal;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The escape counts of a render on disk, so it can be recolored or reopened without being
+ * computed again. A header with the viewport, iteration limit and fractal is followed by chunks
+ * of whole rows, each holding the counts and then, if kept, the fractional parts, row-major and
+ * little-endian. A chunk is stored as is, and read and written through a memory-mapped window of
+ * the file, or deflated with the counts delta-coded along each row. A table of chunks at the end
+ * lets any chunk be read on its own, so opening a file reads only the header and the table.
+ */
+public final class IterationFile implements AutoCloseable {
+    /** Extension of iteration files, which the GUI and {@code --recolor} recognize. */
+    public static final String EXTENSION = ".mit";
+    /** Pixels per chunk; a chunk is the unit of reading, mapping and compression. */
+    public static final int CHUNK_PIXELS = 1 << 18;
+
+    private static final int MAGIC = 0x3154494D; // "MIT1"
+    private static final int VERSION = 1;
+    private static final int FRACTIONS = 1;
+    private static final int COMPRESSED = 2;
+    /** Magic, version, flags, table offset and chunk count, the part rewritten on close. */
+    private static final int PREFIX_BYTES = 4 + 4 + 4 + 8 + 4;
+    /** First row, row count, offset and stored length. */
+    private static final int TABLE_ENTRY_BYTES = 4 + 4 + 8 + 4;
+    private static final int MAX_HEADER_BYTES = PREFIX_BYTES + 3 * 4 + 3 * 8 + 3 * (2 + 0xFFFF);
+
+    private final FileChannel channel;
+    private final Viewport viewport;
+    private final int maxIter;
+    private final Fractal fractal;
+    private final boolean fractions;
+    private final boolean compressed;
+    private final int[] chunkRows;
+    private final int[] chunkY;
+    private final long[] chunkOffset;
+    private final int[] chunkLength;
+
+    private IterationFile(FileChannel channel, Viewport viewport, int maxIter, Fractal fractal, int flags,
+                          ByteBuffer table, int chunks) throws IOException {
+        this.channel = channel;
+        this.viewport = viewport;
+        this.maxIter = maxIter;
+        this.fractal = fractal;
+        this.fractions = (flags & FRACTIONS) != 0;
+        this.compressed = (flags & COMPRESSED) != 0;
+        this.chunkRows = new int[chunks];
+        this.chunkY = new int[chunks];
+        this.chunkOffset = new long[chunks];
+        this.chunkLength = new int[chunks];
+        int y = 0;
+        for (int i = 0; i < chunks; i++) {
+            chunkY[i] = table.getInt();
+            chunkRows[i] = table.getInt();
+            chunkOffset[i] = table.getLong();
+            chunkLength[i] = table.getInt();
+            if (chunkY[i] != y || chunkRows[i] <= 0) {
+                throw new IOException("Corrupt chunk table at chunk " + i);
+            }
+            y += chunkRows[i];
+        }
+        if (y != viewport.getHeight()) {
+            throw new IOException("Iteration file incomplete: " + y + " of " + viewport.getHeight() + " rows");
+        }
+    }
+
+    /** Opens {@code file}, reading only its header and chunk table; the counts are mapped as they are read. */
+    public static IterationFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(channel.size(), MAX_HEADER_BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.remaining() < PREFIX_BYTES || header.getInt() != MAGIC) {
+                throw new IOException("Not an iteration file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported iteration file version " + version + ": " + file);
+            }
+            int flags = header.getInt();
+            long tableOffset = header.getLong();
+            int chunks = header.getInt();
+            int width = header.getInt();
+            int height = header.getInt();
+            int maxIter = header.getInt();
+            double spanX = header.getDouble();
+            double spanY = header.getDouble();
+            double zoomFactor = header.getDouble();
+            Viewport viewport = new Viewport(new BigDecimal(getString(header)), new BigDecimal(getString(header)),
+                    spanX, spanY, zoomFactor, width, height);
+            Fractal fractal;
+            try {
+                fractal = Fractal.parse(getString(header));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Iteration file of an unavailable formula: " + e.getMessage(), e);
+            }
+            if (chunks < 0 || tableOffset < 0 || tableOffset + (long) chunks * TABLE_ENTRY_BYTES > channel.size()) {
+                throw new IOException("Iteration file incomplete: " + file);
+            }
+            ByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, tableOffset,
+                    (long) chunks * TABLE_ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            return new IterationFile(channel, viewport, maxIter, fractal, flags, table, chunks);
+        } catch (BufferUnderflowException e) {
+            channel.close();
+            throw new IOException("Iteration file header truncated: " + file, e);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Writes a whole frame to {@code file}. */
+    public static void write(Path file, Viewport viewport, Fractal fractal, IterationBuffer frame,
+                             boolean compress) throws IOException {
+        try (Writer writer = new Writer(file, viewport, frame.getMaxIter(), fractal, frame.hasFractions(), compress)) {
+            writer.write(frame);
+        }
+    }
+
+    public Viewport getViewport() { return viewport; }
+    public int getWidth() { return viewport.getWidth(); }
+    public int getHeight() { return viewport.getHeight(); }
+    public int getMaxIter() { return maxIter; }
+    public Fractal getFractal() { return fractal; }
+    public boolean hasFractions() { return fractions; }
+    public boolean isCompressed() { return compressed; }
+    public int getChunkCount() { return chunkRows.length; }
+
+    /** The rows of chunk {@code chunk} as a full-width region of the frame. */
+    public IterationBuffer readChunk(int chunk) throws IOException {
+        IterationBuffer strip = IterationBuffer.region(0, chunkY[chunk], getWidth(), chunkRows[chunk], maxIter, fractions);
+        decode(chunk, strip.getIterations(), strip.getFractions(), 0);
+        return strip;
+    }
+
+    /** The whole frame. */
+    public IterationBuffer read() throws IOException {
+        IterationBuffer frame = IterationBuffer.forViewport(viewport, maxIter, fractions);
+        for (int chunk = 0; chunk < chunkRows.length; chunk++) {
+            decode(chunk, frame.getIterations(), frame.getFractions(), chunkY[chunk] * getWidth());
+        }
+        return frame;
+    }
+
+    /**
+     * The counts of every {@code step}-th pixel of every {@code step}-th row, without fractions,
+     * e.g. to build a lookup table for the whole frame without holding all of it. Only the sampled
+     * rows are read: a stored chunk is read in place, and a deflated one is inflated only up to its
+     * last sampled row.
+     */
+    public IterationBuffer sample(int step) throws IOException {
+        int width = getWidth();
+        IterationBuffer preview = new IterationBuffer((width + step - 1) / step, (getHeight() + step - 1) / step,
+                maxIter, false);
+        int[] counts = preview.getIterations();
+        for (int chunk = 0; chunk < chunkRows.length; chunk++) {
+            int first = (chunkY[chunk] + step - 1) / step * step - chunkY[chunk];
+            if (first >= chunkRows[chunk]) {
+                continue;
+            }
+            int last = first + (chunkRows[chunk] - 1 - first) / step * step;
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, chunkOffset[chunk], chunkLength[chunk]);
+            if (compressed) {
+                data = inflate(data, 4 * (last + 1) * width, chunk);
+            }
+            IntBuffer stored = data.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            for (int row = first; row <= last; row += step) {
+                int i = preview.index(0, (chunkY[chunk] + row) / step);
+                int start = row * width;
+                if (compressed) {
+                    // Counts are deltas along the row, so every pixel up to the last sampled one is summed.
+                    int count = 0;
+                    for (int x = 0; x <= (width - 1) / step * step; x++) {
+                        count += stored.get(start + x);
+                        if (x % step == 0) {
+                            counts[i++] = count;
+                        }
+                    }
+                } else {
+                    for (int x = 0; x < width; x += step) {
+                        counts[i++] = stored.get(start + x);
+                    }
+                }
+            }
+        }
+        return preview;
+    }
+
+    private void decode(int chunk, int[] iterations, float[] fractionsOut, int offset) throws IOException {
+        int pixels = chunkRows[chunk] * getWidth();
+        ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, chunkOffset[chunk], chunkLength[chunk]);
+        if (compressed) {
+            data = inflate(data, chunkBytes(pixels, fractions), chunk);
+        }
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        data.asIntBuffer().get(iterations, offset, pixels);
+        if (compressed) {
+            undelta(iterations, offset, chunkRows[chunk], getWidth());
+        }
+        if (fractions) {
+            data.slice(4 * pixels, 4 * pixels).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer()
+                    .get(fractionsOut, offset, pixels);
+        }
+    }
+
+    private static ByteBuffer inflate(ByteBuffer stored, int length, int chunk) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(length);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            while (data.hasRemaining() && !inflater.finished()) {
+                if (inflater.inflate(data) == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt chunk " + chunk, e);
+        } finally {
+            inflater.end();
+        }
+        if (data.hasRemaining()) {
+            throw new IOException("Truncated chunk " + chunk);
+        }
+        return data.flip();
+    }
+
+    /** Turns differences along each row back into counts. */
+    private static void undelta(int[] iterations, int offset, int rows, int width) {
+        for (int row = 0; row < rows; row++) {
+            int start = offset + row * width;
+            for (int i = start + 1; i < start + width; i++) {
+                iterations[i] += iterations[i - 1];
+            }
+        }
+    }
+
+    private static int chunkBytes(int pixels, boolean fractions) {
+        return (fractions ? 8 : 4) * pixels;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Writes a frame top to bottom, a strip of full-width rows at a time, so a render larger than
+     * the heap can be saved as it is computed. Each strip is split into chunks of about
+     * {@link #CHUNK_PIXELS}; {@link #close()} writes the chunk table and fails if rows are missing.
+     */
+    public static final class Writer implements AutoCloseable {
+        private final FileChannel channel;
+        private final int width;
+        private final int height;
+        private final int maxIter;
+        private final boolean fractions;
+        private final boolean compress;
+        private final int rowsPerChunk;
+        private final int flags;
+        private ByteBuffer table = ByteBuffer.allocate(16 * TABLE_ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private int chunks;
+        private int rowsWritten;
+        private long position;
+
+        public Writer(Path file, Viewport viewport, int maxIter, Fractal fractal, boolean fractions,
+                      boolean compress) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.width = viewport.getWidth();
+            this.height = viewport.getHeight();
+            this.maxIter = maxIter;
+            this.fractions = fractions;
+            this.compress = compress;
+            this.rowsPerChunk = Math.max(1, CHUNK_PIXELS / width);
+            this.flags = (fractions ? FRACTIONS : 0) | (compress ? COMPRESSED : 0);
+
+            ByteBuffer header = ByteBuffer.allocate(MAX_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(flags).putLong(0).putInt(0);
+            header.putInt(width).putInt(height).putInt(maxIter);
+            header.putDouble(viewport.getMaxX() - viewport.getMinX());
+            header.putDouble(viewport.getMaxY() - viewport.getMinY());
+            header.putDouble(viewport.getZoomFactor());
+            putString(header, viewport.getPreciseMinX().toString());
+            putString(header, viewport.getPreciseMinY().toString());
+            putString(header, fractal.toString());
+            writeFully(header.flip(), 0);
+            this.position = header.limit();
+        }
+
+        /** Appends {@code strip}, a region of whole rows that starts where the previous one ended. */
+        public void write(IterationBuffer strip) throws IOException {
+            if (strip.getWidth() != width || strip.getOriginX() != 0 || strip.getOriginY() != rowsWritten) {
+                throw new IllegalArgumentException("Strip at row " + strip.getOriginY() + " of width "
+                        + strip.getWidth() + ", expected full rows from row " + rowsWritten);
+            }
+            if (strip.getMaxIter() != maxIter || (fractions && !strip.hasFractions())) {
+                throw new IllegalArgumentException("Strip does not match the file's iteration limit or fractions");
+            }
+            for (int row = 0; row < strip.getHeight(); row += rowsPerChunk) {
+                int rows = Math.min(rowsPerChunk, strip.getHeight() - row);
+                int length = compress ? writeDeflated(strip, row * width, rows) : writeMapped(strip, row * width, rows);
+                if (!table.hasRemaining()) {
+                    table = ByteBuffer.allocate(2 * table.capacity()).order(ByteOrder.LITTLE_ENDIAN).put(table.flip());
+                }
+                table.putInt(rowsWritten).putInt(rows).putLong(position).putInt(length);
+                position += length;
+                rowsWritten += rows;
+                chunks++;
+            }
+        }
+
+        private int writeMapped(IterationBuffer strip, int offset, int rows) throws IOException {
+            int pixels = rows * width;
+            int length = chunkBytes(pixels, fractions);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_WRITE, position, length);
+            window.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(strip.getIterations(), offset, pixels);
+            if (fractions) {
+                window.slice(4 * pixels, 4 * pixels).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer()
+                        .put(strip.getFractions(), offset, pixels);
+            }
+            return length;
+        }
+
+        private int writeDeflated(IterationBuffer strip, int offset, int rows) throws IOException {
+            int pixels = rows * width;
+            ByteBuffer raw = ByteBuffer.allocate(chunkBytes(pixels, fractions)).order(ByteOrder.LITTLE_ENDIAN);
+            IntBuffer counts = raw.asIntBuffer();
+            int[] iterations = strip.getIterations();
+            for (int row = 0; row < rows; row++) {
+                int start = offset + row * width;
+                counts.put(iterations[start]);
+                for (int i = start + 1; i < start + width; i++) {
+                    counts.put(iterations[i] - iterations[i - 1]);
+                }
+            }
+            if (fractions) {
+                raw.slice(4 * pixels, 4 * pixels).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer()
+                        .put(strip.getFractions(), offset, pixels);
+            }
+
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            long end = position;
+            try {
+                deflater.setInput(raw);
+                deflater.finish();
+                ByteBuffer out = ByteBuffer.allocate(Math.max(4096, raw.capacity() / 4));
+                while (!deflater.finished()) {
+                    deflater.deflate(out);
+                    end += writeFully(out.flip(), end);
+                    out.clear();
+                }
+            } finally {
+                deflater.end();
+            }
+            return (int) (end - position);
+        }
+
+        private int writeFully(ByteBuffer buffer, long at) throws IOException {
+            int length = buffer.remaining();
+            while (buffer.hasRemaining()) {
+                at += channel.write(buffer, at);
+            }
+            return length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                writeFully(table.flip(), position);
+                ByteBuffer prefix = ByteBuffer.allocate(PREFIX_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                prefix.putInt(MAGIC).putInt(VERSION).putInt(flags).putLong(position).putInt(chunks);
+                writeFully(prefix.flip(), 0);
+            } finally {
+                channel.close();
+            }
+            if (rowsWritten != height) {
+                throw new IOException("Iteration file incomplete: " + rowsWritten + " of " + height + " rows written");
+            }
+        }
+    }
+}
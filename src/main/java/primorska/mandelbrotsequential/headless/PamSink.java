@@ -0,0 +1,53 @@
+package primorska.mandelbrotsequential.headless;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes uncompressed RGBA as a PAM file (a short text header followed by raw pixels). Each
+ * strip is copied into a memory-mapped window of the file, so nothing is encoded and the OS
+ * pages the data out on its own schedule.
+ */
+public final class PamSink implements ImageSink {
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final long dataStart;
+    private int rowsWritten;
+
+    public PamSink(Path file, int width, int height) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.width = width;
+        this.height = height;
+        byte[] header = ("P7\nWIDTH " + width + "\nHEIGHT " + height
+                + "\nDEPTH 4\nMAXVAL 255\nTUPLTYPE RGB_ALPHA\nENDHDR\n").getBytes(StandardCharsets.US_ASCII);
+        channel.write(ByteBuffer.wrap(header));
+        this.dataStart = header.length;
+    }
+
+    @Override
+    public void writeRows(int[] argb, int rows) throws IOException {
+        int pixels = rows * width;
+        for (int i = 0; i < pixels; i++) {
+            argb[i] = argb[i] << 8 | argb[i] >>> 24;
+        }
+        long position = dataStart + 4L * rowsWritten * width;
+        IntBuffer window = channel.map(FileChannel.MapMode.READ_WRITE, position, 4L * pixels).asIntBuffer();
+        window.put(argb, 0, pixels);
+        rowsWritten += rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        if (rowsWritten != height) {
+            throw new IOException("Image incomplete: " + rowsWritten + " of " + height + " rows written");
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package primorska.mandelbrotsequential.headless;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes an 8-bit RGB PNG incrementally. Rows are Sub-filtered and fed through one deflate
+ * stream that is cut into IDAT chunks as its output fills up, so memory use depends on the
+ * image width only.
+ */
+public final class PngSink implements ImageSink {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final byte FILTER_SUB = 1;
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+    /** Encoding runs on one thread and has to keep up with compute on all cores. */
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final CRC32 crc = new CRC32();
+    private final byte[] row;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private int chunkLength;
+    private int rowsWritten;
+
+    public PngSink(Path file, int width, int height) throws IOException {
+        this(Files.newOutputStream(file), width, height);
+    }
+
+    /** A sink writing to {@code stream}, e.g. to encode a small image in memory; closing the sink closes it. */
+    public PngSink(OutputStream stream, int width, int height) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(stream, CHUNK_SIZE));
+        this.width = width;
+        this.height = height;
+        this.row = new byte[1 + 3 * width];
+
+        out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 8;
+        header[9] = 2;
+        writeChunk("IHDR", header, header.length);
+    }
+
+    @Override
+    public void writeRows(int[] argb, int rows) throws IOException {
+        for (int y = 0; y < rows; y++) {
+            int base = y * width;
+            row[0] = FILTER_SUB;
+            int previous = 0;
+            for (int x = 0; x < width; x++) {
+                int rgb = argb[base + x];
+                int i = 1 + 3 * x;
+                row[i] = (byte) ((rgb >> 16) - (previous >> 16));
+                row[i + 1] = (byte) ((rgb >> 8) - (previous >> 8));
+                row[i + 2] = (byte) (rgb - previous);
+                previous = rgb;
+            }
+            deflater.setInput(row);
+            while (!deflater.needsInput()) {
+                drain();
+            }
+        }
+        rowsWritten += rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            deflater.finish();
+            while (!deflater.finished()) {
+                drain();
+            }
+            if (chunkLength > 0) {
+                writeChunk("IDAT", chunk, chunkLength);
+            }
+            writeChunk("IEND", chunk, 0);
+        } finally {
+            deflater.end();
+            out.close();
+        }
+        if (rowsWritten != height) {
+            throw new IOException("Image incomplete: " + rowsWritten + " of " + height + " rows written");
+        }
+    }
+
+    private void drain() throws IOException {
+        chunkLength += deflater.deflate(chunk, chunkLength, chunk.length - chunkLength);
+        if (chunkLength == chunk.length) {
+            writeChunk("IDAT", chunk, chunkLength);
+            chunkLength = 0;
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        crc.reset();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,139 @@
+package primorska.mandelbrotsequential.headless;
+
+import primorska.mandelbrotsequential.engine.Colorizer;
+import primorska.mandelbrotsequential.engine.EdgeSupersampler;
+import primorska.mandelbrotsequential.engine.IterationBuffer;
+import primorska.mandelbrotsequential.engine.Palette;
+import primorska.mandelbrotsequential.engine.RenderSession;
+import primorska.mandelbrotsequential.engine.Renderer;
+import primorska.mandelbrotsequential.engine.Supersamples;
+import primorska.mandelbrotsequential.engine.Viewport;
+import primorska.mandelbrotsequential.metrics.Metrics;
+import primorska.mandelbrotsequential.metrics.Phase;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Renders an image of any size in horizontal strips and streams them to an {@link ImageSink}.
+ * While one strip is colored and encoded on a background thread the next one is computed, and
+ * only two strips are alive at a time, so heap use depends on the strip size, not the image.
+ */
+public class StripRenderer {
+    /** Pixels per strip when no strip height is given. */
+    public static final int DEFAULT_STRIP_PIXELS = 1 << 20;
+    /** Longest side of the preview used to build whole-image lookup tables. */
+    private static final int PREVIEW_SIZE = 256;
+
+    private final Renderer renderer;
+    private final int stripRows;
+    private final EdgeSupersampler supersampler;
+
+    public StripRenderer(Renderer renderer, int stripRows) {
+        this(renderer, stripRows, null);
+    }
+
+    /** A strip renderer that anti-aliases the edges of every strip with {@code supersampler}, if not null. */
+    public StripRenderer(Renderer renderer, int stripRows, EdgeSupersampler supersampler) {
+        if (stripRows <= 0) {
+            throw new IllegalArgumentException("Strip height must be positive: " + stripRows);
+        }
+        this.renderer = renderer;
+        this.stripRows = stripRows;
+        this.supersampler = supersampler;
+    }
+
+    public static int defaultStripRows(int width) {
+        return Math.max(1, DEFAULT_STRIP_PIXELS / width);
+    }
+
+    /**
+     * A lookup table for the whole image, built from a small preview of the same viewport.
+     * Palettes such as histogram equalization depend on the distribution of counts, which a
+     * single strip does not represent.
+     */
+    public static int[] lookupTable(Renderer previewRenderer, Viewport viewport, int maxIter, Palette palette,
+                                    int offset) {
+        double scale = Math.min(1.0, (double) PREVIEW_SIZE / Math.max(viewport.getWidth(), viewport.getHeight()));
+        Viewport preview = viewport.resized(Math.max(1, (int) Math.round(viewport.getWidth() * scale)),
+                Math.max(1, (int) Math.round(viewport.getHeight() * scale)));
+        IterationBuffer iterations = IterationBuffer.forViewport(preview, maxIter);
+        previewRenderer.render(preview, iterations);
+        return palette.lookupTable(iterations, offset);
+    }
+
+    /**
+     * Renders {@code viewport} top to bottom into {@code sink}. {@code inspector}, if not null,
+     * sees every strip's iterations on the rendering thread before it is colored.
+     */
+    public void render(Viewport viewport, int maxIter, int[] lut, boolean smooth, ImageSink sink,
+                       Consumer<IterationBuffer> inspector) throws IOException, InterruptedException {
+        render(viewport, maxIter, lut, smooth, smooth, sink, inspector);
+    }
+
+    /**
+     * Same as {@link #render(Viewport, int, int[], boolean, ImageSink, Consumer)}, keeping the
+     * fractional counts of the strips if {@code fractions}, e.g. to save them, even when the
+     * colors are not smooth.
+     */
+    public void render(Viewport viewport, int maxIter, int[] lut, boolean smooth, boolean fractions, ImageSink sink,
+                       Consumer<IterationBuffer> inspector) throws IOException, InterruptedException {
+        int width = viewport.getWidth();
+        int height = viewport.getHeight();
+        int[][] pixels = {new int[width * Math.min(stripRows, height)], new int[width * Math.min(stripRows, height)]};
+
+        ExecutorService encoder = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "mandelbrot-encode");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Future<?> encoding = null;
+            for (int y = 0, strip = 0; y < height; y += stripRows, strip++) {
+                int rows = Math.min(stripRows, height - y);
+                long start = System.nanoTime();
+                IterationBuffer iterations = IterationBuffer.region(0, y, width, rows, maxIter, fractions);
+                renderer.render(viewport, iterations);
+                Phase.COMPUTE.record(start, "strip", (long) width * rows);
+                Metrics.PIXELS.add((long) width * rows);
+                Metrics.ITERATIONS.add(iterations.totalIterations());
+                if (inspector != null) {
+                    inspector.accept(iterations);
+                }
+                Supersamples samples = supersampler == null ? null
+                        : supersampler.sample(viewport, iterations, new RenderSession());
+
+                if (encoding != null) {
+                    encoding.get();
+                }
+                int[] argb = pixels[strip % 2];
+                encoding = encoder.submit(() -> {
+                    long colorStart = System.nanoTime();
+                    Colorizer.colorize(iterations, lut, smooth, argb);
+                    if (samples != null) {
+                        samples.resolve(lut, smooth, argb);
+                    }
+                    long encodeStart = System.nanoTime();
+                    Phase.COLOR.record(colorStart, "strip", (long) width * rows);
+                    sink.writeRows(argb, rows);
+                    Phase.ENCODE.record(encodeStart, "strip", (long) width * rows);
+                    return null;
+                });
+            }
+            if (encoding != null) {
+                encoding.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Encoding failed", e.getCause());
+        } finally {
+            encoder.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package primorska.mandelbrotsequential.headless;
+
+import primorska.mandelbrotsequential.engine.Colorizer;
+import primorska.mandelbrotsequential.engine.IterationBuffer;
+import primorska.mandelbrotsequential.engine.Palette;
+import primorska.mandelbrotsequential.engine.Renderer;
+import primorska.mandelbrotsequential.engine.Viewport;
+import primorska.mandelbrotsequential.metrics.Metrics;
+import primorska.mandelbrotsequential.metrics.Phase;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders a zoom sequence through a list of keyframes to numbered image files. Zoom is
+ * interpolated geometrically and center and maxIter linearly, with frames spread so the zoom
+ * speed is constant. Several frames are rendered at once and encoded on separate threads.
+ * <p>
+ * With an oversample factor {@code s > 1}, frames are grouped so that each group spans at most
+ * a factor {@code s} of zoom. Only the widest frame of a group is rendered, at {@code s} times
+ * the output resolution, and every frame of the group is cropped and resampled from it, never
+ * magnifying the keyframe.
+ */
+public class ZoomAnimation {
+    /** Unzoomed width of the view, as in the GUI. */
+    public static final double BASE_RANGE = 4.0;
+
+    /** Creates a renderer for one frame; it may prepare its kernel for that viewport. */
+    public interface RendererFactory {
+        Renderer create(Viewport viewport, int maxIter);
+    }
+
+    public static final class Keyframe {
+        private final BigDecimal centerX;
+        private final BigDecimal centerY;
+        private final double zoom;
+        private final int maxIter;
+
+        public Keyframe(BigDecimal centerX, BigDecimal centerY, double zoom, int maxIter) {
+            if (zoom <= 0) {
+                throw new IllegalArgumentException("Zoom must be positive: " + zoom);
+            }
+            this.centerX = centerX;
+            this.centerY = centerY;
+            this.zoom = zoom;
+            this.maxIter = maxIter;
+        }
+
+        public BigDecimal getCenterX() { return centerX; }
+        public BigDecimal getCenterY() { return centerY; }
+        public double getZoom() { return zoom; }
+        public int getMaxIter() { return maxIter; }
+    }
+
+    private static final class Frame {
+        final int index;
+        final Viewport viewport;
+        final int maxIter;
+
+        Frame(int index, Viewport viewport, int maxIter) {
+            this.index = index;
+            this.viewport = viewport;
+            this.maxIter = maxIter;
+        }
+    }
+
+    private final List<Keyframe> keyframes;
+    private final int frameCount;
+    private final int width;
+    private final int height;
+
+    public ZoomAnimation(List<Keyframe> keyframes, int frameCount, int width, int height) {
+        if (keyframes.size() < 2) {
+            throw new IllegalArgumentException("An animation needs at least two keyframes");
+        }
+        if (frameCount < 2) {
+            throw new IllegalArgumentException("An animation needs at least two frames: " + frameCount);
+        }
+        this.keyframes = List.copyOf(keyframes);
+        this.frameCount = frameCount;
+        this.width = width;
+        this.height = height;
+    }
+
+    /** Reads keyframes as lines of {@code re im zoom maxIter}; blank lines and {@code #} comments are skipped. */
+    public static List<Keyframe> readKeyframes(Path file) throws IOException {
+        List<Keyframe> keyframes = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            if (parts.length != 4) {
+                throw new IOException("Expected 're im zoom maxIter' in " + file + ": " + line);
+            }
+            keyframes.add(new Keyframe(new BigDecimal(parts[0]), new BigDecimal(parts[1]),
+                    Double.parseDouble(parts[2]), Integer.parseInt(parts[3])));
+        }
+        return keyframes;
+    }
+
+    /**
+     * Renders every frame to {@code String.format(outputPattern, index)}.
+     *
+     * @param frameThreads frames rendered at once, and threads encoding them
+     * @param oversample   keyframe scale for interpolation, or 1 to render every frame in full
+     */
+    public void render(RendererFactory factory, Palette palette, String outputPattern, int frameThreads,
+                       double oversample) throws IOException, InterruptedException {
+        long startTime = System.nanoTime();
+        List<Frame> frames = new ArrayList<>();
+        for (int i = 0; i < frameCount; i++) {
+            frames.add(frame(i));
+        }
+        Path parent = Path.of(String.format(outputPattern, 0)).toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        ExecutorService renderPool = Executors.newFixedThreadPool(frameThreads, named("mandelbrot-frame-"));
+        ExecutorService encodePool = Executors.newFixedThreadPool(frameThreads, named("mandelbrot-encode-"));
+        Semaphore inFlight = new Semaphore(2 * frameThreads);
+        Queue<Future<?>> pending = new ConcurrentLinkedQueue<>();
+        AtomicInteger written = new AtomicInteger();
+        int rendered = 0;
+        try {
+            for (List<Frame> group : oversample > 1 ? group(frames, oversample) : singletons(frames)) {
+                inFlight.acquire();
+                rendered++;
+                pending.add(renderPool.submit(() -> {
+                    try {
+                        renderGroup(group, oversample, factory, palette, outputPattern, encodePool, pending, written);
+                    } finally {
+                        inFlight.release();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future; (future = pending.poll()) != null; ) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Animation failed", e.getCause());
+        } finally {
+            renderPool.shutdownNow();
+            encodePool.shutdownNow();
+        }
+        System.out.printf("Wrote %d frames (%d rendered) in %.2f s%n", written.get(), rendered,
+                (System.nanoTime() - startTime) / 1e9);
+    }
+
+    /**
+     * Renders the widest frame of {@code group}, oversampled if the group has more than one
+     * frame, and queues every frame of the group for encoding. Waits for those encodes, so
+     * the caller's in-flight limit bounds memory.
+     */
+    private void renderGroup(List<Frame> group, double oversample, RendererFactory factory, Palette palette,
+                             String outputPattern, ExecutorService encodePool, Queue<Future<?>> pending,
+                             AtomicInteger written) throws Exception {
+        Frame widest = widest(group);
+        double scale = group.size() > 1 ? oversample : 1.0;
+        Viewport key = widest.viewport.resized((int) Math.ceil(width * scale), (int) Math.ceil(height * scale));
+        int maxIter = group.stream().mapToInt(f -> f.maxIter).max().orElseThrow();
+
+        long start = System.nanoTime();
+        IterationBuffer iterations = IterationBuffer.forViewport(key, maxIter, palette.isSmooth());
+        try (Renderer renderer = factory.create(key, maxIter)) {
+            renderer.render(key, iterations);
+        }
+        Phase.COMPUTE.record(start, "animation", key.getPixelCount());
+        Metrics.PIXELS.add(key.getPixelCount());
+        Metrics.ITERATIONS.add(iterations.totalIterations());
+        start = System.nanoTime();
+        int[] keyPixels = new int[Math.toIntExact(key.getPixelCount())];
+        Colorizer.colorize(iterations, palette, 0, keyPixels);
+        Phase.COLOR.record(start, "animation", key.getPixelCount());
+
+        List<Future<?>> encodes = new ArrayList<>();
+        for (Frame frame : group) {
+            Future<?> encode = encodePool.submit(() -> {
+                long encodeStart = System.nanoTime();
+                int[] argb = group.size() == 1 ? keyPixels : crop(key, keyPixels, frame.viewport);
+                try (ImageSink sink = ImageSink.create(Path.of(String.format(outputPattern, frame.index)),
+                        width, height)) {
+                    sink.writeRows(argb, height);
+                }
+                Phase.ENCODE.record(encodeStart, "animation", (long) width * height);
+                written.incrementAndGet();
+                return null;
+            });
+            encodes.add(encode);
+            pending.add(encode);
+        }
+        for (Future<?> encode : encodes) {
+            encode.get();
+        }
+    }
+
+    private Frame frame(int index) {
+        double[] weights = new double[keyframes.size() - 1];
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = Math.max(Math.abs(Math.log(keyframes.get(i + 1).zoom / keyframes.get(i).zoom)), 1e-3);
+            total += weights[i];
+        }
+        double position = total * index / (frameCount - 1);
+        int segment = 0;
+        while (segment < weights.length - 1 && position > weights[segment]) {
+            position -= weights[segment];
+            segment++;
+        }
+        double t = Math.min(1.0, position / weights[segment]);
+        Keyframe from = keyframes.get(segment);
+        Keyframe to = keyframes.get(segment + 1);
+
+        double zoom = from.zoom * Math.pow(to.zoom / from.zoom, t);
+        BigDecimal fraction = new BigDecimal(t);
+        MathContext mc = new MathContext(Math.max(from.centerX.precision(), to.centerX.precision()) + 20);
+        BigDecimal centerX = from.centerX.add(to.centerX.subtract(from.centerX).multiply(fraction, mc), mc);
+        BigDecimal centerY = from.centerY.add(to.centerY.subtract(from.centerY).multiply(fraction, mc), mc);
+        int maxIter = (int) Math.round(from.maxIter + (to.maxIter - from.maxIter) * t);
+        return new Frame(index, Viewport.centered(centerX, centerY, BASE_RANGE / zoom, width, height), maxIter);
+    }
+
+    private static List<List<Frame>> singletons(List<Frame> frames) {
+        List<List<Frame>> groups = new ArrayList<>();
+        for (Frame frame : frames) {
+            groups.add(List.of(frame));
+        }
+        return groups;
+    }
+
+    /** Greedily groups consecutive frames that an oversampled render of the group's widest frame covers. */
+    private List<List<Frame>> group(List<Frame> frames, double oversample) {
+        List<List<Frame>> groups = new ArrayList<>();
+        List<Frame> current = new ArrayList<>();
+        for (Frame frame : frames) {
+            current.add(frame);
+            if (!covers(current, oversample)) {
+                current.remove(current.size() - 1);
+                groups.add(current);
+                current = new ArrayList<>(List.of(frame));
+            }
+        }
+        groups.add(current);
+        return groups;
+    }
+
+    private boolean covers(List<Frame> group, double oversample) {
+        Viewport key = widest(group).viewport.resized((int) Math.ceil(width * oversample),
+                (int) Math.ceil(height * oversample));
+        for (Frame frame : group) {
+            Viewport viewport = frame.viewport;
+            double scale = viewport.getPixelSpacingX() / key.getPixelSpacingX();
+            if (scale < 1.0 - 1e-9) {
+                return false;
+            }
+            double u0 = offset(viewport.getPreciseMinX(), key.getPreciseMinX(), key.getPixelSpacingX());
+            double v0 = offset(viewport.getPreciseMinY(), key.getPreciseMinY(), key.getPixelSpacingY());
+            double u1 = u0 + (viewport.getWidth() - 1) * scale;
+            double v1 = v0 + (viewport.getHeight() - 1) * viewport.getPixelSpacingY() / key.getPixelSpacingY();
+            if (u0 < -1e-6 || v0 < -1e-6 || u1 > key.getWidth() - 1 + 1e-6 || v1 > key.getHeight() - 1 + 1e-6) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Frame widest(List<Frame> group) {
+        Frame widest = group.get(0);
+        for (Frame frame : group) {
+            if (frame.viewport.getRangeX() > widest.viewport.getRangeX()) {
+                widest = frame;
+            }
+        }
+        return widest;
+    }
+
+    /** Where {@code frameMin} falls in the keyframe, in keyframe pixels. */
+    private static double offset(BigDecimal frameMin, BigDecimal keyMin, double keySpacing) {
+        return frameMin.subtract(keyMin).doubleValue() / keySpacing;
+    }
+
+    /** Bilinearly resamples the part of the keyframe that {@code viewport} shows. */
+    private static int[] crop(Viewport key, int[] keyPixels, Viewport viewport) {
+        int keyWidth = key.getWidth();
+        int keyHeight = key.getHeight();
+        double scaleX = viewport.getPixelSpacingX() / key.getPixelSpacingX();
+        double scaleY = viewport.getPixelSpacingY() / key.getPixelSpacingY();
+        double u0 = offset(viewport.getPreciseMinX(), key.getPreciseMinX(), key.getPixelSpacingX());
+        double v0 = offset(viewport.getPreciseMinY(), key.getPreciseMinY(), key.getPixelSpacingY());
+
+        int[] argb = new int[Math.toIntExact(viewport.getPixelCount())];
+        for (int y = 0; y < viewport.getHeight(); y++) {
+            double v = Math.clamp(v0 + y * scaleY, 0, keyHeight - 1);
+            int top = Math.min((int) v, Math.max(keyHeight - 2, 0));
+            double fy = keyHeight > 1 ? v - top : 0;
+            int bottom = Math.min(top + 1, keyHeight - 1);
+            for (int x = 0; x < viewport.getWidth(); x++) {
+                double u = Math.clamp(u0 + x * scaleX, 0, keyWidth - 1);
+                int left = Math.min((int) u, Math.max(keyWidth - 2, 0));
+                double fx = keyWidth > 1 ? u - left : 0;
+                int right = Math.min(left + 1, keyWidth - 1);
+                argb[y * viewport.getWidth() + x] = bilinear(
+                        keyPixels[top * keyWidth + left], keyPixels[top * keyWidth + right],
+                        keyPixels[bottom * keyWidth + left], keyPixels[bottom * keyWidth + right], fx, fy);
+            }
+        }
+        return argb;
+    }
+
+    private static int bilinear(int a, int b, int c, int d, double fx, double fy) {
+        int result = 0xFF000000;
+        for (int shift = 0; shift <= 16; shift += 8) {
+            double top = ((a >> shift) & 0xFF) * (1 - fx) + ((b >> shift) & 0xFF) * fx;
+            double bottom = ((c >> shift) & 0xFF) * (1 - fx) + ((d >> shift) & 0xFF) * fx;
+            result |= (int) Math.round(top * (1 - fy) + bottom * fy) << shift;
+        }
+        return result;
+    }
+
+    private static ThreadFactory named(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
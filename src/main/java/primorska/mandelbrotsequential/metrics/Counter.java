@@ -0,0 +1,21 @@
+package primorska.mandelbrotsequential.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** A running total that many threads can add to without contending on one cache line. */
+public final class Counter {
+    private final LongAdder total = new LongAdder();
+
+    Counter() {
+    }
+
+    public void increment() {
+        total.increment();
+    }
+
+    public void add(long amount) {
+        total.add(amount);
+    }
+
+    public long get() { return total.sum(); }
+}
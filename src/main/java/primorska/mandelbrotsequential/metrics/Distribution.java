@@ -0,0 +1,46 @@
+package primorska.mandelbrotsequential.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count, total, maximum and most recent value of a stream of samples, such as durations in
+ * nanoseconds or sizes in bytes. Recording is lock-free and allocates nothing.
+ */
+public final class Distribution {
+    private final boolean nanos;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+    private volatile long last;
+
+    Distribution(boolean nanos) {
+        this.nanos = nanos;
+    }
+
+    public void record(long value) {
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+        last = value;
+    }
+
+    /** Records the time elapsed since {@code startNanos}, a {@link System#nanoTime()} reading. */
+    public long recordSince(long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        record(elapsed);
+        return elapsed;
+    }
+
+    /** Whether samples are durations in nanoseconds. */
+    public boolean isTime() { return nanos; }
+    public long getCount() { return count.sum(); }
+    public long getTotal() { return total.sum(); }
+    public long getMax() { return max.get(); }
+    public long getLast() { return last; }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+}
@@ -0,0 +1,85 @@
+package primorska.mandelbrotsequential.metrics;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide registry of render metrics. Hot paths look a metric up once, keep it in a
+ * field and update it directly; {@link #dump} prints everything, sorted by name.
+ * <p>
+ * The same measurements are also emitted as JFR events ({@link PhaseEvent}, {@link TileEvent},
+ * {@link WorkerResultEvent}) while a recording is running, e.g. with
+ * {@code -XX:StartFlightRecording=filename=render.jfr}.
+ */
+public final class Metrics {
+    private static final ConcurrentMap<String, Counter> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final ConcurrentMap<String, Distribution> DISTRIBUTIONS = new ConcurrentSkipListMap<>();
+    private static final ConcurrentMap<String, LongSupplier> GAUGES = new ConcurrentSkipListMap<>();
+
+    /** Pixels rendered, including any a frame reused from the previous one. */
+    public static final Counter PIXELS = counter("render.pixels");
+    /** Escape-time iterations of those pixels. */
+    public static final Counter ITERATIONS = counter("render.iterations");
+    /** Time to compute one scheduler tile. */
+    public static final Distribution TILE = timer("render.tile");
+    /** Time to compute one row of a progressive pass. */
+    public static final Distribution ROW = timer("render.row");
+
+    private Metrics() {
+    }
+
+    public static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, n -> new Counter());
+    }
+
+    /** A distribution of durations in nanoseconds. */
+    public static Distribution timer(String name) {
+        return DISTRIBUTIONS.computeIfAbsent(name, n -> new Distribution(true));
+    }
+
+    /** A distribution of plain values, such as message sizes in bytes. */
+    public static Distribution distribution(String name) {
+        return DISTRIBUTIONS.computeIfAbsent(name, n -> new Distribution(false));
+    }
+
+    /** Registers a value read when metrics are dumped; replaces any gauge of the same name. */
+    public static void gauge(String name, LongSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    public static long gaugeValue(String name) {
+        LongSupplier gauge = GAUGES.get(name);
+        return gauge == null ? 0 : gauge.getAsLong();
+    }
+
+    public static void dump(PrintStream out) {
+        out.println("--- metrics ---");
+        for (Map.Entry<String, Counter> entry : COUNTERS.entrySet()) {
+            out.printf("%-40s %,d%n", entry.getKey(), entry.getValue().get());
+        }
+        for (Map.Entry<String, Distribution> entry : DISTRIBUTIONS.entrySet()) {
+            Distribution d = entry.getValue();
+            if (d.getCount() == 0) {
+                continue;
+            }
+            if (d.isTime()) {
+                out.printf("%-40s count=%,d mean=%.3f ms max=%.3f ms total=%.1f ms%n", entry.getKey(),
+                        d.getCount(), d.getMean() / 1e6, d.getMax() / 1e6, d.getTotal() / 1e6);
+            } else {
+                out.printf("%-40s count=%,d mean=%.1f max=%,d total=%,d%n", entry.getKey(),
+                        d.getCount(), d.getMean(), d.getMax(), d.getTotal());
+            }
+        }
+        for (Map.Entry<String, LongSupplier> entry : GAUGES.entrySet()) {
+            out.printf("%-40s %,d%n", entry.getKey(), entry.getValue().getAsLong());
+        }
+        long computeNanos = Phase.COMPUTE.getTimer().getTotal();
+        if (computeNanos > 0) {
+            out.printf("%-40s %.2f Mpixels/s, %.2f Giterations/s%n", "render.throughput",
+                    PIXELS.get() * 1e3 / computeNanos, (double) ITERATIONS.get() / computeNanos);
+        }
+    }
+}
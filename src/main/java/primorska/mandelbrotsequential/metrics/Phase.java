@@ -0,0 +1,37 @@
+package primorska.mandelbrotsequential.metrics;
+
+/** Stages a frame goes through, each timed separately. */
+public enum Phase {
+    /** Escape-time iterations, local or on the workers. */
+    COMPUTE,
+    /** Extra samples for anti-aliased edge pixels. */
+    SUPERSAMPLE,
+    /** Mapping iteration counts to colors. */
+    COLOR,
+    /** Handing a colored frame to the screen. */
+    PRESENT,
+    /** Compressing and writing a strip or frame to disk. */
+    ENCODE;
+
+    private final String label = name().toLowerCase();
+    private final Distribution timer = Metrics.timer("phase." + label);
+
+    public Distribution getTimer() { return timer; }
+
+    /**
+     * Records the time since {@code startNanos} for a phase that covered {@code pixels} pixels
+     * of a {@code mode} frame; returns the elapsed nanoseconds.
+     */
+    public long record(long startNanos, String mode, long pixels) {
+        long elapsed = timer.recordSince(startNanos);
+        PhaseEvent event = new PhaseEvent();
+        if (event.shouldCommit()) {
+            event.phase = label;
+            event.mode = mode;
+            event.pixels = pixels;
+            event.elapsed = elapsed;
+            event.commit();
+        }
+        return elapsed;
+    }
+}
@@ -0,0 +1,28 @@
+package primorska.mandelbrotsequential.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** One {@link Phase} of a frame or strip. */
+@Name("primorska.mandelbrot.Phase")
+@Label("Render Phase")
+@Category("Mandelbrot")
+@StackTrace(false)
+public final class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Mode")
+    String mode;
+
+    @Label("Pixels")
+    long pixels;
+
+    @Label("Elapsed")
+    @Timespan
+    long elapsed;
+}
@@ -0,0 +1,45 @@
+package primorska.mandelbrotsequential.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** One tile computed by a scheduler thread; the thread is recorded by JFR itself. */
+@Name("primorska.mandelbrot.Tile")
+@Label("Tile")
+@Category("Mandelbrot")
+@StackTrace(false)
+public final class TileEvent extends Event {
+    @Label("X")
+    int x;
+
+    @Label("Y")
+    int y;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Iterations")
+    long iterations;
+
+    @Label("Elapsed")
+    @Timespan
+    long elapsed;
+
+    /** Fills in the event and commits it; call only if {@link #shouldCommit()}. */
+    public void commit(int x0, int y0, int x1, int y1, long iterations, long elapsed) {
+        this.x = x0;
+        this.y = y0;
+        this.width = x1 - x0;
+        this.height = y1 - y0;
+        this.iterations = iterations;
+        this.elapsed = elapsed;
+        commit();
+    }
+}
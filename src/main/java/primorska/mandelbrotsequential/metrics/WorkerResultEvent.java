@@ -0,0 +1,47 @@
+package primorska.mandelbrotsequential.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** A tile result received from a worker. */
+@Name("primorska.mandelbrot.WorkerResult")
+@Label("Worker Result")
+@Category("Mandelbrot")
+@StackTrace(false)
+public final class WorkerResultEvent extends Event {
+    @Label("Worker")
+    String worker;
+
+    @Label("X")
+    int x;
+
+    @Label("Y")
+    int y;
+
+    @Label("Bytes")
+    @DataAmount
+    int bytes;
+
+    @Label("Round Trip")
+    @Timespan
+    long roundTrip;
+
+    @Label("Queued Tiles")
+    int queued;
+
+    /** Fills in the event and commits it; call only if {@link #shouldCommit()}. */
+    public void commit(String worker, int x, int y, int bytes, long roundTrip, int queued) {
+        this.worker = worker;
+        this.x = x;
+        this.y = y;
+        this.bytes = bytes;
+        this.roundTrip = roundTrip;
+        this.queued = queued;
+        commit();
+    }
+}
@@ -0,0 +1,116 @@
+package primorska.mandelbrotsequential.server;
+
+import primorska.mandelbrotsequential.metrics.Counter;
+import primorska.mandelbrotsequential.metrics.Metrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encoded tiles by key, least recently used first out once their total size passes a byte
+ * limit. With a directory, every tile is also written there and a miss in memory is looked up
+ * on disk before the tile has to be rendered; the disk tier is not bounded.
+ * <p>
+ * Keys are paths relative to the directory, e.g. {@code mandelbrot/smooth/auto/3/2/5.png}.
+ */
+public final class TileCache {
+    /** Rough heap cost of an entry besides its bytes: the key, the map node and the array header. */
+    private static final int ENTRY_OVERHEAD = 160;
+    private static final Counter EVICTIONS = Metrics.counter("tiles.cache.evictions");
+    private static final Counter DISK_ERRORS = Metrics.counter("tiles.cache.disk.errors");
+
+    private final long maxBytes;
+    private final Path directory;
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private long bytes;
+    private long evictions;
+
+    /** A cache of at most {@code maxBytes} in memory, backed by {@code directory} unless it is null. */
+    public TileCache(long maxBytes, Path directory) throws IOException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        Metrics.gauge("tiles.cache.bytes", this::getBytes);
+        Metrics.gauge("tiles.cache.entries", this::size);
+    }
+
+    /** The tile in memory, or null. */
+    public synchronized byte[] get(String key) {
+        return entries.get(key);
+    }
+
+    /** The tile on disk, kept in memory from now on, or null if there is none or no disk tier. */
+    public byte[] load(String key) {
+        if (directory == null) {
+            return null;
+        }
+        byte[] tile;
+        try {
+            tile = Files.readAllBytes(directory.resolve(key));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            DISK_ERRORS.increment();
+            return null;
+        }
+        putInMemory(key, tile);
+        return tile;
+    }
+
+    /**
+     * Keeps {@code tile} in memory and, with a disk tier, writes it there. The file is written
+     * under a temporary name and moved into place, so a concurrent {@link #load} never reads half of it.
+     */
+    public void put(String key, byte[] tile) {
+        putInMemory(key, tile);
+        if (directory == null) {
+            return;
+        }
+        try {
+            Path file = directory.resolve(key);
+            Files.createDirectories(file.getParent());
+            Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            Files.write(temporary, tile);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            DISK_ERRORS.increment();
+        }
+    }
+
+    private synchronized void putInMemory(String key, byte[] tile) {
+        byte[] previous = entries.put(key, tile);
+        if (previous != null) {
+            bytes -= cost(key, previous);
+        }
+        bytes += cost(key, tile);
+        Iterator<Map.Entry<String, byte[]>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, byte[]> entry = eldest.next();
+            bytes -= cost(entry.getKey(), entry.getValue());
+            eldest.remove();
+            evictions++;
+            EVICTIONS.increment();
+        }
+    }
+
+    private static long cost(String key, byte[] tile) {
+        return tile.length + 2L * key.length() + ENTRY_OVERHEAD;
+    }
+
+    public synchronized long getBytes() { return bytes; }
+    public synchronized int size() { return entries.size(); }
+    public synchronized long getEvictions() { return evictions; }
+    public long getMaxBytes() { return maxBytes; }
+    public Path getDirectory() { return directory; }
+}
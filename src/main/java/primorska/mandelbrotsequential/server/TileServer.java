@@ -0,0 +1,491 @@
+package primorska.mandelbrotsequential.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import primorska.mandelbrotsequential.engine.Colorizer;
+import primorska.mandelbrotsequential.engine.IterationBuffer;
+import primorska.mandelbrotsequential.engine.IterationBudget;
+import primorska.mandelbrotsequential.engine.Kernel;
+import primorska.mandelbrotsequential.engine.Kernels;
+import primorska.mandelbrotsequential.engine.Palette;
+import primorska.mandelbrotsequential.engine.Palettes;
+import primorska.mandelbrotsequential.engine.Precision;
+import primorska.mandelbrotsequential.engine.Viewport;
+import primorska.mandelbrotsequential.formula.Fractal;
+import primorska.mandelbrotsequential.headless.PngSink;
+import primorska.mandelbrotsequential.metrics.Counter;
+import primorska.mandelbrotsequential.metrics.Distribution;
+import primorska.mandelbrotsequential.metrics.Metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves the fractal as a slippy map: {@code GET /tiles/z/x/y.png} returns a 256x256 PNG tile,
+ * where level {@code z} splits the formula's home view into {@code 2^z x 2^z} tiles. The query
+ * may choose {@code formula=julia:-0.8,0.156}, {@code palette=smooth} and {@code maxIter=N};
+ * by default the limit grows with the level, the same for every tile of a level.
+ * <p>
+ * Tiles come from a {@link TileCache}; a miss is rendered on a shared pool with one tile per
+ * thread. Requests for a tile that is already being rendered wait for that render instead of
+ * starting another, and the neighbors of a tile that was not in memory are rendered ahead at a
+ * lower priority while the pool has little else to do. {@code GET /stats} reports hit rates and
+ * latencies, which are also in the metrics registry under {@code tiles.*}, and {@code GET /}
+ * shows the map in a browser.
+ */
+public final class TileServer implements AutoCloseable {
+    public static final int TILE_SIZE = 256;
+    public static final long DEFAULT_CACHE_BYTES = 256L << 20;
+    /**
+     * Deepest level. Tile coordinates are ints, so a level may have at most {@code 2^30} tiles a
+     * side; its pixels are about 4e-12 of the home view.
+     */
+    public static final int MAX_LEVEL = 30;
+    /** Queued renders per thread beyond which no neighbors are prefetched. */
+    private static final int PREFETCH_QUEUE_PER_THREAD = 2;
+    /** Requests waiting for tiles are parked virtual threads, so this only bounds a stuck render. */
+    private static final long RENDER_TIMEOUT_SECONDS = 120;
+    private static final String MAP_PAGE = "index.html";
+    /** Prefetched keys remembered for {@code tiles.prefetch.hits}; forgotten all at once past this. */
+    private static final int MAX_PREFETCHED_KEYS = 1 << 16;
+
+    private static final Counter REQUESTS = Metrics.counter("tiles.requests");
+    private static final Counter MEMORY_HITS = Metrics.counter("tiles.hits.memory");
+    private static final Counter DISK_HITS = Metrics.counter("tiles.hits.disk");
+    private static final Counter COALESCED = Metrics.counter("tiles.coalesced");
+    private static final Counter RENDERS = Metrics.counter("tiles.renders");
+    private static final Counter PREFETCHES = Metrics.counter("tiles.prefetches");
+    private static final Counter PREFETCH_HITS = Metrics.counter("tiles.prefetch.hits");
+    private static final Counter ERRORS = Metrics.counter("tiles.errors");
+    private static final Distribution MEMORY_LATENCY = Metrics.timer("tiles.latency.memory");
+    private static final Distribution DISK_LATENCY = Metrics.timer("tiles.latency.disk");
+    private static final Distribution RENDER_LATENCY = Metrics.timer("tiles.latency.render");
+    private static final Distribution RENDER_TIME = Metrics.timer("tiles.render");
+    private static final Distribution TILE_BYTES = Metrics.distribution("tiles.bytes");
+
+    static {
+        // The JDK server writes headers and body separately; with Nagle's algorithm every cached
+        // tile would wait for the client's delayed ACK. Read once, when the first server is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final TileCache cache;
+    private final ThreadPoolExecutor pool;
+    private final ExecutorService requestExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Render> inFlight = new ConcurrentHashMap<>();
+    private final Set<String> prefetched = ConcurrentHashMap.newKeySet();
+    private final Fractal defaultFractal;
+    private final Palette defaultPalette;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * A server on {@code port} (0 picks a free one) rendering on {@code threads} threads into
+     * {@code cache}. Requests without a formula or palette get the given defaults.
+     */
+    public TileServer(int port, int threads, TileCache cache, Fractal defaultFractal, Palette defaultPalette)
+            throws IOException {
+        this.cache = cache;
+        this.defaultFractal = defaultFractal;
+        this.defaultPalette = defaultPalette;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "tile-render-" + threadNumber.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(requestExecutor);
+        server.createContext("/tiles/", this::serveTile);
+        server.createContext("/stats", this::serveStats);
+        server.createContext("/", this::serveMap);
+        Metrics.gauge("tiles.queue", () -> pool.getQueue().size());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("Tile server ready on http://localhost:" + getPort() + "/ [" + pool.getCorePoolSize()
+                + " threads, " + (cache.getMaxBytes() >> 20) + " MB cache"
+                + (cache.getDirectory() == null ? "" : ", tiles kept in " + cache.getDirectory()) + "]");
+    }
+
+    /** A tile request: what to draw and where, and the cache key naming it. */
+    static final class Tile {
+        final Fractal fractal;
+        final Palette palette;
+        /** 0 for the level's default. */
+        final int maxIter;
+        final int z;
+        final int x;
+        final int y;
+
+        Tile(Fractal fractal, Palette palette, int maxIter, int z, int x, int y) {
+            this.fractal = fractal;
+            this.palette = palette;
+            this.maxIter = maxIter;
+            this.z = z;
+            this.x = x;
+            this.y = y;
+        }
+
+        String key() {
+            String formula = fractal.toString().toLowerCase().replaceAll("[^a-z0-9.,-]", "_");
+            return formula + "/" + palette.getName().toLowerCase() + "/" + (maxIter > 0 ? maxIter : "auto")
+                    + "/" + z + "/" + x + "/" + y + ".png";
+        }
+
+        /** The neighbor {@code dx, dy} tiles away, or null past the edge of the level. */
+        Tile neighbor(int dx, int dy) {
+            int nx = x + dx;
+            int ny = y + dy;
+            return nx < 0 || ny < 0 || !exists(z, nx, ny) ? null : new Tile(fractal, palette, maxIter, z, nx, ny);
+        }
+
+        /** Whether level {@code z} has a tile {@code (x, y)}. */
+        static boolean exists(int z, int x, int y) {
+            return z >= 0 && z <= MAX_LEVEL && x >= 0 && y >= 0 && x < 1 << z && y < 1 << z;
+        }
+    }
+
+    /**
+     * The encoded tile, from memory, disk or a render. A render already running or queued for it
+     * is joined; if that render is a queued prefetch, it is also queued again at demand priority.
+     */
+    byte[] tile(Tile tile) throws IOException {
+        long start = System.nanoTime();
+        String key = tile.key();
+        byte[] png = cache.get(key);
+        if (png != null) {
+            MEMORY_HITS.increment();
+            if (prefetched.remove(key)) {
+                PREFETCH_HITS.increment();
+            }
+            MEMORY_LATENCY.recordSince(start);
+            return png;
+        }
+        prefetchAround(tile);
+        png = cache.load(key);
+        if (png != null) {
+            DISK_HITS.increment();
+            DISK_LATENCY.recordSince(start);
+            return png;
+        }
+        Render render = schedule(tile, key, false);
+        try {
+            png = render.result.get(RENDER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for tile " + key, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Rendering tile " + key + " failed", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IOException("Tile " + key + " not rendered within " + RENDER_TIMEOUT_SECONDS + " s", e);
+        }
+        RENDER_LATENCY.recordSince(start);
+        return png;
+    }
+
+    /** Queues a render of {@code tile} unless one is already in flight, and returns the one that counts. */
+    private Render schedule(Tile tile, String key, boolean prefetch) {
+        Render created = new Render(tile, key, prefetch);
+        Render existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            if (!prefetch) {
+                COALESCED.increment();
+                if (existing.prefetch && !existing.started.get()) {
+                    existing.prefetch = false;
+                    pool.execute(new Job(existing, false));
+                }
+            }
+            return existing;
+        }
+        // A render that finished between the cache lookup and putIfAbsent left its tile in the cache.
+        byte[] cached = cache.get(key);
+        if (cached != null) {
+            created.started.set(true);
+            created.result.complete(cached);
+            inFlight.remove(key, created);
+            return created;
+        }
+        pool.execute(new Job(created, prefetch));
+        return created;
+    }
+
+    /** Queues the eight neighbors of {@code tile} at low priority unless the pool is already busy. */
+    private void prefetchAround(Tile tile) {
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                if (pool.getQueue().size() >= PREFETCH_QUEUE_PER_THREAD * pool.getCorePoolSize()) {
+                    return;
+                }
+                Tile neighbor = tile.neighbor(dx, dy);
+                if ((dx != 0 || dy != 0) && neighbor != null) {
+                    String key = neighbor.key();
+                    if (cache.get(key) == null && !inFlight.containsKey(key)) {
+                        schedule(neighbor, key, true);
+                        PREFETCHES.increment();
+                    }
+                }
+            }
+        }
+    }
+
+    /** One tile being rendered; whichever queued {@link Job} for it runs first does the work. */
+    private final class Render {
+        final Tile tile;
+        final String key;
+        final CompletableFuture<byte[]> result = new CompletableFuture<>();
+        final AtomicBoolean started = new AtomicBoolean();
+        volatile boolean prefetch;
+
+        Render(Tile tile, String key, boolean prefetch) {
+            this.tile = tile;
+            this.key = key;
+            this.prefetch = prefetch;
+        }
+
+        void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                // Requested tiles were looked up on disk already; prefetched ones may be there too.
+                byte[] png = prefetch ? cache.load(key) : null;
+                if (png == null) {
+                    png = render(tile);
+                    cache.put(key, png);
+                }
+                if (prefetch) {
+                    if (prefetched.size() >= MAX_PREFETCHED_KEYS) {
+                        prefetched.clear();
+                    }
+                    prefetched.add(key);
+                }
+                result.complete(png);
+            } catch (Throwable t) {
+                ERRORS.increment();
+                result.completeExceptionally(t);
+            } finally {
+                inFlight.remove(key, this);
+            }
+        }
+    }
+
+    /** A queue entry: requested tiles before prefetched ones, each in arrival order. */
+    private final class Job implements Runnable, Comparable<Job> {
+        private final Render render;
+        private final boolean prefetch;
+        private final long order = sequence.getAndIncrement();
+
+        Job(Render render, boolean prefetch) {
+            this.render = render;
+            this.prefetch = prefetch;
+        }
+
+        @Override
+        public void run() {
+            render.run();
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            if (prefetch != other.prefetch) {
+                return prefetch ? 1 : -1;
+            }
+            return Long.compare(order, other.order);
+        }
+    }
+
+    /** Renders and encodes {@code tile} on the calling thread. */
+    static byte[] render(Tile tile) throws IOException {
+        long start = System.nanoTime();
+        Viewport viewport = viewport(tile);
+        int maxIter = tile.maxIter > 0 ? tile.maxIter : IterationBudget.forZoom(Math.scalb(1.0, tile.z));
+        // Mandelbrot tiles take the cheapest tier that resolves them; other formulas have double kernels only.
+        Kernel kernel = tile.fractal.isMandelbrot() ? Kernels.TIERED : tile.fractal.vectorKernel();
+        IterationBuffer iterations = IterationBuffer.forViewport(viewport, maxIter, tile.palette.isSmooth());
+        kernel.prepare(viewport, maxIter).renderTile(viewport, iterations, 0, 0, TILE_SIZE, TILE_SIZE);
+        int[] argb = new int[TILE_SIZE * TILE_SIZE];
+        Colorizer.colorize(iterations, tile.palette.lookupTable(iterations, 0), tile.palette.isSmooth(), argb);
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream(32 << 10);
+        try (PngSink sink = new PngSink(png, TILE_SIZE, TILE_SIZE)) {
+            sink.writeRows(argb, TILE_SIZE);
+        }
+        RENDERS.increment();
+        Metrics.PIXELS.add((long) TILE_SIZE * TILE_SIZE);
+        Metrics.ITERATIONS.add(iterations.totalIterations());
+        RENDER_TIME.recordSince(start);
+        TILE_BYTES.record(png.size());
+        return png.toByteArray();
+    }
+
+    /**
+     * The square of the plane tile {@code (x, y)} of level {@code z} covers. Corners are exact:
+     * the tile width is the home width scaled by a power of two.
+     */
+    static Viewport viewport(Tile tile) {
+        double[] home = tile.fractal.getFormula().getHome();
+        double span = Math.scalb(home[2], -tile.z);
+        BigDecimal minX = new BigDecimal(home[0] - home[2] / 2).add(new BigDecimal(span).multiply(BigDecimal.valueOf(tile.x)));
+        BigDecimal minY = new BigDecimal(home[1] - home[2] / 2).add(new BigDecimal(span).multiply(BigDecimal.valueOf(tile.y)));
+        return new Viewport(minX, minY, span, span, 1.0, TILE_SIZE, TILE_SIZE);
+    }
+
+    /**
+     * Parses {@code /tiles/z/x/y.png} and the query; throws {@link IllegalArgumentException} for a
+     * malformed request and {@link IndexOutOfBoundsException} for a tile that does not exist.
+     */
+    Tile parse(String path, String query) {
+        String[] parts = path.substring("/tiles/".length()).split("/");
+        if (parts.length != 3 || !parts[2].endsWith(".png")) {
+            throw new IllegalArgumentException("Expected /tiles/z/x/y.png: " + path);
+        }
+        int z = Integer.parseInt(parts[0]);
+        int x = Integer.parseInt(parts[1]);
+        int y = Integer.parseInt(parts[2].substring(0, parts[2].length() - ".png".length()));
+        Map<String, String> parameters = new HashMap<>();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    parameters.put(pair.substring(0, equals),
+                            URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        Fractal fractal = parameters.containsKey("formula") ? Fractal.parse(parameters.get("formula")) : defaultFractal;
+        Palette palette = parameters.containsKey("palette") ? Palettes.byName(parameters.get("palette")) : defaultPalette;
+        int maxIter = parameters.containsKey("maxIter") ? Integer.parseInt(parameters.get("maxIter")) : 0;
+        if (maxIter < 0 || maxIter > IterationBudget.DEFAULT_CEILING) {
+            throw new IllegalArgumentException("maxIter must be between 1 and " + IterationBudget.DEFAULT_CEILING);
+        }
+        if (!Tile.exists(z, x, y)) {
+            throw new IndexOutOfBoundsException("No tile " + z + "/" + x + "/" + y);
+        }
+        Tile tile = new Tile(fractal, palette, maxIter, z, x, y);
+        if (!fractal.isMandelbrot() && !Precision.DOUBLE.resolves(viewport(tile))) {
+            throw new IndexOutOfBoundsException(fractal.getName() + " tiles stop at the depth double precision resolves");
+        }
+        return tile;
+    }
+
+    private void serveTile(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET") && !exchange.getRequestMethod().equals("HEAD")) {
+                send(exchange, 405, "text/plain", "GET or HEAD only".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            Tile tile;
+            try {
+                tile = parse(exchange.getRequestURI().getPath(), exchange.getRequestURI().getRawQuery());
+                REQUESTS.increment();
+            } catch (IndexOutOfBoundsException e) {
+                send(exchange, 404, "text/plain", String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+                return;
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, "text/plain", String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            byte[] png;
+            try {
+                png = tile(tile);
+            } catch (IOException e) {
+                send(exchange, 500, "text/plain", String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            // A URL always names the same image.
+            exchange.getResponseHeaders().set("Cache-Control", "public, max-age=86400, immutable");
+            send(exchange, 200, "image/png", png);
+        }
+    }
+
+    private void serveStats(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            send(exchange, 200, "application/json", stats().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void serveMap(HttpExchange exchange) throws IOException {
+        try (exchange; InputStream page = TileServer.class.getResourceAsStream(MAP_PAGE)) {
+            if (!exchange.getRequestURI().getPath().equals("/") || page == null) {
+                send(exchange, 404, "text/plain", "Not found".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            send(exchange, 200, "text/html; charset=utf-8", page.readAllBytes());
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /** Hit rates, cache use and latencies as JSON. */
+    String stats() {
+        long requests = REQUESTS.get();
+        long memory = MEMORY_HITS.get();
+        long disk = DISK_HITS.get();
+        return String.format(Locale.ROOT,
+                "{\"requests\":%d,\"memoryHits\":%d,\"diskHits\":%d,\"renders\":%d,\"coalesced\":%d,"
+                        + "\"prefetches\":%d,\"prefetchHits\":%d,\"errors\":%d,"
+                        + "\"memoryHitRate\":%.4f,\"hitRate\":%.4f,"
+                        + "\"cache\":{\"entries\":%d,\"bytes\":%d,\"maxBytes\":%d,\"evictions\":%d},"
+                        + "\"queue\":%d,\"latencyMs\":{\"memory\":%s,\"disk\":%s,\"render\":%s},\"renderMs\":%s}",
+                requests, memory, disk, RENDERS.get(), COALESCED.get(), PREFETCHES.get(), PREFETCH_HITS.get(),
+                ERRORS.get(), requests == 0 ? 0.0 : (double) memory / requests,
+                requests == 0 ? 0.0 : (double) (memory + disk) / requests,
+                cache.size(), cache.getBytes(), cache.getMaxBytes(), cache.getEvictions(),
+                pool.getQueue().size(), latency(MEMORY_LATENCY), latency(DISK_LATENCY), latency(RENDER_LATENCY),
+                latency(RENDER_TIME));
+    }
+
+    private static String latency(Distribution distribution) {
+        return String.format(Locale.ROOT, "{\"count\":%d,\"mean\":%.3f,\"max\":%.3f}",
+                distribution.getCount(), distribution.getMean() / 1e6, distribution.getMax() / 1e6);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        pool.shutdownNow();
+        requestExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,226 @@
+package primorska.mandelbrotsequential.distributed;
+
+import org.junit.jupiter.api.Test;
+import primorska.mandelbrotsequential.engine.IterationBuffer;
+import primorska.mandelbrotsequential.engine.Viewport;
+import primorska.mandelbrotsequential.formula.Formulas;
+import primorska.mandelbrotsequential.formula.Fractal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Results survive the encoder and decoder unchanged, with and without deflate and fractions,
+ * land only in their own tile of the frame, and malformed results and tasks are refused.
+ */
+class WireProtocolTest {
+    private static final Viewport FRAME = new Viewport(-2.5, 1.5, -1.5, 1.5, 1, 120, 90);
+    private static final int MAX_ITER = 5_000_000;
+
+    @Test
+    void plainResultRoundTrips() throws IOException {
+        assertRoundTrip(false, false);
+    }
+
+    @Test
+    void deflatedResultRoundTrips() throws IOException {
+        assertRoundTrip(true, false);
+    }
+
+    @Test
+    void fractionsRoundTrip() throws IOException {
+        assertRoundTrip(false, true);
+    }
+
+    @Test
+    void deflatedFractionsRoundTrip() throws IOException {
+        assertRoundTrip(true, true);
+    }
+
+    @Test
+    void fractionsAreDroppedWhenTheFrameHasNone() throws IOException {
+        Task task = task(3, 17, 5, 11, true);
+        Result result = result(task, new Random(7));
+        IterationBuffer frame = IterationBuffer.forViewport(FRAME, MAX_ITER, false);
+        WireProtocol.Decoder decoder = decode(encode(result, true), task);
+        decoder.decodeInto(frame);
+        for (int y = task.getStartY(); y < task.getEndY(); y++) {
+            for (int x = task.getStartX(); x < task.getEndX(); x++) {
+                assertEquals(result.iterations[(y - task.getStartY()) * result.width + x - task.getStartX()],
+                        frame.get(x, y));
+            }
+        }
+    }
+
+    @Test
+    void tasksRoundTrip() throws IOException {
+        Fractal julia = Fractal.parse("julia:-0.8,0.156");
+        Task task = new Task(8, 24, 4, 20, FRAME, 1234, "Vector", julia, true);
+        Task read = readTask(taskBytes(task));
+
+        assertTrue(task.sameFrame(read));
+        assertEquals(8, read.getStartX());
+        assertEquals(24, read.getEndX());
+        assertEquals(4, read.getStartY());
+        assertEquals(20, read.getEndY());
+        assertTrue(read.hasFractions());
+    }
+
+    @Test
+    void tasksAWorkerCannotRenderAreRejected() throws IOException {
+        assertRejected(new Task(0, 16, 0, 16, FRAME, MAX_ITER, "Quantum", Fractal.MANDELBROT, false));
+        Fractal multibrot = new Fractal(Formulas.byName("multibrot"), new double[] {2.5});
+        assertRejected(new Task(0, 16, 0, 16, FRAME, MAX_ITER, "Vector", multibrot, false));
+        assertRejected(task(100, 130, 0, 16, false));
+        assertRejected(task(16, 16, 0, 16, false));
+        assertRejected(new Task(0, 16, 0, 16, FRAME, 0, "Vector", Fractal.MANDELBROT, false));
+
+        byte[] bytes = taskBytes(task(0, 16, 0, 16, false));
+        // The first character of the anchor's decimal string, after six ints, four doubles and its length.
+        assertEquals('-', bytes[58]);
+        bytes[58] = 'x';
+        assertThrows(IOException.class, () -> readTask(bytes));
+    }
+
+    @Test
+    void resultOfAnotherTileIsRejected() throws IOException {
+        Task task = task(0, 16, 0, 16, false);
+        byte[] encoded = encode(result(task, new Random(1)), false);
+
+        WireProtocol.Decoder moved = decode(encoded, task);
+        assertThrows(IOException.class, () -> moved.checkTile(task(16, 32, 0, 16, false)));
+        WireProtocol.Decoder narrower = decode(encoded, task);
+        assertThrows(IOException.class, () -> narrower.checkTile(task(0, 8, 0, 16, false)));
+        WireProtocol.Decoder shorter = decode(encoded, task);
+        assertThrows(IOException.class, () -> shorter.checkTile(task(0, 16, 0, 15, false)));
+    }
+
+    @Test
+    void oversizedPayloadIsRejectedBeforeReading() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeInt(4);
+        out.writeInt(4);
+        out.writeByte(WireProtocol.FLAG_DEFLATE);
+        out.writeInt(100);
+        out.writeInt(Integer.MAX_VALUE);
+        out.flush();
+
+        WireProtocol.Decoder decoder = new WireProtocol.Decoder();
+        IOException e = assertThrows(IOException.class, () -> decoder.read(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), task(0, 4, 0, 4, false)));
+        assertEquals("Corrupt result header", e.getMessage());
+        decoder.close();
+    }
+
+    @Test
+    void runsBeyondTheTileAreRejected() throws IOException {
+        Task task = task(0, 16, 0, 16, false);
+        Result result = result(task, new Random(3));
+        byte[] encoded = encode(result, false);
+        // Claim half the height: the runs no longer fit.
+        encoded[15] = 8;
+        WireProtocol.Decoder decoder = decode(encoded, task);
+        IterationBuffer frame = IterationBuffer.forViewport(FRAME, MAX_ITER, false);
+        assertThrows(IOException.class, () -> decoder.decodeInto(frame));
+    }
+
+    private static void assertRoundTrip(boolean deflate, boolean fractions) throws IOException {
+        Task task = task(3, 103, 5, 75, fractions);
+        Result result = result(task, new Random(42));
+        IterationBuffer frame = IterationBuffer.forViewport(FRAME, MAX_ITER, true);
+        Arrays.fill(frame.getIterations(), -1);
+        Arrays.fill(frame.getFractions(), -1f);
+
+        byte[] encoded = encode(result, deflate);
+        assertEquals(deflate, (encoded[16] & WireProtocol.FLAG_DEFLATE) != 0, "deflated");
+        assertEquals(fractions, (encoded[16] & WireProtocol.FLAG_FRACTIONS) != 0, "fractions flagged");
+        WireProtocol.Decoder decoder = decode(encoded, task);
+        decoder.checkTile(task);
+        decoder.decodeInto(frame);
+
+        for (int y = 0; y < FRAME.getHeight(); y++) {
+            for (int x = 0; x < FRAME.getWidth(); x++) {
+                boolean inside = x >= task.getStartX() && x < task.getEndX()
+                        && y >= task.getStartY() && y < task.getEndY();
+                int source = (y - task.getStartY()) * result.width + x - task.getStartX();
+                int index = frame.index(x, y);
+                assertEquals(inside ? result.iterations[source] : -1, frame.getIterations()[index],
+                        "count at " + x + "," + y);
+                assertEquals(inside && fractions ? result.fractions[source] : -1f, frame.getFractions()[index],
+                        "fraction at " + x + "," + y);
+            }
+        }
+    }
+
+    private static Task task(int x0, int x1, int y0, int y1, boolean fractions) {
+        return new Task(x0, x1, y0, y1, FRAME, MAX_ITER, "Vector", Fractal.MANDELBROT, fractions);
+    }
+
+    /**
+     * Counts in runs of random length, with jumps up and down large enough for several varint
+     * bytes, and random fractions for the escaped ones.
+     */
+    private static Result result(Task task, Random random) {
+        int width = task.getEndX() - task.getStartX();
+        int[] iterations = new int[width * (task.getEndY() - task.getStartY())];
+        float[] fractions = task.hasFractions() ? new float[iterations.length] : null;
+        int i = 0;
+        while (i < iterations.length) {
+            int value = random.nextInt(4) == 0 ? MAX_ITER : random.nextInt(random.nextBoolean() ? 10 : MAX_ITER);
+            int end = Math.min(iterations.length, i + 1 + random.nextInt(random.nextBoolean() ? 4 : 2 * width));
+            for (; i < end; i++) {
+                iterations[i] = value;
+                if (fractions != null) {
+                    fractions[i] = value < MAX_ITER ? random.nextFloat() : 0f;
+                }
+            }
+        }
+        return new Result(task.getStartX(), task.getStartY(), width, iterations, fractions);
+    }
+
+    private static void assertRejected(Task task) throws IOException {
+        byte[] bytes = taskBytes(task);
+        assertThrows(IOException.class, () -> readTask(bytes), () -> "accepted " + task.getKernel() + " "
+                + task.getFractal() + " tile " + task.getStartX() + ".." + task.getEndX());
+    }
+
+    private static byte[] taskBytes(Task task) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        WireProtocol.writeTask(new DataOutputStream(bytes), task);
+        return bytes.toByteArray();
+    }
+
+    private static Task readTask(byte[] bytes) throws IOException {
+        return WireProtocol.readTask(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    private static byte[] encode(Result result, boolean deflate) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        WireProtocol.Encoder encoder = new WireProtocol.Encoder(deflate);
+        encoder.write(out, result);
+        encoder.close();
+        out.flush();
+        assertEquals(bytes.size(), encoder.getBytesWritten());
+        return bytes.toByteArray();
+    }
+
+    private static WireProtocol.Decoder decode(byte[] encoded, Task expected) throws IOException {
+        WireProtocol.Decoder decoder = new WireProtocol.Decoder();
+        decoder.read(new DataInputStream(new ByteArrayInputStream(encoded)), expected);
+        assertEquals(encoded.length, decoder.getWireBytes());
+        return decoder;
+    }
+}
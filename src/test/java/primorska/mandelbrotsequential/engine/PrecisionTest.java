@@ -0,0 +1,114 @@
+package primorska.mandelbrotsequential.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Each precision tier against the next more precise one, around the boundary point {@code i}:
+ * inside its range the two count at most {@link #TOLERANCE} of the pixels differently, and just
+ * past it {@link Precision#forViewport} has moved on to the more precise tier.
+ */
+class PrecisionTest {
+    /** Share of pixels a tier may count differently from the next tier up. */
+    private static final double TOLERANCE = 0.01;
+    private static final int WIDTH = 96;
+    private static final int HEIGHT = 72;
+
+    @Test
+    void floatMatchesDouble() {
+        assertMatchesNextTier(Precision.FLOAT, 4.0 / WIDTH);
+    }
+
+    @Test
+    void doubleMatchesDoubleDouble() {
+        assertMatchesNextTier(Precision.DOUBLE, Precision.FLOAT.getMinRelativeSpacing() / 2);
+    }
+
+    @Test
+    void doubleDoubleMatchesPerturbation() {
+        assertMatchesNextTier(Precision.DOUBLE_DOUBLE, Precision.DOUBLE.getMinRelativeSpacing() / 2);
+    }
+
+    @Test
+    void floatIsNotPickedPastItsRange() {
+        assertNextTierPastRange(Precision.FLOAT);
+    }
+
+    @Test
+    void doubleIsNotPickedPastItsRange() {
+        assertNextTierPastRange(Precision.DOUBLE);
+    }
+
+    @Test
+    void doubleDoubleIsNotPickedPastItsRange() {
+        assertNextTierPastRange(Precision.DOUBLE_DOUBLE);
+    }
+
+    /**
+     * The explorer zooms by dividing a fixed span, so its viewports' {@code maxX} lies far outside
+     * the view. The tier has to follow the coordinates actually visible, the same as for a
+     * viewport of that region built directly.
+     */
+    @Test
+    void zoomedViewNearOriginUsesVisibleCoordinates() {
+        double spanX = 3.5, spanY = 3.0, zoomFactor = 5e4;
+        Viewport zoomed = new Viewport(new BigDecimal("0.001"), new BigDecimal("0.001"), spanX, spanY,
+                zoomFactor, 800, 600);
+        Viewport direct = new Viewport(0.001, 0.001 + spanX / zoomFactor, 0.001, 0.001 + spanY / zoomFactor,
+                1.0, 800, 600);
+
+        assertEquals(Precision.relativeSpacing(direct), Precision.relativeSpacing(zoomed),
+                Precision.relativeSpacing(direct) * 1e-9);
+        assertEquals(Precision.FLOAT, Precision.forViewport(zoomed));
+        assertEquals(Precision.forViewport(direct), Precision.forViewport(zoomed));
+    }
+
+    /** Compares {@code tier} with the next one at both ends of its range, from {@code shallowest} to twice its limit. */
+    private static void assertMatchesNextTier(Precision tier, double shallowest) {
+        Precision reference = Precision.values()[tier.ordinal() + 1];
+        for (double spacing : new double[] {shallowest, tier.getMinRelativeSpacing() * 2}) {
+            Viewport viewport = atBoundary(spacing);
+            assertTrue(tier.resolves(viewport), tier.getLabel() + " should resolve spacing " + spacing);
+            double share = mismatchShare(tier, reference, viewport);
+            assertTrue(share <= TOLERANCE, String.format("%s differs from %s in %.2f%% of the pixels at spacing %.1e",
+                    tier.getLabel(), reference.getLabel(), 100 * share, spacing));
+        }
+    }
+
+    private static void assertNextTierPastRange(Precision tier) {
+        Precision reference = Precision.values()[tier.ordinal() + 1];
+        Viewport viewport = atBoundary(tier.getMinRelativeSpacing() / 2);
+        assertFalse(tier.resolves(viewport), tier.getLabel() + " should not resolve " + viewport.getRangeX());
+        assertEquals(reference, Precision.forViewport(viewport));
+    }
+
+    private static Viewport atBoundary(double spacing) {
+        return Viewport.centered(BigDecimal.ZERO, BigDecimal.ONE, spacing * WIDTH, WIDTH, HEIGHT);
+    }
+
+    private static double mismatchShare(Precision tier, Precision reference, Viewport viewport) {
+        int maxIter = IterationBudget.forZoom(viewport);
+        int[] actual = render(Kernels.forPrecision(tier), viewport, maxIter);
+        int[] expected = render(Kernels.forPrecision(reference), viewport, maxIter);
+        long mismatches = 0;
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] != actual[i]) {
+                mismatches++;
+            }
+        }
+        return (double) mismatches / expected.length;
+    }
+
+    private static int[] render(Kernel kernel, Viewport viewport, int maxIter) {
+        IterationBuffer iterations = IterationBuffer.forViewport(viewport, maxIter, false);
+        try (Renderer renderer = new ParallelRenderer(kernel.prepare(viewport, maxIter))) {
+            renderer.render(viewport, iterations);
+        }
+        return iterations.getIterations();
+    }
+}
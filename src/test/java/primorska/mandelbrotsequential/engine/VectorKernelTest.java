@@ -0,0 +1,84 @@
+package primorska.mandelbrotsequential.engine;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * The vector kernel has to reproduce the scalar kernel's counts and fractions bit for bit,
+ * including the scalar tail of rows whose width is not a multiple of the lane count.
+ */
+class VectorKernelTest {
+    private static final int MAX_ITER = 500;
+
+    private static final Viewport[] VIEWPORTS = {
+            Viewport.centered(-0.75, 0.0, 3.0, 64, 48),
+            Viewport.centered(-0.75, 0.0, 3.0, 13, 7),
+            Viewport.centered(-0.7436, 0.1318, 1e-4, 67, 31),
+            Viewport.centered(-1.25066, 0.02012, 1e-7, 101, 53),
+            Viewport.centered(0.2821, 0.01, 1e-3, 3, 5),
+    };
+
+    @BeforeEach
+    void requireVectorModule() {
+        assumeTrue(Kernels.isVectorAvailable(), "jdk.incubator.vector is not available");
+    }
+
+    @Test
+    void tilesMatchScalar() {
+        for (Viewport viewport : VIEWPORTS) {
+            IterationBuffer expected = IterationBuffer.forViewport(viewport, MAX_ITER, true);
+            IterationBuffer actual = IterationBuffer.forViewport(viewport, MAX_ITER, true);
+            Kernels.SCALAR.renderTile(viewport, expected, 0, 0, viewport.getWidth(), viewport.getHeight());
+            Kernels.vector().renderTile(viewport, actual, 0, 0, viewport.getWidth(), viewport.getHeight());
+            assertSame(viewport, expected, actual);
+        }
+    }
+
+    @Test
+    void tilesOffTheFrameOriginMatchScalar() {
+        Viewport viewport = VIEWPORTS[2];
+        IterationBuffer expected = IterationBuffer.forViewport(viewport, MAX_ITER, true);
+        IterationBuffer actual = IterationBuffer.forViewport(viewport, MAX_ITER, true);
+        Kernels.SCALAR.renderTile(viewport, expected, 5, 3, 62, 29);
+        Kernels.vector().renderTile(viewport, actual, 5, 3, 62, 29);
+        assertSame(viewport, expected, actual);
+    }
+
+    @Test
+    void sparseSpansMatchScalar() {
+        for (Viewport viewport : VIEWPORTS) {
+            for (int step : new int[] {2, 3, 4, 7}) {
+                IterationBuffer expected = IterationBuffer.forViewport(viewport, MAX_ITER, true);
+                IterationBuffer actual = IterationBuffer.forViewport(viewport, MAX_ITER, true);
+                for (int y = 0; y < viewport.getHeight(); y += step) {
+                    int x0 = y % step;
+                    Kernels.SCALAR.renderSpan(viewport, expected, y, x0, viewport.getWidth(), step);
+                    Kernels.vector().renderSpan(viewport, actual, y, x0, viewport.getWidth(), step);
+                }
+                assertSame(viewport, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    void parallelRenderMatchesSequentialScalar() {
+        Viewport viewport = VIEWPORTS[3];
+        IterationBuffer expected = IterationBuffer.forViewport(viewport, MAX_ITER, true);
+        IterationBuffer actual = IterationBuffer.forViewport(viewport, MAX_ITER, true);
+        new SequentialRenderer(Kernels.SCALAR).render(viewport, expected);
+        try (Renderer renderer = new ParallelRenderer(4, 16, Kernels.vector())) {
+            renderer.render(viewport, actual);
+        }
+        assertSame(viewport, expected, actual);
+    }
+
+    private static void assertSame(Viewport viewport, IterationBuffer expected, IterationBuffer actual) {
+        String frame = viewport.getWidth() + "x" + viewport.getHeight() + " at " + viewport.getMinX()
+                + "," + viewport.getMinY();
+        assertArrayEquals(expected.getIterations(), actual.getIterations(), "counts of " + frame);
+        assertArrayEquals(expected.getFractions(), actual.getFractions(), "fractions of " + frame);
+    }
+}
@@ -0,0 +1,98 @@
+package primorska.mandelbrotsequential.formula;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import primorska.mandelbrotsequential.engine.IterationBuffer;
+import primorska.mandelbrotsequential.engine.Kernels;
+import primorska.mandelbrotsequential.engine.Viewport;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Every registered formula's vector kernel has to reproduce its scalar kernel's counts and
+ * fractions exactly, over the formula's home view and a zoomed view, at widths that leave a
+ * scalar tail after the last full vector.
+ */
+class FormulaParityTest {
+    private static final int MAX_ITER = 500;
+
+    @BeforeEach
+    void requireVectorModule() {
+        assumeTrue(Kernels.isVectorAvailable(), "jdk.incubator.vector is not available");
+    }
+
+    @Test
+    void everyFormulaIsRegistered() {
+        List<String> names = new ArrayList<>();
+        for (Formula formula : Formulas.all()) {
+            names.add(formula.getName());
+        }
+        for (String name : List.of("Mandelbrot", "Julia", "Multibrot", "Burning Ship", "Tricorn")) {
+            assertTrue(names.contains(name), name + " is missing from " + names);
+        }
+    }
+
+    @Test
+    void vectorKernelsMatchScalarAtHome() {
+        for (Fractal fractal : fractals()) {
+            double[] home = fractal.getFormula().getHome();
+            assertSameCounts(fractal, Viewport.centered(home[0], home[1], home[2], 101, 77));
+        }
+    }
+
+    @Test
+    void vectorKernelsMatchScalarZoomedIn() {
+        for (Fractal fractal : fractals()) {
+            double[] home = fractal.getFormula().getHome();
+            assertSameCounts(fractal, Viewport.centered(home[0] + home[2] / 7, home[1] + home[2] / 11,
+                    home[2] / 50, 67, 45));
+        }
+    }
+
+    @Test
+    void sparseSpansMatchScalar() {
+        for (Fractal fractal : fractals()) {
+            double[] home = fractal.getFormula().getHome();
+            Viewport viewport = Viewport.centered(home[0], home[1], home[2], 93, 41);
+            IterationBuffer expected = IterationBuffer.forViewport(viewport, MAX_ITER, true);
+            IterationBuffer actual = IterationBuffer.forViewport(viewport, MAX_ITER, true);
+            for (int y = 0; y < viewport.getHeight(); y += 3) {
+                fractal.kernel().renderSpan(viewport, expected, y, y % 3, viewport.getWidth(), 3);
+                fractal.vectorKernel().renderSpan(viewport, actual, y, y % 3, viewport.getWidth(), 3);
+            }
+            assertSame(fractal, expected, actual);
+        }
+    }
+
+    /** Every registered formula with its default parameters, and a few more parameter choices. */
+    private static List<Fractal> fractals() {
+        List<Fractal> fractals = new ArrayList<>();
+        for (Formula formula : Formulas.all()) {
+            fractals.add(Fractal.of(formula));
+        }
+        fractals.add(Fractal.parse("multibrot:2"));
+        fractals.add(Fractal.parse("multibrot:5"));
+        fractals.add(Fractal.parse("julia:-0.8,0.156"));
+        return fractals;
+    }
+
+    private static void assertSameCounts(Fractal fractal, Viewport viewport) {
+        IterationBuffer expected = IterationBuffer.forViewport(viewport, MAX_ITER, true);
+        IterationBuffer actual = IterationBuffer.forViewport(viewport, MAX_ITER, true);
+        fractal.kernel().prepare(viewport, MAX_ITER)
+                .renderTile(viewport, expected, 0, 0, viewport.getWidth(), viewport.getHeight());
+        fractal.vectorKernel().prepare(viewport, MAX_ITER)
+                .renderTile(viewport, actual, 0, 0, viewport.getWidth(), viewport.getHeight());
+        assertSame(fractal, expected, actual);
+    }
+
+    private static void assertSame(Fractal fractal, IterationBuffer expected, IterationBuffer actual) {
+        assertArrayEquals(expected.getIterations(), actual.getIterations(), "counts of " + fractal);
+        assertArrayEquals(expected.getFractions(), actual.getFractions(), "fractions of " + fractal);
+    }
+}
@@ -0,0 +1,177 @@
+package primorska.mandelbrotsequential.headless;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import primorska.mandelbrotsequential.engine.IterationBuffer;
+import primorska.mandelbrotsequential.engine.Viewport;
+import primorska.mandelbrotsequential.formula.Fractal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A frame written strip by strip reads back unchanged in both layouts, whole, a chunk at a time
+ * and sampled, and a file cut short is refused rather than read as a smaller frame.
+ */
+class IterationFileTest {
+    private static final int MAX_ITER = 100_000;
+    /** Wide enough that a strip of {@link #STRIP_ROWS} rows is split into several chunks. */
+    private static final Viewport VIEWPORT = Viewport.centered(-0.75, 0.1, 3.0, 2900, 331);
+    private static final int STRIP_ROWS = 200;
+    private static final Fractal FRACTAL = Fractal.parse("julia:-0.8,0.156");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void storedFrameRoundTrips() throws IOException {
+        assertRoundTrip(false, false);
+    }
+
+    @Test
+    void storedFrameWithFractionsRoundTrips() throws IOException {
+        assertRoundTrip(false, true);
+    }
+
+    @Test
+    void deflatedFrameRoundTrips() throws IOException {
+        assertRoundTrip(true, false);
+    }
+
+    @Test
+    void deflatedFrameWithFractionsRoundTrips() throws IOException {
+        assertRoundTrip(true, true);
+    }
+
+    @Test
+    void samplesMatchTheFrameInBothLayouts() throws IOException {
+        IterationBuffer frame = frame(true, new Random(5));
+        for (boolean compress : new boolean[] {false, true}) {
+            Path file = write(frame, compress);
+            try (IterationFile saved = IterationFile.open(file)) {
+                for (int step : new int[] {1, 3, 7, 64}) {
+                    IterationBuffer sample = saved.sample(step);
+                    assertFalse(sample.hasFractions());
+                    assertEquals((VIEWPORT.getWidth() + step - 1) / step, sample.getWidth());
+                    assertEquals((VIEWPORT.getHeight() + step - 1) / step, sample.getHeight());
+                    for (int y = 0; y < VIEWPORT.getHeight(); y += step) {
+                        for (int x = 0; x < VIEWPORT.getWidth(); x += step) {
+                            assertEquals(frame.get(x, y), sample.get(x / step, y / step),
+                                    "step " + step + " at " + x + "," + y + (compress ? " deflated" : " stored"));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void missingRowsFailTheWriter() throws IOException {
+        IterationBuffer frame = frame(false, new Random(3));
+        IterationFile.Writer writer = new IterationFile.Writer(directory.resolve("short.mit"), VIEWPORT, MAX_ITER,
+                FRACTAL, false, false);
+        writer.write(strip(frame, 0, STRIP_ROWS));
+        IOException e = assertThrows(IOException.class, writer::close);
+        assertTrue(e.getMessage().startsWith("Iteration file incomplete"), e.getMessage());
+    }
+
+    @Test
+    void truncatedFilesAreRefused() throws IOException {
+        byte[] bytes = Files.readAllBytes(write(frame(true, new Random(9)), true));
+
+        assertRefused(Arrays.copyOf(bytes, 12), "Not an iteration file");
+        assertRefused(Arrays.copyOf(bytes, 60), "Iteration file header truncated");
+        assertRefused(Arrays.copyOf(bytes, bytes.length / 2), "Iteration file incomplete");
+        assertRefused(Arrays.copyOf(bytes, bytes.length - 1), "Iteration file incomplete");
+    }
+
+    private void assertRoundTrip(boolean compress, boolean fractions) throws IOException {
+        IterationBuffer frame = frame(fractions, new Random(compress ? 11 : 13));
+        try (IterationFile saved = IterationFile.open(write(frame, compress))) {
+            assertEquals(compress, saved.isCompressed());
+            assertEquals(fractions, saved.hasFractions());
+            assertEquals(MAX_ITER, saved.getMaxIter());
+            assertEquals(FRACTAL, saved.getFractal());
+            assertEquals(VIEWPORT.getWidth(), saved.getWidth());
+            assertEquals(VIEWPORT.getHeight(), saved.getHeight());
+            assertEquals(VIEWPORT.getPreciseMinX(), saved.getViewport().getPreciseMinX());
+            assertEquals(VIEWPORT.getRangeY(), saved.getViewport().getRangeY(), 0.0);
+            assertTrue(saved.getChunkCount() > VIEWPORT.getHeight() / STRIP_ROWS + 1,
+                    saved.getChunkCount() + " chunks");
+
+            IterationBuffer read = saved.read();
+            assertArrayEquals(frame.getIterations(), read.getIterations());
+            assertArrayEquals(frame.getFractions(), read.getFractions());
+
+            int y = 0;
+            for (int chunk = 0; chunk < saved.getChunkCount(); chunk++) {
+                IterationBuffer strip = saved.readChunk(chunk);
+                assertEquals(y, strip.getOriginY());
+                assertEquals(VIEWPORT.getWidth(), strip.getWidth());
+                int from = y * VIEWPORT.getWidth();
+                int to = from + strip.getHeight() * VIEWPORT.getWidth();
+                assertArrayEquals(Arrays.copyOfRange(frame.getIterations(), from, to), strip.getIterations());
+                if (fractions) {
+                    assertArrayEquals(Arrays.copyOfRange(frame.getFractions(), from, to), strip.getFractions());
+                }
+                y += strip.getHeight();
+            }
+            assertEquals(VIEWPORT.getHeight(), y);
+        }
+    }
+
+    private void assertRefused(byte[] bytes, String message) throws IOException {
+        Path file = Files.write(directory.resolve("truncated.mit"), bytes);
+        IOException e = assertThrows(IOException.class, () -> IterationFile.open(file).close());
+        assertTrue(e.getMessage().startsWith(message), e.getMessage());
+    }
+
+    /** Writes {@code frame} in strips of {@link #STRIP_ROWS} rows, as a streamed render does. */
+    private Path write(IterationBuffer frame, boolean compress) throws IOException {
+        Path file = directory.resolve(compress ? "deflated.mit" : "stored.mit");
+        try (IterationFile.Writer writer = new IterationFile.Writer(file, VIEWPORT, MAX_ITER, FRACTAL,
+                frame.hasFractions(), compress)) {
+            for (int y = 0; y < VIEWPORT.getHeight(); y += STRIP_ROWS) {
+                writer.write(strip(frame, y, Math.min(STRIP_ROWS, VIEWPORT.getHeight() - y)));
+            }
+        }
+        return file;
+    }
+
+    private static IterationBuffer strip(IterationBuffer frame, int y, int rows) {
+        int width = frame.getWidth();
+        IterationBuffer strip = IterationBuffer.region(0, y, width, rows, MAX_ITER, frame.hasFractions());
+        System.arraycopy(frame.getIterations(), y * width, strip.getIterations(), 0, rows * width);
+        if (frame.hasFractions()) {
+            System.arraycopy(frame.getFractions(), y * width, strip.getFractions(), 0, rows * width);
+        }
+        return strip;
+    }
+
+    /** Runs of counts that jump up and down along each row, interior pixels included. */
+    private static IterationBuffer frame(boolean fractions, Random random) {
+        IterationBuffer frame = IterationBuffer.forViewport(VIEWPORT, MAX_ITER, fractions);
+        int[] iterations = frame.getIterations();
+        int i = 0;
+        while (i < iterations.length) {
+            int value = random.nextInt(5) == 0 ? MAX_ITER : random.nextInt(MAX_ITER);
+            int end = Math.min(iterations.length, i + 1 + random.nextInt(40));
+            for (; i < end; i++) {
+                iterations[i] = value;
+                if (fractions) {
+                    frame.getFractions()[i] = value < MAX_ITER ? random.nextFloat() : 0f;
+                }
+            }
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,118 @@
+package primorska.mandelbrotsequential.server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * The memory tier evicts the least recently used tiles once their bytes pass the limit, and the
+ * disk tier keeps every tile, survives a new cache on the same directory and refills memory.
+ */
+class TileCacheTest {
+    private static final int TILE_BYTES = 1000;
+    /** What one of the test's tiles costs the memory tier: its bytes, its key and the entry overhead. */
+    private static final long ENTRY_COST = TILE_BYTES + 2 * "z/0.png".length() + 160;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void evictsLeastRecentlyUsedOncePastTheByteLimit() throws IOException {
+        TileCache cache = new TileCache(3 * ENTRY_COST, null);
+        cache.put("z/0.png", tile(0));
+        cache.put("z/1.png", tile(1));
+        cache.put("z/2.png", tile(2));
+        assertEquals(3 * ENTRY_COST, cache.getBytes());
+        assertEquals(0, cache.getEvictions());
+
+        // Reading tile 0 makes tile 1 the least recently used.
+        assertNotNull(cache.get("z/0.png"));
+        cache.put("z/3.png", tile(3));
+
+        assertNull(cache.get("z/1.png"));
+        assertArrayEquals(tile(0), cache.get("z/0.png"));
+        assertArrayEquals(tile(2), cache.get("z/2.png"));
+        assertArrayEquals(tile(3), cache.get("z/3.png"));
+        assertEquals(3, cache.size());
+        assertEquals(3 * ENTRY_COST, cache.getBytes());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    void largerTilesEvictSeveral() throws IOException {
+        TileCache cache = new TileCache(4 * ENTRY_COST, null);
+        for (int i = 0; i < 4; i++) {
+            cache.put("z/" + i + ".png", tile(i));
+        }
+        cache.put("z/9.png", new byte[2 * TILE_BYTES]);
+
+        assertNull(cache.get("z/0.png"));
+        assertNull(cache.get("z/1.png"));
+        assertNotNull(cache.get("z/2.png"));
+        assertEquals(3, cache.size());
+        assertEquals(2, cache.getEvictions());
+        assertEquals(3 * ENTRY_COST + TILE_BYTES, cache.getBytes());
+    }
+
+    @Test
+    void replacingATileCountsOnlyTheNewBytes() throws IOException {
+        TileCache cache = new TileCache(10 * ENTRY_COST, null);
+        cache.put("z/0.png", tile(0));
+        cache.put("z/0.png", new byte[TILE_BYTES / 2]);
+        assertEquals(1, cache.size());
+        assertEquals(ENTRY_COST - TILE_BYTES / 2, cache.getBytes());
+    }
+
+    @Test
+    void withoutADirectoryNothingLoads() throws IOException {
+        TileCache cache = new TileCache(ENTRY_COST, null);
+        cache.put("z/0.png", tile(0));
+        cache.put("z/1.png", tile(1));
+        assertNull(cache.get("z/0.png"));
+        assertNull(cache.load("z/0.png"));
+    }
+
+    @Test
+    void evictedTilesLoadFromDisk() throws IOException {
+        TileCache cache = new TileCache(ENTRY_COST, directory);
+        cache.put("z/0.png", tile(0));
+        cache.put("z/1.png", tile(1));
+        assertNull(cache.get("z/0.png"));
+        assertArrayEquals(tile(0), Files.readAllBytes(directory.resolve("z/0.png")));
+
+        assertArrayEquals(tile(0), cache.load("z/0.png"));
+        // Loading brought it back into memory, in place of the other tile.
+        assertArrayEquals(tile(0), cache.get("z/0.png"));
+        assertNull(cache.get("z/1.png"));
+        assertNull(cache.load("z/7.png"));
+    }
+
+    @Test
+    void diskTierSurvivesANewCache() throws IOException {
+        new TileCache(10 * ENTRY_COST, directory).put("mandelbrot/smooth/auto/3/2/5.png", tile(5));
+
+        TileCache restarted = new TileCache(10 * ENTRY_COST, directory);
+        assertNull(restarted.get("mandelbrot/smooth/auto/3/2/5.png"));
+        assertArrayEquals(tile(5), restarted.load("mandelbrot/smooth/auto/3/2/5.png"));
+        assertEquals(1, restarted.size());
+        try (Stream<Path> files = Files.walk(directory)) {
+            assertEquals(0, files.filter(file -> file.toString().endsWith(".tmp")).count());
+        }
+    }
+
+    private static byte[] tile(int seed) {
+        byte[] tile = new byte[TILE_BYTES];
+        Arrays.fill(tile, (byte) seed);
+        return tile;
+    }
+}